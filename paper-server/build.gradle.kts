@@ -149,6 +149,11 @@ dependencies {
         isTransitive = false
     }
     implementation("io.netty:netty-codec-haproxy:4.1.118.Final") // Add support for proxy protocol
+    // MetalMC start - io_uring transport
+    implementation("io.netty.incubator:netty-incubator-transport-classes-io_uring:0.0.26.Final")
+    runtimeOnly("io.netty.incubator:netty-incubator-transport-native-io_uring:0.0.26.Final:linux-x86_64")
+    runtimeOnly("io.netty.incubator:netty-incubator-transport-native-io_uring:0.0.26.Final:linux-aarch_64")
+    // MetalMC end - io_uring transport
     implementation("org.apache.logging.log4j:log4j-iostreams:2.24.1")
     implementation("org.ow2.asm:asm-commons:9.8")
     implementation("org.spongepowered:configurate-yaml:4.2.0")
@@ -264,6 +269,22 @@ tasks.test {
     jvmArgumentProviders.add(provider)
 }
 
+// MetalMC start - opt-in benchmarks, e.g. ./gradlew :paper-server:benchmark --tests '*TransportBenchmark' -Dmetalmc.benchmark.clients=64
+tasks.register<Test>("benchmark") {
+    group = "verification"
+    description = "Runs the MetalMC benchmarks, forwarding metalmc.benchmark.* system properties."
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    include("net/metalmc/**/*Benchmark.class")
+    workingDir = temporaryDir
+    useJUnitPlatform()
+    systemProperty("metalmc.benchmark", "true")
+    systemProperties(providers.systemPropertiesPrefixedBy("metalmc.benchmark.").get())
+    testLogging.showStandardStreams = true
+    outputs.upToDateWhen { false }
+}
+// MetalMC end - opt-in benchmarks
+
 val generatedDir: java.nio.file.Path = layout.projectDirectory.dir("src/generated/java").asFile.toPath()
 idea {
     module {
@@ -7,6 +7,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import net.minecraft.network.Connection;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.protocol.status.ClientboundStatusResponsePacket;
@@ -64,13 +65,34 @@ public final class StandardPaperServerListPingEventImpl extends PaperServerListP
     }
 
     public static void processRequest(MinecraftServer server, Connection networkManager) {
+        // MetalMC start - status cache
+        if (net.metalmc.metal.network.StatusCache.handle(server, networkManager)) {
+            return;
+        }
+        final ClientboundStatusResponsePacket response = createResponse(server, networkManager);
+        // Close connection immediately if event is cancelled
+        if (response == null) {
+            networkManager.disconnect((Component) null);
+            return;
+        }
+        networkManager.send(response);
+        // MetalMC end - status cache
+    }
+
+    // MetalMC start - status cache
+    /**
+     * Calls the ping event for {@code networkManager} and builds the response from it.
+     *
+     * @return the response, or {@code null} when the event was cancelled
+     */
+    public static @Nullable ClientboundStatusResponsePacket createResponse(MinecraftServer server, Connection networkManager) {
+    // MetalMC end - status cache
         StandardPaperServerListPingEventImpl event = new StandardPaperServerListPingEventImpl(server, networkManager, server.getStatus());
         server.server.getPluginManager().callEvent(event);
 
         // Close connection immediately if event is cancelled
         if (event.isCancelled()) {
-            networkManager.disconnect((Component) null);
-            return;
+            return null; // MetalMC - status cache
         }
 
         // Setup response
@@ -99,7 +121,7 @@ public final class StandardPaperServerListPingEventImpl extends PaperServerListP
         final ServerStatus ping = new ServerStatus(description, players, Optional.of(version), favicon, server.enforceSecureProfile());
 
         // Send response
-        networkManager.send(new ClientboundStatusResponsePacket(ping));
+        return new ClientboundStatusResponsePacket(ping); // MetalMC - status cache
     }
 
 }
@@ -0,0 +1,188 @@
+package net.metalmc.metal;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.metalmc.metal.entity.EntityTickBudget;
+import net.metalmc.metal.network.CompressionPool;
+import net.metalmc.metal.network.FlushConsolidator;
+import net.metalmc.metal.network.PlayerInfoAggregator;
+import net.metalmc.metal.network.SharedPacket;
+import net.metalmc.metal.network.StatusCache;
+import net.metalmc.metal.redstone.NeighborUpdateBatch;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.redstone.CollectingNeighborUpdater;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import static net.kyori.adventure.text.Component.text;
+
+public class MetalCommand extends Command {
+
+    public MetalCommand(String name) {
+        super(name);
+        this.description = "MetalMC related commands";
+        this.usageMessage = "/metal [reload | stats]";
+        this.setPermission("bukkit.command.metal");
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String alias, String[] args) {
+        if (args.length == 1) {
+            return List.of("reload", "stats").stream()
+                .filter(sub -> sub.startsWith(args[0].toLowerCase(Locale.ROOT)))
+                .toList();
+        }
+        return List.of();
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String commandLabel, String[] args) {
+        if (!this.testPermission(sender)) return true;
+
+        if (args.length != 1) {
+            sender.sendMessage(text("Usage: " + this.usageMessage, NamedTextColor.RED));
+            return false;
+        }
+
+        switch (args[0].toLowerCase(Locale.ROOT)) {
+            case "reload" -> {
+                Command.broadcastCommandMessage(sender, text("Please note that this command is not supported and may cause issues.", NamedTextColor.RED));
+
+                MinecraftServer console = MinecraftServer.getServer();
+                MetalConfig.init((File) console.options.valueOf("metal-settings"));
+                StatusCache.invalidate();
+
+                Command.broadcastCommandMessage(sender, text("Reload complete.", NamedTextColor.GREEN));
+            }
+            case "stats" -> this.sendStats(sender);
+            default -> {
+                sender.sendMessage(text("Usage: " + this.usageMessage, NamedTextColor.RED));
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void sendStats(CommandSender sender) {
+        sender.sendMessage(text("Entity tick budget" + (MetalConfig.entityTickBudget ? "" : " (disabled)") + ":", NamedTextColor.GOLD));
+        for (ServerLevel level : MinecraftServer.getServer().getAllLevels()) {
+            sender.sendMessage(text(" " + level.getWorld().getName() + ":", NamedTextColor.YELLOW));
+            for (EntityTickBudget.Category category : level.entityTickBudget.getCategories()) {
+                if (category.getAverageEntities() < 0.5 && category.getTotalDeferred() == 0L) {
+                    continue;
+                }
+                String budget = category.getBudgetMillis() <= 0.0 ? "none" : String.format(Locale.ROOT, "%.2fms", category.getBudgetMillis());
+                sender.sendMessage(text(String.format(Locale.ROOT,
+                    "  %s: %.0f entities, %.3fms/tick (%.1fus each), budget %s, %.1f deferred/tick, %d deferred total",
+                    category.getName(),
+                    category.getAverageEntities(),
+                    category.getAverageTickMillis(),
+                    category.getAverageEntityMicros(),
+                    budget,
+                    category.getAverageDeferred(),
+                    category.getTotalDeferred()
+                ), NamedTextColor.GRAY));
+            }
+        }
+
+        sender.sendMessage(text("Batched neighbor updates" + (MetalConfig.batchedNeighborUpdates ? "" : " (disabled)") + ":", NamedTextColor.GOLD));
+        for (ServerLevel level : MinecraftServer.getServer().getAllLevels()) {
+            if (!(level.neighborUpdater instanceof CollectingNeighborUpdater updater) || updater.neighborUpdateBatch == null) {
+                continue;
+            }
+            NeighborUpdateBatch batch = updater.neighborUpdateBatch;
+            sender.sendMessage(text(String.format(Locale.ROOT,
+                " %s: %d cascades, %d updates, %d duplicates skipped, %d cascades cut at the chain limit, largest cascade %d",
+                level.getWorld().getName(),
+                batch.getCascades(),
+                batch.getExecuted(),
+                batch.getDuplicates(),
+                batch.getTruncated(),
+                batch.getLargestCascade()
+            ), NamedTextColor.GRAY));
+        }
+
+        sender.sendMessage(text("Fluid slope cache" + (MetalConfig.fluidSlopeCache ? "" : " (disabled)") + ":", NamedTextColor.GOLD));
+        for (ServerLevel level : MinecraftServer.getServer().getAllLevels()) {
+            long hits = level.fluidSlopeCache.getHits();
+            long lookups = hits + level.fluidSlopeCache.getMisses();
+            sender.sendMessage(text(String.format(Locale.ROOT,
+                " %s: %d lookups, %.1f%% hits",
+                level.getWorld().getName(),
+                lookups,
+                lookups == 0L ? 0.0 : hits * 100.0 / lookups
+            ), NamedTextColor.GRAY));
+        }
+
+        sender.sendMessage(text("Explosion exposure cache" + (MetalConfig.explosionExposureCache ? "" : " (disabled)") + ":", NamedTextColor.GOLD));
+        for (ServerLevel level : MinecraftServer.getServer().getAllLevels()) {
+            long hits = level.explosionCache.getExposureHits();
+            long lookups = hits + level.explosionCache.getExposureMisses();
+            sender.sendMessage(text(String.format(Locale.ROOT,
+                " %s: %d lookups, %.1f%% hits",
+                level.getWorld().getName(),
+                lookups,
+                lookups == 0L ? 0.0 : hits * 100.0 / lookups
+            ), NamedTextColor.GRAY));
+        }
+
+        sender.sendMessage(text("Encode-once broadcasts" + (MetalConfig.encodeOnceBroadcasts ? "" : " (disabled)") + ":", NamedTextColor.GOLD));
+        long encodes = SharedPacket.ENCODES.sum();
+        long writes = encodes + SharedPacket.REUSES.sum();
+        sender.sendMessage(text(String.format(Locale.ROOT,
+            " %d writes, %d encodes, %.1f%% saved",
+            writes,
+            encodes,
+            writes == 0L ? 0.0 : (writes - encodes) * 100.0 / writes
+        ), NamedTextColor.GRAY));
+
+        sender.sendMessage(text("Network flushes" + (MetalConfig.flushConsolidation ? "" : " (consolidation disabled)") + ":", NamedTextColor.GOLD));
+        long flushes = FlushConsolidator.TOTAL_FLUSHES.sum();
+        sender.sendMessage(text(String.format(Locale.ROOT,
+            " %d socket flushes, %.0f bytes/flush, %d flushes deferred",
+            flushes,
+            flushes == 0L ? 0.0 : (double) FlushConsolidator.TOTAL_BYTES.sum() / flushes,
+            FlushConsolidator.DEFERRED_FLUSHES.sum()
+        ), NamedTextColor.GRAY));
+        MinecraftServer.getServer().getPlayerList().getPlayers().stream()
+            .sorted(Comparator.comparingDouble((ServerPlayer player) -> player.connection.connection.flushConsolidator.getFlushesPerSecond()).reversed())
+            .limit(10)
+            .forEach(player -> {
+                FlushConsolidator consolidator = player.connection.connection.flushConsolidator;
+                sender.sendMessage(text(String.format(Locale.ROOT,
+                    "  %s: %.1f flushes/s, %.0f bytes/flush",
+                    player.getGameProfile().name(),
+                    consolidator.getFlushesPerSecond(),
+                    consolidator.getBytesPerFlush()
+                ), NamedTextColor.GRAY));
+            });
+
+        sender.sendMessage(text("Packet compression" + (MetalConfig.pooledCompression ? "" : " (disabled)") + ":", NamedTextColor.GOLD));
+        sender.sendMessage(text(String.format(Locale.ROOT,
+            " level %d, %d packets offloaded, %d handled on the event loop",
+            CompressionPool.level(),
+            CompressionPool.OFFLOADED.sum(),
+            CompressionPool.INLINE.sum()
+        ), NamedTextColor.GRAY));
+
+        sender.sendMessage(text("Status cache" + (MetalConfig.statusCache ? "" : " (disabled)") + ":", NamedTextColor.GOLD));
+        sender.sendMessage(text(String.format(Locale.ROOT,
+            " %d pings answered from the cache, %d responses built",
+            StatusCache.HITS.sum(),
+            StatusCache.BUILDS.sum()
+        ), NamedTextColor.GRAY));
+
+        sender.sendMessage(text("Player info aggregation" + (MetalConfig.playerInfoAggregation ? "" : " (disabled)") + ":", NamedTextColor.GOLD));
+        sender.sendMessage(text(String.format(Locale.ROOT,
+            " %d updates queued, %d packets saved",
+            PlayerInfoAggregator.QUEUED.sum(),
+            PlayerInfoAggregator.SAVED.sum()
+        ), NamedTextColor.GRAY));
+    }
+}
@@ -1,12 +1,20 @@
 package net.metalmc.metal;
 
 import com.google.common.base.Throwables;
+import io.papermc.paper.entity.activation.ActivationType;
 import java.io.File;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import net.metalmc.metal.network.FrameSplitter;
 import net.minecraft.server.MinecraftServer;
 import org.bukkit.Bukkit;
+import org.bukkit.command.Command;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 public class MetalConfig {
@@ -16,6 +24,7 @@ public class MetalConfig {
     public static YamlConfiguration config;
     public static int version;
     public static boolean verbose;
+    static Map<String, Command> commands;
 
     public static void init(File configFile) {
         CONFIG_FILE = configFile;
@@ -27,12 +36,21 @@ public class MetalConfig {
         config.options().header(HEADER);
         config.options().copyDefaults(true);
 
+        commands = new HashMap<>();
+        commands.put("metal", new MetalCommand("metal"));
+
         version = getInt("config-version", 1);
         set("config-version", 1);
 
         readConfig(MetalConfig.class, null);
     }
 
+    public static void registerCommands() {
+        for (Map.Entry<String, Command> entry : commands.entrySet()) {
+            MinecraftServer.getServer().server.getCommandMap().register(entry.getKey(), "MetalMC", entry.getValue());
+        }
+    }
+
     protected static void set(String path, Object val) {
         config.addDefault(path, val);
         config.set(path, val);
@@ -48,6 +66,11 @@ public class MetalConfig {
         return config.getInt(path, config.getInt(path));
     }
 
+    protected static String getString(String path, String def) {
+        config.addDefault(path, def);
+        return config.getString(path, config.getString(path));
+    }
+
     protected static double getDouble(String path, double def) {
         config.addDefault(path, def);
         return config.getDouble(path, config.getDouble(path));
@@ -96,6 +119,220 @@ public class MetalConfig {
         optimizeChunkTicking = getBoolean("optimizations.chunk-ticking", true);
     }
 
+    // Entity Lookups
+    public static boolean entitySectionIndex;
+
+    // Entity Tracker
+    public static boolean areaMapEntityTracker;
+
+    // Entity Data
+    public static boolean entityDataDirtyBitset;
+
+    // Entity Tick Budget
+    public static boolean entityTickBudget;
+    public static int entityTickBudgetMaxDeferredTicks;
+    public static double[] entityTickBudgetActivationTypes;
+    public static Map<String, Double> entityTickBudgetEntityTypes;
+
+    private static void entities() {
+        entitySectionIndex = getBoolean("entities.section-index", true);
+
+        // replaces the vanilla tracker scans on section changes and player moves with lookups in chunk keyed area maps
+        areaMapEntityTracker = getBoolean("entities.tracker.area-map", false);
+
+        entityDataDirtyBitset = getBoolean("entities.data.dirty-bitset", true);
+
+        // Budgets are in milliseconds per tick, anything <= 0 disables the budget of that category
+        entityTickBudget = getBoolean("entities.tick-budget.enabled", false);
+        entityTickBudgetMaxDeferredTicks = getInt("entities.tick-budget.max-deferred-ticks", 3);
+        entityTickBudgetActivationTypes = new double[ActivationType.values().length];
+        for (ActivationType type : ActivationType.values()) {
+            double def = switch (type) {
+                case ANIMAL, MONSTER -> 10.0;
+                case VILLAGER, WATER -> 5.0;
+                default -> -1.0;
+            };
+            entityTickBudgetActivationTypes[type.ordinal()] = getDouble("entities.tick-budget.activation-types." + type.name().toLowerCase(Locale.ROOT), def);
+        }
+        entityTickBudgetEntityTypes = new LinkedHashMap<>();
+        ConfigurationSection entityTypes = config.getConfigurationSection("entities.tick-budget.entity-types");
+        if (entityTypes == null) {
+            entityTypes = config.createSection("entities.tick-budget.entity-types");
+        }
+        for (String key : entityTypes.getKeys(false)) {
+            entityTickBudgetEntityTypes.put(key, entityTypes.getDouble(key));
+        }
+    }
+
+    // Redstone
+    public static boolean networkWireEvaluator;
+    public static int networkWireEvaluatorMaxSize;
+    public static boolean networkWireEvaluatorVanillaOrder;
+    public static boolean batchedNeighborUpdates;
+    public static int maxChainedNeighborUpdates;
+    public static Map<String, Integer> worldMaxChainedNeighborUpdates;
+
+    private static void redstone() {
+        // "vanilla" keeps the evaluator vanilla picks (default, or experimental with the redstone experiments)
+        networkWireEvaluator = "network".equalsIgnoreCase(getString("redstone.wire-evaluator", "vanilla"));
+        networkWireEvaluatorMaxSize = getInt("redstone.network-evaluator.max-network-size", 4096);
+        // off: blocks two steps from a changed wire through a non conductor get no update, which breaks quasi-connectivity BUDs
+        networkWireEvaluatorVanillaOrder = getBoolean("redstone.network-evaluator.vanilla-update-order", false);
+
+        batchedNeighborUpdates = getBoolean("redstone.neighbor-updates.batching", false);
+        // -1 keeps max-chained-neighbor-updates from server.properties
+        maxChainedNeighborUpdates = getInt("redstone.neighbor-updates.max-chained", -1);
+        worldMaxChainedNeighborUpdates = new HashMap<>();
+        ConfigurationSection worlds = config.getConfigurationSection("redstone.neighbor-updates.world-max-chained");
+        if (worlds == null) {
+            worlds = config.createSection("redstone.neighbor-updates.world-max-chained");
+        }
+        for (String world : worlds.getKeys(false)) {
+            worldMaxChainedNeighborUpdates.put(world, worlds.getInt(world));
+        }
+    }
+
+    public static int maxChainedNeighborUpdates(net.minecraft.world.level.Level level, int serverDefault) {
+        Integer perWorld = worldMaxChainedNeighborUpdates.get(level.getWorld().getName());
+        if (perWorld != null) {
+            return perWorld;
+        }
+        return maxChainedNeighborUpdates >= 0 ? maxChainedNeighborUpdates : serverDefault;
+    }
+
+    // Events
+    public static boolean skipUnlistenedEvents;
+
+    private static void events() {
+        skipUnlistenedEvents = getBoolean("events.skip-without-listeners", true);
+    }
+
+    // Fluids
+    public static boolean fluidSlopeCache;
+
+    private static void fluids() {
+        fluidSlopeCache = getBoolean("fluids.slope-distance-cache", true);
+    }
+
+    // Collisions
+    public static boolean optimizedCollisions;
+
+    private static void collisions() {
+        // gathers block and entity collisions by walking chunk sections instead of the vanilla iterators
+        optimizedCollisions = getBoolean("collisions.optimized", false);
+    }
+
+    // Scheduled Ticks
+    public static boolean packedScheduledTicks;
+    // Random Ticks
+    public static boolean randomTickIndex;
+    // Weather And Precipitation
+    public static boolean environmentTickScheduler;
+
+    private static void ticks() {
+        // applies to chunks loaded after a change
+        packedScheduledTicks = getBoolean("ticks.packed-scheduled-ticks", true);
+        randomTickIndex = getBoolean("ticks.random-tick-index", true);
+        // keeps loaded chunks on timing wheels keyed by their next ice, snow and lightning tick
+        environmentTickScheduler = getBoolean("ticks.environment-scheduler", false);
+    }
+
+    // Explosions
+    public static boolean explosionResistanceCache;
+    public static boolean explosionExposureCache;
+    public static boolean mergePrimedTnt;
+
+    private static void explosions() {
+        explosionResistanceCache = getBoolean("explosions.resistance-cache", true);
+        // exact, so independent of Paper's optimize-explosions, whose density cache it replaces when both are enabled
+        explosionExposureCache = getBoolean("explosions.exposure-cache", true);
+        // merged tnt moves as one entity and explodes once per merged entity
+        mergePrimedTnt = getBoolean("explosions.merge-primed-tnt", false);
+    }
+
+    // Network
+    public static boolean ioUringTransport;
+    public static boolean encodeOnceBroadcasts;
+    public static boolean flushConsolidation;
+    public static int flushConsolidationMaxDelayMillis;
+    public static int flushConsolidationSensitiveMaxDelayMillis;
+    public static boolean flushMetrics;
+    public static boolean pooledCompression;
+    public static boolean compressionOffload;
+    public static int compressionOffloadThreshold;
+    public static int compressionThreads;
+    public static int compressionQueueSize;
+    public static int compressionLevel;
+    public static int compressionMinLevel;
+    public static boolean compressionAdaptiveLevel;
+    public static boolean adaptiveChunkSending;
+    public static int adaptiveChunkSendingInitialBudget;
+    public static int adaptiveChunkSendingMaxBudget;
+    public static int adaptiveChunkSendingMaxChunksPerTick;
+    public static boolean slidingWindowPacketLimiter;
+    public static boolean statusCache;
+    public static int statusCacheTtlMillis;
+    public static boolean statusCacheWithEventListeners;
+    public static double statusCacheMaxEventsPerSecond;
+    public static boolean playerInfoAggregation;
+    public static boolean eventLoopKeepAlive;
+    public static int eventLoopKeepAliveIntervalMillis;
+    public static boolean zeroCopyFrameDecoder;
+    public static int maxFrameLength;
+
+    private static void network() {
+        // falls back to epoll or nio when the kernel or platform lacks support
+        ioUringTransport = getBoolean("network.io-uring", false);
+        // packet listening plugins see the shared wrapper instead of the broadcast packet
+        encodeOnceBroadcasts = getBoolean("network.encode-once-broadcasts", false);
+        // packets sent between ticks are flushed once per connection after the delay, <= 0 flushes them right away
+        flushConsolidation = getBoolean("network.flush-consolidation.enabled", false);
+        flushConsolidationMaxDelayMillis = getInt("network.flush-consolidation.max-delay-ms", 10);
+        flushConsolidationSensitiveMaxDelayMillis = getInt("network.flush-consolidation.latency-sensitive-max-delay-ms", 0);
+        // applies to connections opened after a change
+        flushMetrics = getBoolean("network.flush-metrics", true);
+
+        // applies to connections opened after a change
+        pooledCompression = getBoolean("network.compression.pooled", true);
+        compressionOffload = getBoolean("network.compression.offload", true);
+        compressionOffloadThreshold = getInt("network.compression.offload-threshold", 16384);
+        // <= 0 uses a quarter of the available processors
+        compressionThreads = getInt("network.compression.threads", -1);
+        compressionQueueSize = getInt("network.compression.queue-size", 4096);
+        compressionLevel = getInt("network.compression.level", 6);
+        compressionMinLevel = getInt("network.compression.min-level", 1);
+        compressionAdaptiveLevel = getBoolean("network.compression.adaptive-level", true);
+
+        // sizes chunk batches to the measured throughput and round trip time of the player instead of the client's requested rate,
+        // budgets are uncompressed kilobytes in flight, applies to players joining after a change
+        adaptiveChunkSending = getBoolean("network.adaptive-chunk-sending.enabled", false);
+        adaptiveChunkSendingInitialBudget = getInt("network.adaptive-chunk-sending.initial-budget-kb", 256);
+        adaptiveChunkSendingMaxBudget = getInt("network.adaptive-chunk-sending.max-budget-kb", 8192);
+        adaptiveChunkSendingMaxChunksPerTick = getInt("network.adaptive-chunk-sending.max-chunks-per-tick", 64);
+
+        // Paper's packet-limiter limits counted per connection without a lock, false uses Paper's own limiter
+        slidingWindowPacketLimiter = getBoolean("network.packet-limiter.sliding-window", true);
+
+        // server list pings share one response, rebuilt in the background after the ttl
+        statusCache = getBoolean("network.status-cache.enabled", false);
+        statusCacheTtlMillis = getInt("network.status-cache.ttl-ms", 1000);
+        // ping event listeners then see one request per refresh instead of every ping
+        statusCacheWithEventListeners = getBoolean("network.status-cache.cache-with-event-listeners", false);
+        statusCacheMaxEventsPerSecond = getDouble("network.status-cache.max-events-per-second", 1.0);
+
+        // tab list changes of a tick are sent as one packet per player at the end of the tick
+        playerInfoAggregation = getBoolean("network.player-info-aggregation", false);
+
+        // keep-alives are sent and timed out on the netty threads instead of the tick, connections stay there until they close
+        eventLoopKeepAlive = getBoolean("network.event-loop-keep-alive.enabled", false);
+        eventLoopKeepAliveIntervalMillis = getInt("network.event-loop-keep-alive.check-interval-ms", 1000);
+
+        // frames are passed on as slices of the receive buffer instead of copies
+        zeroCopyFrameDecoder = getBoolean("network.frame-decoder.zero-copy", true);
+        // longer frames disconnect before they are buffered, with or without zero-copy, <= 0 or above 2097151 allows what the 21 bit length prefix can hold
+        maxFrameLength = FrameSplitter.clampMaxLength(getInt("network.frame-decoder.max-frame-length", 2097151));
+    }
+
     private static void multithreading() {
         // Async Chunk Loading
         asyncChunkLoadingEnabled = getBoolean("multithreading.async-chunk-loading.enabled", true);
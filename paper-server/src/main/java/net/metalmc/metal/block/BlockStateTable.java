@@ -0,0 +1,204 @@
+package net.metalmc.metal.block;
+
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.EmptyBlockGetter;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockBehaviour;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.shapes.CollisionContext;
+import net.minecraft.world.phys.shapes.Shapes;
+import net.minecraft.world.phys.shapes.VoxelShape;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collision properties of every block state, packed into arrays indexed by the state's
+ * registry id ({@code BlockStateBase#metalStateId}).
+ * <p>
+ * The table is built once during bootstrap from the vanilla shape caches. A collision shape is only
+ * stored when it depends neither on the position, which vanilla expresses with dynamic shapes, nor
+ * on the collision context, which is only the case when no class of the block overrides
+ * {@code getCollisionShape}. Collision properties of the other states are left unset and
+ * callers have to ask the state itself, see {@link #hasConstantCollision(BlockState)}.
+ * <p>
+ * Face sturdiness, face occlusion, solid rendering and light opacity are not part of the table.
+ * {@code BlockStateBase} already keeps them in fields and in its shape cache, so a column indexed by
+ * the state id would trade one field read for an id read plus an array read, and the light engine
+ * reads them through its own per-state cache.
+ */
+public final class BlockStateTable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlockStateTable.class);
+
+    public static final int CONSTANT_SHAPE = 1;
+    public static final int CONSTANT_COLLISION = 1 << 1;
+    public static final int EMPTY_COLLISION = 1 << 2;
+    public static final int FULL_BLOCK_COLLISION = 1 << 3;
+    public static final int SINGLE_BOX_COLLISION = 1 << 4;
+    public static final int SPECIAL_COLLISION = 1 << 5;
+
+    private static final int[] EMPTY_FLAGS = new int[0];
+
+    private static int[] flags = EMPTY_FLAGS;
+    private static @Nullable VoxelShape[] collisionShapes = new VoxelShape[0];
+    // minX, minY, minZ, maxX, maxY, maxZ of single box collision shapes
+    private static double[] collisionBoxes = new double[0];
+
+    private BlockStateTable() {
+    }
+
+    /**
+     * Builds the table. Called from {@code Bootstrap} once every block state is registered and has
+     * its vanilla caches initialised.
+     */
+    public static void build() {
+        final int size = Block.BLOCK_STATE_REGISTRY.size();
+        final int[] flags = new int[size];
+        final VoxelShape[] collisionShapes = new VoxelShape[size];
+        final double[] collisionBoxes = new double[size * 6];
+        final ContextCheck contextCheck = new ContextCheck();
+
+        for (final BlockState state : Block.BLOCK_STATE_REGISTRY) {
+            final int id = Block.BLOCK_STATE_REGISTRY.getId(state);
+            state.metalStateId = id;
+
+            int stateFlags = 0;
+            if (state.hasLargeCollisionShape() || state.is(Blocks.MOVING_PISTON)) {
+                stateFlags |= SPECIAL_COLLISION;
+            }
+
+            if (!state.getBlock().hasDynamicShape()) {
+                stateFlags |= CONSTANT_SHAPE;
+                if (!contextCheck.isContextDependent(state.getBlock().getClass())) {
+                    final VoxelShape shape = state.getCollisionShape(EmptyBlockGetter.INSTANCE, BlockPos.ZERO, CollisionContext.empty());
+                    collisionShapes[id] = shape;
+                    stateFlags |= CONSTANT_COLLISION;
+                    if (shape.isEmpty()) {
+                        stateFlags |= EMPTY_COLLISION;
+                    } else if (shape == Shapes.block()) {
+                        stateFlags |= FULL_BLOCK_COLLISION | SINGLE_BOX_COLLISION;
+                        setBox(collisionBoxes, id, 0.0, 0.0, 0.0, 1.0, 1.0, 1.0);
+                    } else {
+                        final List<AABB> boxes = shape.toAabbs();
+                        if (boxes.size() == 1) {
+                            final AABB box = boxes.get(0);
+                            stateFlags |= SINGLE_BOX_COLLISION;
+                            setBox(collisionBoxes, id, box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ);
+                        }
+                    }
+                }
+            }
+            flags[id] = stateFlags;
+        }
+
+        BlockStateTable.flags = flags;
+        BlockStateTable.collisionShapes = collisionShapes;
+        BlockStateTable.collisionBoxes = collisionBoxes;
+        LOGGER.debug("Built block state table for {} states", size);
+    }
+
+    /**
+     * @return the packed flags of the state, {@code 0} when the table does not know it
+     */
+    public static int flags(BlockState state) {
+        final int id = state.metalStateId;
+        final int[] flags = BlockStateTable.flags;
+        return id >= 0 && id < flags.length ? flags[id] : 0;
+    }
+
+    public static boolean hasConstantCollision(BlockState state) {
+        return (flags(state) & CONSTANT_COLLISION) != 0;
+    }
+
+    /**
+     * Whether the block needs the border around a collision box to be searched, see {@code BlockCollisions}.
+     */
+    public static boolean isSpecialColliding(BlockState state) {
+        final int id = state.metalStateId;
+        final int[] flags = BlockStateTable.flags;
+        if (id >= 0 && id < flags.length) {
+            return (flags[id] & SPECIAL_COLLISION) != 0;
+        }
+        return state.hasLargeCollisionShape() || state.is(Blocks.MOVING_PISTON);
+    }
+
+    /**
+     * @return the collision shape of a {@linkplain #hasConstantCollision(BlockState) constant collision} state, otherwise {@code null}
+     */
+    public static @Nullable VoxelShape collisionShape(BlockState state) {
+        final int id = state.metalStateId;
+        final VoxelShape[] shapes = BlockStateTable.collisionShapes;
+        return id >= 0 && id < shapes.length ? shapes[id] : null;
+    }
+
+    /**
+     * Local collision box of a {@link #SINGLE_BOX_COLLISION} state, as six values starting at {@code id * 6}.
+     */
+    public static double[] collisionBoxes() {
+        return collisionBoxes;
+    }
+
+    /**
+     * Registry id of the state, without the id map lookup once the table is built.
+     */
+    public static int id(BlockState state) {
+        final int id = state.metalStateId;
+        return id >= 0 ? id : Block.BLOCK_STATE_REGISTRY.getId(state);
+    }
+
+    private static void setBox(double[] boxes, int id, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        final int offset = id * 6;
+        boxes[offset] = minX;
+        boxes[offset + 1] = minY;
+        boxes[offset + 2] = minZ;
+        boxes[offset + 3] = maxX;
+        boxes[offset + 4] = maxY;
+        boxes[offset + 5] = maxZ;
+    }
+
+    /**
+     * Finds blocks overriding the context aware {@code getCollisionShape}. The default implementation
+     * only looks at the context free shape, so blocks without an override cannot depend on the context.
+     */
+    private static final class ContextCheck {
+        private final boolean available = declaresCollisionShape(BlockBehaviour.class);
+        private final Map<Class<?>, Boolean> results = new IdentityHashMap<>();
+
+        private ContextCheck() {
+            if (!this.available) {
+                LOGGER.warn("Could not find BlockBehaviour#getCollisionShape, collision shapes will not be cached");
+            }
+        }
+
+        private boolean isContextDependent(Class<?> blockClass) {
+            if (!this.available) {
+                return true;
+            }
+            return this.results.computeIfAbsent(blockClass, type -> {
+                for (Class<?> clazz = type; clazz != null && clazz != BlockBehaviour.class; clazz = clazz.getSuperclass()) {
+                    if (declaresCollisionShape(clazz)) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+
+        private static boolean declaresCollisionShape(Class<?> clazz) {
+            for (final Method method : clazz.getDeclaredMethods()) {
+                final Class<?>[] parameters = method.getParameterTypes();
+                if (method.getName().equals("getCollisionShape") && parameters.length == 4
+                    && parameters[0] == BlockState.class && parameters[3] == CollisionContext.class) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
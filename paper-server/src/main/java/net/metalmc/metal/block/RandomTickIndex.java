@@ -0,0 +1,205 @@
+package net.metalmc.metal.block;
+
+import it.unimi.dsi.fastutil.shorts.Short2ShortOpenHashMap;
+import java.util.Arrays;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.RandomSource;
+import net.minecraft.util.profiling.Profiler;
+import net.minecraft.util.profiling.ProfilerFiller;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.material.FluidState;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Positions of the randomly ticking blocks and fluids of one chunk section, kept up to date by
+ * {@code LevelChunkSection#setBlockState} and {@code recalcBlockCounts}. Sections without such
+ * blocks have no index ({@code LevelChunkSection#randomTickIndex} is {@code null}), sections that
+ * changed while the index was disabled have {@link #UNBUILT}.
+ * <p>
+ * Vanilla rolls {@code randomTickSpeed} positions out of the 4096 of a section and ticks those that
+ * turn out to be randomly ticking. Each roll hits one of the {@code n} indexed positions with
+ * probability {@code n / 4096}, uniformly among them, so {@link #tickChunk(ServerLevel, LevelChunk, int)}
+ * draws the gap to the next hit from the matching geometric distribution and only visits positions
+ * that are actually ticked. The cost of a section follows its ticking blocks instead of its volume.
+ */
+public final class RandomTickIndex {
+    private static final int SECTION_SIZE = 16 * 16 * 16;
+
+    /**
+     * Stands in for the index of sections changed while {@code ticks.random-tick-index} was off,
+     * they are indexed again when next ticked with it on.
+     */
+    public static final RandomTickIndex UNBUILT = new RandomTickIndex();
+
+    private short[] positions;
+    private final Short2ShortOpenHashMap indices;
+    private int size;
+
+    public RandomTickIndex() {
+        this(16);
+    }
+
+    private RandomTickIndex(int capacity) {
+        this.positions = new short[Math.min(capacity, SECTION_SIZE)];
+        this.indices = new Short2ShortOpenHashMap(capacity);
+        this.indices.defaultReturnValue((short) -1);
+    }
+
+    public static boolean isRandomlyTicking(BlockState state) {
+        return state.isRandomlyTicking() || state.getFluidState().isRandomlyTicking();
+    }
+
+    /**
+     * Updates the index of a section after the block at the given section local position changed.
+     */
+    public static void update(LevelChunkSection section, int x, int y, int z, BlockState previous, BlockState state) {
+        if (section.randomTickIndex == UNBUILT) {
+            return;
+        }
+        final boolean ticking = isRandomlyTicking(state);
+        if (ticking == isRandomlyTicking(previous)) {
+            return;
+        }
+        if (ticking) {
+            if (section.randomTickIndex == null) {
+                section.randomTickIndex = new RandomTickIndex();
+            }
+            section.randomTickIndex.add(x, y, z);
+        } else if (section.randomTickIndex != null) {
+            section.randomTickIndex.remove(x, y, z);
+        }
+    }
+
+    /**
+     * Indexes the randomly ticking positions of {@code states}.
+     *
+     * @param expected how many positions are randomly ticking, as counted from the palette, or
+     *     {@code -1} if unknown. The search ends once that many are found
+     * @return the index, {@code null} if no position is randomly ticking
+     */
+    @Nullable
+    public static RandomTickIndex build(PalettedContainer<BlockState> states, int expected) {
+        if (expected == 0) {
+            return null;
+        }
+        final RandomTickIndex index = new RandomTickIndex(expected < 0 ? 16 : expected);
+        for (int y = 0; y < 16; ++y) {
+            for (int z = 0; z < 16; ++z) {
+                for (int x = 0; x < 16; ++x) {
+                    if (isRandomlyTicking(states.get(x, y, z))) {
+                        index.add(x, y, z);
+                        if (index.size == expected) {
+                            return index;
+                        }
+                    }
+                }
+            }
+        }
+        return index.size == 0 ? null : index;
+    }
+
+    private static short pack(int x, int y, int z) {
+        return (short) ((y << 8) | (z << 4) | x);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void add(int x, int y, int z) {
+        final short pos = pack(x, y, z);
+        if (this.indices.containsKey(pos)) {
+            return;
+        }
+        if (this.size == this.positions.length) {
+            this.positions = Arrays.copyOf(this.positions, Math.min(this.size << 1, SECTION_SIZE));
+        }
+        this.indices.put(pos, (short) this.size);
+        this.positions[this.size++] = pos;
+    }
+
+    public void remove(int x, int y, int z) {
+        final short index = this.indices.remove(pack(x, y, z));
+        if (index < 0) {
+            return;
+        }
+        final short last = this.positions[--this.size];
+        if (index != this.size) {
+            this.positions[index] = last;
+            this.indices.put(last, index);
+        }
+    }
+
+    public RandomTickIndex copy() {
+        if (this == UNBUILT) {
+            return this;
+        }
+        final RandomTickIndex copy = new RandomTickIndex();
+        copy.positions = Arrays.copyOf(this.positions, this.positions.length);
+        copy.indices.putAll(this.indices);
+        copy.size = this.size;
+        return copy;
+    }
+
+    /**
+     * Random ticks the sections of a chunk, replacing the {@code tickBlocks} part of {@code ServerLevel#tickChunk}.
+     */
+    public static void tickChunk(ServerLevel level, LevelChunk chunk, int randomTickSpeed) {
+        final ProfilerFiller profiler = Profiler.get();
+        final RandomSource random = level.random;
+        final int minBlockX = chunk.getPos().getMinBlockX();
+        final int minBlockZ = chunk.getPos().getMinBlockZ();
+        final LevelChunkSection[] sections = chunk.getSections();
+        for (int sectionIndex = 0; sectionIndex < sections.length; ++sectionIndex) {
+            final LevelChunkSection section = sections[sectionIndex];
+            RandomTickIndex index = section.randomTickIndex;
+            if (index == UNBUILT) {
+                index = section.randomTickIndex = build(section.states, -1);
+            }
+            if (index == null || index.size == 0) {
+                continue;
+            }
+            final int minBlockY = SectionPos.sectionToBlockCoord(chunk.getSectionYFromSectionIndex(sectionIndex));
+
+            long roll = -1L;
+            while (index.size != 0) {
+                roll += 1L + rollsUntilHit(random, index.size);
+                if (roll >= randomTickSpeed) {
+                    break;
+                }
+
+                final short packed = index.positions[random.nextInt(index.size)];
+                final int x = packed & 15;
+                final int y = (packed >>> 8) & 15;
+                final int z = (packed >>> 4) & 15;
+                final BlockPos pos = new BlockPos(minBlockX + x, minBlockY + y, minBlockZ + z);
+                profiler.push("randomTick");
+                final BlockState state = section.getBlockState(x, y, z);
+                if (state.isRandomlyTicking()) {
+                    state.randomTick(level, pos, random);
+                }
+                final FluidState fluidState = state.getFluidState();
+                if (fluidState.isRandomlyTicking()) {
+                    fluidState.randomTick(level, pos, random);
+                }
+                profiler.pop();
+            }
+        }
+    }
+
+    /**
+     * @return the number of missed rolls before the next one hits one of {@code ticking} positions
+     */
+    static long rollsUntilHit(RandomSource random, int ticking) {
+        if (ticking >= SECTION_SIZE) {
+            return 0L;
+        }
+        final double miss = Math.log1p(-(double) ticking / SECTION_SIZE);
+        return (long) Math.min(Math.floor(Math.log1p(-random.nextDouble()) / miss), Integer.MAX_VALUE);
+    }
+}
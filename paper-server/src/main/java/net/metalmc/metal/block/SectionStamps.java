@@ -0,0 +1,63 @@
+package net.metalmc.metal.block;
+
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+
+/**
+ * Change stamps of the chunk sections of one world, for caches of results that only depend on the
+ * blocks of an area.
+ * <p>
+ * A section loses its stamp whenever one of its blocks changes ({@code LevelChunkSection#blockStamp})
+ * and gets a new, higher one the next time it is looked at, so a changed or reloaded section always
+ * raises the highest stamp of the areas containing it. A result stored together with the stamp of
+ * its area is therefore still valid as long as the area reports the same stamp. Main thread only.
+ */
+public final class SectionStamps {
+    public static final long UNCACHEABLE = -1L;
+
+    private final Level level;
+    private long stamp;
+
+    public SectionStamps(Level level) {
+        this.level = level;
+    }
+
+    /**
+     * @param maxSections the largest number of sections worth visiting
+     * @return the highest stamp of the sections covering the given block area, or {@link #UNCACHEABLE}
+     *         when it touches unloaded chunks or covers more than {@code maxSections} sections
+     */
+    public long areaStamp(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int maxSections) {
+        final int minSection = this.level.getMinSectionY();
+        final int fromChunkX = minX >> 4;
+        final int toChunkX = maxX >> 4;
+        final int fromChunkZ = minZ >> 4;
+        final int toChunkZ = maxZ >> 4;
+        // sections outside the world never change
+        final int fromSectionY = Math.max(minY >> 4, minSection);
+        final int toSectionY = Math.min(maxY >> 4, this.level.getMaxSectionY());
+        if ((long) (toChunkX - fromChunkX + 1) * (toChunkZ - fromChunkZ + 1) * Math.max(0, toSectionY - fromSectionY + 1) > maxSections) {
+            return UNCACHEABLE;
+        }
+
+        long highest = 0L;
+        for (int chunkX = fromChunkX; chunkX <= toChunkX; ++chunkX) {
+            for (int chunkZ = fromChunkZ; chunkZ <= toChunkZ; ++chunkZ) {
+                final LevelChunk chunk = this.level.getChunkIfLoaded(chunkX, chunkZ);
+                if (chunk == null) {
+                    return UNCACHEABLE;
+                }
+                final LevelChunkSection[] sections = chunk.getSections();
+                for (int sectionY = fromSectionY; sectionY <= toSectionY; ++sectionY) {
+                    final LevelChunkSection section = sections[sectionY - minSection];
+                    if (section.blockStamp == 0L) {
+                        section.blockStamp = ++this.stamp;
+                    }
+                    highest = Math.max(highest, section.blockStamp);
+                }
+            }
+        }
+        return highest;
+    }
+}
@@ -0,0 +1,503 @@
+package net.metalmc.metal.collision;
+
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import net.metalmc.metal.block.BlockStateTable;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.AbortableIterationConsumer;
+import net.minecraft.util.Mth;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntitySelector;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.border.WorldBorder;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.entity.EntityAccess;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import net.minecraft.world.phys.shapes.CollisionContext;
+import net.minecraft.world.phys.shapes.EntityCollisionContext;
+import net.minecraft.world.phys.shapes.Shapes;
+import net.minecraft.world.phys.shapes.VoxelShape;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entity movement collision without the vanilla {@code BlockCollisions} iterator.
+ * <p>
+ * Block collisions are gathered by reading chunk sections directly, in the order of vanilla's
+ * {@code BlockCollisions} cursor: empty sections are skipped, and the one block border around the
+ * box, which only matters for blocks whose shape extends past their own cell, is only visited in
+ * sections that contain such a block. Full cubes and shapes made of a single box are stored as plain
+ * coordinates in a reused buffer and collided with inline box math; only shapes made of several boxes
+ * are kept as {@link VoxelShape}s, in the same sequence as the boxes. States whose collision shape
+ * does not depend on the context are read from the {@link BlockStateTable}, unless the context picks
+ * shapes on its own, like the one of minecarts with the experimental movement. Entity collisions only
+ * look at entities that can be collided with at all, which the section entity index keeps apart.
+ * <p>
+ * The result matches {@code Entity#collideBoundingBox}: the same colliders in the same order, the
+ * same axis order and the same epsilon handling.
+ */
+public final class CollisionEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CollisionEngine.class);
+
+    public static final double COLLISION_EPSILON = 1.0E-7;
+
+    private static final double[] MULTI_BOX = new double[0];
+    private static final int MAX_CACHED_SHAPES = 1024;
+
+    // an entity can only be collided with if its class, or one it extends, overrides
+    // Entity#canBeCollidedWith: boats, minecarts, shulkers and happy ghasts, and whatever plugins add
+    private static final String CAN_BE_COLLIDED_WITH = "canBeCollidedWith";
+    // false if the method is not found under its name, then every entity is checked
+    private static final boolean OVERRIDES_VISIBLE = declaresCanBeCollidedWith(Entity.class);
+    private static final ClassValue<Boolean> HARD_COLLIDING = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            if (!OVERRIDES_VISIBLE) {
+                return true;
+            }
+            for (Class<?> clazz = type; clazz != null && clazz != Entity.class; clazz = clazz.getSuperclass()) {
+                if (declaresCanBeCollidedWith(clazz)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    };
+
+    static {
+        if (!OVERRIDES_VISIBLE) {
+            LOGGER.warn("Entity#{} was not found, collisions check every entity instead of the hard colliding ones", CAN_BE_COLLIDED_WITH);
+        }
+    }
+
+    private static final ThreadLocal<Collector> COLLECTOR = ThreadLocal.withInitial(Collector::new);
+
+    private CollisionEngine() {
+    }
+
+    private static boolean declaresCanBeCollidedWith(Class<?> type) {
+        try {
+            type.getDeclaredMethod(CAN_BE_COLLIDED_WITH, Entity.class);
+            return true;
+        } catch (final NoSuchMethodException ignored) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether the block needs the border around a collision box to be searched, see {@code BlockCollisions}.
+     */
+    public static boolean isSpecialCollidingBlock(BlockState state) {
+        return BlockStateTable.isSpecialColliding(state);
+    }
+
+    /**
+     * Whether other entities may collide with the entity at all, see {@code Entity#canBeCollidedWith}.
+     */
+    public static boolean isHardColliding(EntityAccess entity) {
+        return entity instanceof Entity && isHardColliding(entity.getClass());
+    }
+
+    static boolean isHardColliding(Class<?> type) {
+        return HARD_COLLIDING.get(type);
+    }
+
+    /**
+     * Replacement for {@code Entity#collideBoundingBox}.
+     */
+    public static Vec3 collideBoundingBox(@Nullable Entity entity, Vec3 movement, AABB box, Level level, List<VoxelShape> entityCollisions) {
+        Collector collector = COLLECTOR.get();
+        if (collector.inUse) {
+            // shape lookups are not expected to move entities, but stay correct if a plugin does
+            collector = new Collector();
+        }
+        collector.inUse = true;
+        try {
+            final AABB swept = box.expandTowards(movement);
+            for (int i = 0, len = entityCollisions.size(); i < len; ++i) {
+                collector.addShape(entityCollisions.get(i), 0, 0, 0, null, false);
+            }
+            final WorldBorder worldBorder = level.getWorldBorder();
+            if (entity != null && worldBorder.isInsideCloseToBorder(entity, swept)) {
+                collector.addShape(worldBorder.getCollisionShape());
+            }
+            collectBlockCollisions(level, entity, swept, collector);
+
+            if (collector.isEmpty()) {
+                return movement;
+            }
+
+            final double[] current = {box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ};
+            final double[] result = new double[3];
+            for (final Direction.Axis axis : Direction.axisStepOrder(movement)) {
+                final double offset = movement.get(axis);
+                if (offset != 0.0) {
+                    final int index = axis.ordinal();
+                    final double collided = collector.collide(index, current, offset);
+                    result[index] = collided;
+                    current[index] += collided;
+                    current[index + 3] += collided;
+                }
+            }
+            return new Vec3(result[0], result[1], result[2]);
+        } finally {
+            collector.clear();
+        }
+    }
+
+    /**
+     * Replacement for {@code EntityGetter#getEntityCollisions} on levels, only considering entities
+     * that may be collided with.
+     */
+    public static List<VoxelShape> getEntityCollisions(Level level, @Nullable Entity entity, AABB box) {
+        if (box.getSize() < COLLISION_EPSILON) {
+            return List.of();
+        }
+
+        final Predicate<Entity> predicate = entity == null
+            ? EntitySelector.CAN_BE_COLLIDED_WITH
+            : other -> other != entity && EntitySelector.NO_SPECTATORS.test(other) && entity.canCollideWith(other);
+        final AABB bounds = box.inflate(COLLISION_EPSILON);
+        final List<Entity> entities;
+        if (level instanceof ServerLevel serverLevel) {
+            entities = new ArrayList<>();
+            serverLevel.entityManager.sectionStorage.getHardCollidingEntities(bounds, other -> {
+                if (predicate.test(other)) {
+                    entities.add(other);
+                }
+                return AbortableIterationConsumer.Continuation.CONTINUE;
+            });
+        } else {
+            entities = level.getEntities(entity, bounds, predicate);
+        }
+        if (entities.isEmpty()) {
+            return List.of();
+        }
+
+        final List<VoxelShape> shapes = new ArrayList<>(entities.size());
+        for (int i = 0, len = entities.size(); i < len; ++i) {
+            shapes.add(Shapes.create(entities.get(i).getBoundingBox()));
+        }
+        return shapes;
+    }
+
+    /**
+     * Whether the box pokes out of the world border by more than {@link #COLLISION_EPSILON}.
+     */
+    public static boolean isCollidingWithBorder(WorldBorder worldBorder, AABB box) {
+        final double borderMinX = Math.floor(worldBorder.getMinX());
+        final double borderMaxX = Math.ceil(worldBorder.getMaxX());
+        final double borderMinZ = Math.floor(worldBorder.getMinZ());
+        final double borderMaxZ = Math.ceil(worldBorder.getMaxZ());
+
+        return (borderMinX - box.minX) > COLLISION_EPSILON || (borderMaxX - box.maxX) < -COLLISION_EPSILON
+            || (borderMinZ - box.minZ) > COLLISION_EPSILON || (borderMaxZ - box.maxZ) < -COLLISION_EPSILON;
+    }
+
+    private static void collectBlockCollisions(Level level, @Nullable Entity entity, AABB box, Collector collector) {
+        // same bounds as BlockCollisions: one extra block on every side for shapes larger than a block
+        final int minX = Mth.floor(box.minX - COLLISION_EPSILON) - 1;
+        final int maxX = Mth.floor(box.maxX + COLLISION_EPSILON) + 1;
+        final int minY = Mth.floor(box.minY - COLLISION_EPSILON) - 1;
+        final int maxY = Mth.floor(box.maxY + COLLISION_EPSILON) + 1;
+        final int minZ = Mth.floor(box.minZ - COLLISION_EPSILON) - 1;
+        final int maxZ = Mth.floor(box.maxZ + COLLISION_EPSILON) + 1;
+
+        final int minSection = level.getMinSectionY();
+        final int fromY = Math.max(minY, minSection << 4);
+        final int toY = Math.min(maxY, (level.getMaxSectionY() << 4) | 15);
+        if (fromY > toY) {
+            return;
+        }
+
+        final CollisionContext context = entity == null ? CollisionContext.empty() : CollisionContext.of(entity);
+        // other contexts, like the one of minecarts with the experimental movement, choose shapes themselves
+        final boolean tableShapes = context == CollisionContext.empty() || context.getClass() == EntityCollisionContext.class;
+        final BlockPos.MutableBlockPos pos = collector.pos;
+
+        final int minChunkX = minX >> 4;
+        final int minChunkZ = minZ >> 4;
+        final int chunksX = (maxX >> 4) - minChunkX + 1;
+        final LevelChunk[] chunks = collector.chunks(chunksX * ((maxZ >> 4) - minChunkZ + 1));
+        for (int chunkZ = minChunkZ, index = 0; chunkZ <= maxZ >> 4; ++chunkZ) {
+            for (int chunkX = minChunkX; chunkX <= maxX >> 4; ++chunkX) {
+                chunks[index++] = level.getChunkIfLoaded(chunkX, chunkZ);
+            }
+        }
+
+        // x first, then y, then z, like the cursor of BlockCollisions
+        for (int z = minZ; z <= maxZ; ++z) {
+            final int edgeZ = z == minZ || z == maxZ ? 1 : 0;
+            final int chunkRow = ((z >> 4) - minChunkZ) * chunksX;
+            for (int y = fromY; y <= toY; ++y) {
+                final int edgeYZ = edgeZ + (y == minY || y == maxY ? 1 : 0);
+                final int sectionIndex = (y >> 4) - minSection;
+                for (int chunkIndex = 0; chunkIndex < chunksX; ++chunkIndex) {
+                    final LevelChunk chunk = chunks[chunkRow + chunkIndex];
+                    if (chunk == null) {
+                        continue;
+                    }
+                    final LevelChunkSection section = chunk.getSections()[sectionIndex];
+                    if (section.hasOnlyAir()) {
+                        continue;
+                    }
+
+                    // without special blocks nothing on the border can collide
+                    final int border = section.hasSpecialCollidingBlocks() ? 0 : 1;
+                    if (border != 0 && edgeYZ != 0) {
+                        continue;
+                    }
+                    final int chunkX = (minChunkX + chunkIndex) << 4;
+                    final int fromX = Math.max(minX + border, chunkX);
+                    final int toX = Math.min(maxX - border, chunkX | 15);
+
+                    final PalettedContainer<BlockState> states = section.states;
+                    for (int x = fromX; x <= toX; ++x) {
+                        final int edges = edgeYZ + (x == minX || x == maxX ? 1 : 0);
+                        if (edges == 3) {
+                            continue;
+                        }
+
+                        final BlockState state = states.get(x & 15, y & 15, z & 15);
+                        if (state.isAir()
+                            || (edges == 1 && !state.hasLargeCollisionShape())
+                            || (edges == 2 && !state.is(Blocks.MOVING_PISTON))) {
+                            continue;
+                        }
+
+                        final int flags = BlockStateTable.flags(state);
+                        if (tableShapes && (flags & BlockStateTable.CONSTANT_COLLISION) != 0) {
+                            if ((flags & BlockStateTable.SINGLE_BOX_COLLISION) != 0) {
+                                final double[] boxes = BlockStateTable.collisionBoxes();
+                                final int offset = state.metalStateId * 6;
+                                final double boxMinX = boxes[offset] + x;
+                                final double boxMinY = boxes[offset + 1] + y;
+                                final double boxMinZ = boxes[offset + 2] + z;
+                                final double boxMaxX = boxes[offset + 3] + x;
+                                final double boxMaxY = boxes[offset + 4] + y;
+                                final double boxMaxZ = boxes[offset + 5] + z;
+                                if (box.intersects(boxMinX, boxMinY, boxMinZ, boxMaxX, boxMaxY, boxMaxZ)) {
+                                    collector.addBox(boxMinX, boxMinY, boxMinZ, boxMaxX, boxMaxY, boxMaxZ);
+                                }
+                            } else if ((flags & BlockStateTable.EMPTY_COLLISION) == 0) {
+                                collector.addMovedShape(BlockStateTable.collisionShape(state), x, y, z, box);
+                            }
+                            continue;
+                        }
+
+                        pos.set(x, y, z);
+                        final VoxelShape shape = context.getCollisionShape(state, level, pos);
+                        if (shape.isEmpty()) {
+                            continue;
+                        }
+                        if (shape == Shapes.block()) {
+                            if (box.intersects(x, y, z, x + 1.0, y + 1.0, z + 1.0)) {
+                                collector.addBox(x, y, z, x + 1.0, y + 1.0, z + 1.0);
+                            }
+                            continue;
+                        }
+                        collector.addShape(shape, x, y, z, box, !state.getBlock().hasDynamicShape());
+                    }
+                }
+            }
+        }
+    }
+
+    // the inline box collisions mirror VoxelShape#collide for a shape made of one box
+
+    static double collideX(double[] target, int offset, double[] source, double move) {
+        if ((source[1] - target[offset + 4]) < -COLLISION_EPSILON && (source[4] - target[offset + 1]) > COLLISION_EPSILON
+            && (source[2] - target[offset + 5]) < -COLLISION_EPSILON && (source[5] - target[offset + 2]) > COLLISION_EPSILON) {
+            if (move >= 0.0) {
+                final double maxMove = target[offset] - source[3];
+                return maxMove < -COLLISION_EPSILON ? move : Math.min(maxMove, move);
+            } else {
+                final double maxMove = target[offset + 3] - source[0];
+                return maxMove > COLLISION_EPSILON ? move : Math.max(maxMove, move);
+            }
+        }
+        return move;
+    }
+
+    static double collideY(double[] target, int offset, double[] source, double move) {
+        if ((source[0] - target[offset + 3]) < -COLLISION_EPSILON && (source[3] - target[offset]) > COLLISION_EPSILON
+            && (source[2] - target[offset + 5]) < -COLLISION_EPSILON && (source[5] - target[offset + 2]) > COLLISION_EPSILON) {
+            if (move >= 0.0) {
+                final double maxMove = target[offset + 1] - source[4];
+                return maxMove < -COLLISION_EPSILON ? move : Math.min(maxMove, move);
+            } else {
+                final double maxMove = target[offset + 4] - source[1];
+                return maxMove > COLLISION_EPSILON ? move : Math.max(maxMove, move);
+            }
+        }
+        return move;
+    }
+
+    static double collideZ(double[] target, int offset, double[] source, double move) {
+        if ((source[0] - target[offset + 3]) < -COLLISION_EPSILON && (source[3] - target[offset]) > COLLISION_EPSILON
+            && (source[1] - target[offset + 4]) < -COLLISION_EPSILON && (source[4] - target[offset + 1]) > COLLISION_EPSILON) {
+            if (move >= 0.0) {
+                final double maxMove = target[offset + 2] - source[5];
+                return maxMove < -COLLISION_EPSILON ? move : Math.min(maxMove, move);
+            } else {
+                final double maxMove = target[offset + 5] - source[2];
+                return maxMove > COLLISION_EPSILON ? move : Math.max(maxMove, move);
+            }
+        }
+        return move;
+    }
+
+    /**
+     * Per thread collision buffer. Boxes are stored flat as {@code minX, minY, minZ, maxX, maxY, maxZ},
+     * and the colliders in the order they were added, as the index of a box or the complement of the
+     * index of a shape.
+     */
+    private static final class Collector {
+        private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        private final List<VoxelShape> shapes = new ArrayList<>();
+        // local boxes of block shapes, MULTI_BOX for shapes made of several boxes
+        private final Reference2ObjectOpenHashMap<VoxelShape, double[]> shapeBoxes = new Reference2ObjectOpenHashMap<>();
+        private double[] boxes = new double[6 * 32];
+        private int boxCount;
+        private int[] colliders = new int[32];
+        private int colliderCount;
+        private LevelChunk[] chunks = new LevelChunk[4];
+        private boolean inUse;
+
+        private boolean isEmpty() {
+            return this.colliderCount == 0;
+        }
+
+        private LevelChunk[] chunks(int count) {
+            if (count > this.chunks.length) {
+                this.chunks = new LevelChunk[count];
+            }
+            return this.chunks;
+        }
+
+        private void addCollider(int collider) {
+            if (this.colliderCount == this.colliders.length) {
+                this.colliders = Arrays.copyOf(this.colliders, this.colliderCount * 2);
+            }
+            this.colliders[this.colliderCount++] = collider;
+        }
+
+        private void addShape(VoxelShape shape) {
+            this.addCollider(~this.shapes.size());
+            this.shapes.add(shape);
+        }
+
+        private void addBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+            this.addCollider(this.boxCount);
+            int offset = this.boxCount * 6;
+            if (offset == this.boxes.length) {
+                this.boxes = Arrays.copyOf(this.boxes, offset * 2);
+            }
+            final double[] boxes = this.boxes;
+            boxes[offset] = minX;
+            boxes[offset + 1] = minY;
+            boxes[offset + 2] = minZ;
+            boxes[offset + 3] = maxX;
+            boxes[offset + 4] = maxY;
+            boxes[offset + 5] = maxZ;
+            ++this.boxCount;
+        }
+
+        /**
+         * @param box only keep the shape when it intersects this box, {@code null} to always keep it
+         */
+        private void addShape(VoxelShape shape, int x, int y, int z, @Nullable AABB box, boolean cache) {
+            double[] local = cache ? this.shapeBoxes.get(shape) : null;
+            if (local == null) {
+                local = toSingleBox(shape);
+                if (cache) {
+                    if (this.shapeBoxes.size() >= MAX_CACHED_SHAPES) {
+                        this.shapeBoxes.clear();
+                    }
+                    this.shapeBoxes.put(shape, local);
+                }
+            }
+
+            if (local == MULTI_BOX) {
+                this.addMovedShape(shape, x, y, z, box);
+                return;
+            }
+
+            final double minX = local[0] + x;
+            final double minY = local[1] + y;
+            final double minZ = local[2] + z;
+            final double maxX = local[3] + x;
+            final double maxY = local[4] + y;
+            final double maxZ = local[5] + z;
+            if (box == null || box.intersects(minX, minY, minZ, maxX, maxY, maxZ)) {
+                this.addBox(minX, minY, minZ, maxX, maxY, maxZ);
+            }
+        }
+
+        private void addMovedShape(VoxelShape shape, int x, int y, int z, @Nullable AABB box) {
+            final VoxelShape moved = shape.move(x, y, z);
+            if (box == null || moved.bounds().intersects(box)) {
+                this.addShape(moved);
+            }
+        }
+
+        private static double[] toSingleBox(VoxelShape shape) {
+            final List<AABB> boxes = shape.toAabbs();
+            if (boxes.size() != 1) {
+                return MULTI_BOX;
+            }
+            final AABB single = boxes.get(0);
+            return new double[] {single.minX, single.minY, single.minZ, single.maxX, single.maxY, single.maxZ};
+        }
+
+        /**
+         * Same as {@code Shapes#collide} over every collected collider.
+         *
+         * @param axis {@link Direction.Axis} ordinal
+         */
+        private double collide(int axis, double[] source, double move) {
+            final double[] boxes = this.boxes;
+            final int[] colliders = this.colliders;
+            AABB sourceBox = null;
+            for (int i = 0, len = this.colliderCount; i < len; ++i) {
+                if (Math.abs(move) < COLLISION_EPSILON) {
+                    return 0.0;
+                }
+                final int collider = colliders[i];
+                if (collider < 0) {
+                    if (sourceBox == null) {
+                        sourceBox = new AABB(source[0], source[1], source[2], source[3], source[4], source[5]);
+                    }
+                    move = this.shapes.get(~collider).collide(Direction.Axis.VALUES[axis], sourceBox, move);
+                    continue;
+                }
+                final int offset = collider * 6;
+                move = switch (axis) {
+                    case 0 -> collideX(boxes, offset, source, move);
+                    case 1 -> collideY(boxes, offset, source, move);
+                    default -> collideZ(boxes, offset, source, move);
+                };
+            }
+            return move;
+        }
+
+        private void clear() {
+            this.boxCount = 0;
+            this.colliderCount = 0;
+            this.shapes.clear();
+            Arrays.fill(this.chunks, null);
+            this.inUse = false;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package net.metalmc.metal.entity;
+
+import io.papermc.paper.entity.activation.ActivationType;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.player.Player;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per category entity tick budget for one world.
+ * <p>
+ * Every non player entity belongs to a category: its {@link EntityType} when that type has its own
+ * budget configured, its {@link ActivationType} otherwise. From the measured average cost of one
+ * entity tick, each category derives how many of its entities fit in its budget. When a category
+ * has more entities than that, only a window of them is ticked and the rest are deferred to a later
+ * tick. The window rotates by its own size every tick, so entities are served round-robin, and it
+ * never shrinks below {@code 1 / (max-deferred-ticks + 1)} of the category, so no entity waits more
+ * than {@code max-deferred-ticks} ticks in a row while the category keeps its size.
+ * <p>
+ * Players and entities carrying passengers are never deferred. Main thread only.
+ */
+public final class EntityTickBudget {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityTickBudget.class);
+
+    /**
+     * Returned by {@link #admit(Entity)} for entities that must skip this tick.
+     */
+    public static final Category DEFERRED = new Category("deferred", -1.0);
+
+    private static final ActivationType[] ACTIVATION_TYPES = ActivationType.values();
+
+    private final Category[] byActivationType = new Category[ACTIVATION_TYPES.length];
+    private final Map<EntityType<?>, Category> byEntityType = new Reference2ObjectOpenHashMap<>();
+    private final List<Category> categories = new ArrayList<>();
+    private Object loadedConfig;
+    private int currentTick = Integer.MIN_VALUE;
+
+    /**
+     * Decides whether the entity ticks now. Categories without a budget always tick but are still
+     * accounted for, so their cost shows up in {@code /metal stats}.
+     *
+     * @return {@code null} when the entity is not budgeted, {@link #DEFERRED} when it has to skip this
+     *         tick, otherwise the category its tick time has to be {@linkplain Category#record(long) recorded} to
+     */
+    public @Nullable Category admit(final Entity entity) {
+        if (!MetalConfig.entityTickBudget || entity instanceof Player || entity.isVehicle()) {
+            return null;
+        }
+
+        final int tick = MinecraftServer.currentTick;
+        if (tick != this.currentTick) {
+            this.currentTick = tick;
+            this.startTick();
+        }
+
+        Category category = this.byEntityType.get(entity.getType());
+        if (category == null) {
+            category = this.byActivationType[entity.activationType.ordinal()];
+        }
+        return category.admit() ? category : DEFERRED;
+    }
+
+    public List<Category> getCategories() {
+        return Collections.unmodifiableList(this.categories);
+    }
+
+    private void startTick() {
+        if (this.loadedConfig != MetalConfig.config) {
+            this.loadedConfig = MetalConfig.config;
+            this.loadCategories();
+        }
+
+        final int maxDeferredTicks = Math.max(0, MetalConfig.entityTickBudgetMaxDeferredTicks);
+        for (final Category category : this.categories) {
+            category.startTick(maxDeferredTicks);
+        }
+    }
+
+    private void loadCategories() {
+        this.categories.clear();
+        this.byEntityType.clear();
+
+        for (final ActivationType type : ACTIVATION_TYPES) {
+            final Category category = new Category(type.name().toLowerCase(Locale.ROOT), MetalConfig.entityTickBudgetActivationTypes[type.ordinal()]);
+            this.byActivationType[type.ordinal()] = category;
+            this.categories.add(category);
+        }
+
+        for (final Map.Entry<String, Double> entry : MetalConfig.entityTickBudgetEntityTypes.entrySet()) {
+            final EntityType<?> type = EntityType.byString(entry.getKey()).orElse(null);
+            if (type == null) {
+                LOGGER.warn("Unknown entity type '{}' in entities.tick-budget.entity-types", entry.getKey());
+                continue;
+            }
+            final Category category = new Category(EntityType.getKey(type).toString(), entry.getValue());
+            this.byEntityType.put(type, category);
+            this.categories.add(category);
+        }
+    }
+
+    /**
+     * Tick accounting for one budget category.
+     */
+    public static final class Category {
+        private static final double SMOOTHING = 0.05;
+
+        private final String name;
+        private final long budgetNanos;
+
+        // current tick
+        private int seen;
+        private int ticked;
+        private long spentNanos;
+
+        // window for the current tick
+        private int population;
+        private int capacity = Integer.MAX_VALUE;
+        private int windowStart;
+
+        // smoothed per tick figures
+        private double avgEntityNanos;
+        private double avgTickNanos;
+        private double avgSeen;
+        private double avgDeferred;
+        private long totalDeferred;
+
+        Category(final String name, final double budgetMillis) {
+            this.name = name;
+            this.budgetNanos = budgetMillis <= 0.0 ? -1L : (long) (budgetMillis * 1.0E6);
+        }
+
+        void startTick(final int maxDeferredTicks) {
+            final int seen = this.seen;
+            final int deferred = seen - this.ticked;
+            if (this.ticked > 0) {
+                this.avgEntityNanos = smooth(this.avgEntityNanos, (double) this.spentNanos / this.ticked);
+            }
+            this.avgTickNanos = smooth(this.avgTickNanos, this.spentNanos);
+            this.avgSeen = smooth(this.avgSeen, seen);
+            this.avgDeferred = smooth(this.avgDeferred, deferred);
+            this.totalDeferred += deferred;
+
+            this.seen = 0;
+            this.ticked = 0;
+            this.spentNanos = 0L;
+
+            if (this.budgetNanos <= 0L || this.avgEntityNanos <= 0.0 || seen == 0) {
+                this.population = seen;
+                this.capacity = Integer.MAX_VALUE;
+                return;
+            }
+
+            final int minimum = (seen + maxDeferredTicks) / (maxDeferredTicks + 1);
+            final int capacity = Math.max(minimum, (int) Math.min(Integer.MAX_VALUE, this.budgetNanos / this.avgEntityNanos));
+            if (capacity >= seen) {
+                this.capacity = Integer.MAX_VALUE;
+            } else {
+                // continue where the last window stopped
+                this.windowStart = this.population == 0 ? 0 : (this.windowStart + Math.min(this.capacity, this.population)) % seen;
+                this.capacity = capacity;
+            }
+            this.population = seen;
+        }
+
+        boolean admit() {
+            final int ordinal = this.seen++;
+            if (this.capacity == Integer.MAX_VALUE) {
+                ++this.ticked;
+                return true;
+            }
+
+            // the category grew since the last tick, the extra entities are not part of the rotation yet
+            final int population = this.population;
+            if (ordinal >= population) {
+                ++this.ticked;
+                return true;
+            }
+            int offset = ordinal - this.windowStart;
+            if (offset < 0) {
+                offset += population;
+            }
+            if (offset < this.capacity) {
+                ++this.ticked;
+                return true;
+            }
+            return false;
+        }
+
+        public void record(final long nanos) {
+            this.spentNanos += nanos;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public double getBudgetMillis() {
+            return this.budgetNanos <= 0L ? -1.0 : this.budgetNanos / 1.0E6;
+        }
+
+        public double getAverageEntities() {
+            return this.avgSeen;
+        }
+
+        public double getAverageTickMillis() {
+            return this.avgTickNanos / 1.0E6;
+        }
+
+        public double getAverageEntityMicros() {
+            return this.avgEntityNanos / 1.0E3;
+        }
+
+        public double getAverageDeferred() {
+            return this.avgDeferred;
+        }
+
+        public long getTotalDeferred() {
+            return this.totalDeferred;
+        }
+
+        private static double smooth(final double average, final double sample) {
+            return average == 0.0 ? sample : average + (sample - average) * SMOOTHING;
+        }
+    }
+}
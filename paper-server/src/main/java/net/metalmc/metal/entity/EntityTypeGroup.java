@@ -0,0 +1,101 @@
+package net.metalmc.metal.entity;
+
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.decoration.HangingEntity;
+import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.entity.projectile.Projectile;
+import net.minecraft.world.level.entity.EntityAccess;
+
+/**
+ * Coarse entity categories used by {@link SectionEntityIndex}.
+ * An entity belongs to the first group (in declaration order) whose class it extends,
+ * so the groups partition every section without overlap.
+ */
+public enum EntityTypeGroup {
+    PLAYER(Player.class),
+    LIVING(LivingEntity.class),
+    ITEM(ItemEntity.class),
+    PROJECTILE(Projectile.class),
+    HANGING(HangingEntity.class),
+    OTHER(null);
+
+    public static final EntityTypeGroup[] VALUES = values();
+    public static final int COUNT = VALUES.length;
+    public static final int ALL_MASK = (1 << COUNT) - 1;
+
+    private static final ClassValue<EntityTypeGroup> GROUP_BY_CLASS = new ClassValue<>() {
+        @Override
+        protected EntityTypeGroup computeValue(Class<?> type) {
+            for (EntityTypeGroup group : VALUES) {
+                if (group.type != null && group.type.isAssignableFrom(type)) {
+                    return group;
+                }
+            }
+            return OTHER;
+        }
+    };
+
+    private static final ClassValue<Integer> MASK_BY_QUERY_CLASS = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return computeMask(type);
+        }
+    };
+
+    private final Class<? extends Entity> type;
+
+    EntityTypeGroup(Class<? extends Entity> type) {
+        this.type = type;
+    }
+
+    public int bit() {
+        return 1 << this.ordinal();
+    }
+
+    /**
+     * Returns the group the given entity is stored under.
+     */
+    public static EntityTypeGroup of(EntityAccess entity) {
+        return entity instanceof Entity ? GROUP_BY_CLASS.get(entity.getClass()) : OTHER;
+    }
+
+    /**
+     * Returns a bitmask of every group that may contain instances of the queried class.
+     * The mask is conservative: callers still have to type-check each candidate.
+     */
+    public static int maskFor(Class<?> queryClass) {
+        return MASK_BY_QUERY_CLASS.get(queryClass);
+    }
+
+    private static int computeMask(Class<?> queryClass) {
+        // interfaces can be implemented anywhere in the hierarchy
+        if (queryClass.isInterface() || !Entity.class.isAssignableFrom(queryClass)) {
+            return ALL_MASK;
+        }
+
+        int mask = 0;
+        boolean coveredByGroup = false;
+        for (EntityTypeGroup group : VALUES) {
+            if (group.type == null) {
+                continue;
+            }
+            // two classes can only share instances when one extends the other; the first
+            // group the query class extends owns all of its instances
+            if (group.type.isAssignableFrom(queryClass)) {
+                coveredByGroup = true;
+                mask |= group.bit();
+                break;
+            } else if (queryClass.isAssignableFrom(group.type)) {
+                mask |= group.bit();
+            }
+        }
+
+        if (!coveredByGroup) {
+            mask |= OTHER.bit();
+        }
+
+        return mask;
+    }
+}
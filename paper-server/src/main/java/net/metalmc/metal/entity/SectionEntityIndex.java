@@ -0,0 +1,254 @@
+package net.metalmc.metal.entity;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import java.util.Arrays;
+import java.util.List;
+import net.metalmc.metal.collision.CollisionEngine;
+import net.minecraft.util.AbortableIterationConsumer;
+import net.minecraft.world.level.entity.EntityAccess;
+import net.minecraft.world.level.entity.EntityTypeTest;
+import net.minecraft.world.phys.AABB;
+
+/**
+ * Flat, per-section entity storage kept alongside the vanilla {@code ClassInstanceMultiMap}.
+ * Entities are held in insertion order in one array for untyped queries, and each
+ * {@link EntityTypeGroup} keeps the slots of its members for typed queries, so AABB lookups
+ * neither allocate iterators nor run {@code instanceof} checks against groups that cannot match.
+ * When requested, the slots of entities other entities collide with are kept as well for the
+ * collision broadphase.
+ * <p>
+ * Removal clears the entity's slot, found through a slot map, instead of shifting the array,
+ * and the cleared slots are compacted away once they outnumber the live ones. Iteration order
+ * therefore always matches insertion order, like the vanilla storage.
+ * Only accessed from the thread owning the section.
+ */
+public final class SectionEntityIndex<T extends EntityAccess> {
+    private static final EntityAccess[] EMPTY_ENTITIES = new EntityAccess[0];
+    private static final byte[] EMPTY_GROUPS = new byte[0];
+    private static final int[] EMPTY_SLOTS = new int[0];
+    private static final int INITIAL_CAPACITY = 4;
+    private static final int MIN_COMPACT_HOLES = 8;
+
+    // insertion order; removed entities leave a null slot until the next compaction
+    private EntityAccess[] all = EMPTY_ENTITIES;
+    private byte[] allGroups = EMPTY_GROUPS;
+    private int end;
+    private int size;
+    private final Reference2IntOpenHashMap<EntityAccess> slots = new Reference2IntOpenHashMap<>();
+
+    // ascending slots into all, stale slots point at null
+    private final int[][] byGroup = new int[EntityTypeGroup.COUNT][];
+    private final int[] groupEnds = new int[EntityTypeGroup.COUNT];
+    private final int[] groupSizes = new int[EntityTypeGroup.COUNT];
+
+    private final boolean trackHardColliding;
+    private int[] hardColliding = EMPTY_SLOTS;
+    private int hardCollidingEnd;
+
+    /**
+     * @param trackHardColliding whether to keep the slots of {@link CollisionEngine#isHardColliding} entities
+     */
+    public SectionEntityIndex(boolean trackHardColliding) {
+        this.trackHardColliding = trackHardColliding;
+        this.slots.defaultReturnValue(-1);
+        Arrays.fill(this.byGroup, EMPTY_SLOTS);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int size(EntityTypeGroup group) {
+        return this.groupSizes[group.ordinal()];
+    }
+
+    public boolean tracksHardColliding() {
+        return this.trackHardColliding;
+    }
+
+    public void add(T entity) {
+        if (this.slots.containsKey(entity)) {
+            return;
+        }
+
+        if (this.end == this.all.length) {
+            if (this.end - this.size >= MIN_COMPACT_HOLES) {
+                this.compact();
+            } else {
+                int capacity = Math.max(INITIAL_CAPACITY, this.end << 1);
+                this.all = Arrays.copyOf(this.all, capacity);
+                this.allGroups = Arrays.copyOf(this.allGroups, capacity);
+            }
+        }
+
+        int groupIndex = EntityTypeGroup.of(entity).ordinal();
+        int slot = this.end++;
+        this.all[slot] = entity;
+        this.allGroups[slot] = (byte) groupIndex;
+        this.slots.put(entity, slot);
+        ++this.size;
+        ++this.groupSizes[groupIndex];
+        this.addSlot(groupIndex, slot, entity);
+    }
+
+    public boolean remove(T entity) {
+        int slot = this.slots.removeInt(entity);
+        if (slot < 0) {
+            return false;
+        }
+
+        this.all[slot] = null;
+        --this.size;
+        --this.groupSizes[this.allGroups[slot]];
+
+        int holes = this.end - this.size;
+        if (holes >= MIN_COMPACT_HOLES && holes > this.size) {
+            this.compact();
+        }
+        return true;
+    }
+
+    private void addSlot(int groupIndex, int slot, EntityAccess entity) {
+        int[] groupSlots = this.byGroup[groupIndex];
+        int groupEnd = this.groupEnds[groupIndex];
+        if (groupEnd == groupSlots.length) {
+            groupSlots = this.byGroup[groupIndex] = Arrays.copyOf(groupSlots, Math.max(INITIAL_CAPACITY, groupEnd << 1));
+        }
+        groupSlots[groupEnd] = slot;
+        this.groupEnds[groupIndex] = groupEnd + 1;
+
+        if (this.trackHardColliding && CollisionEngine.isHardColliding(entity)) {
+            if (this.hardCollidingEnd == this.hardColliding.length) {
+                this.hardColliding = Arrays.copyOf(this.hardColliding, Math.max(INITIAL_CAPACITY, this.hardCollidingEnd << 1));
+            }
+            this.hardColliding[this.hardCollidingEnd++] = slot;
+        }
+    }
+
+    /**
+     * Moves the live entities to the front, keeping their order, and rebuilds the slot lists.
+     */
+    private void compact() {
+        EntityAccess[] entities = this.all;
+        byte[] groups = this.allGroups;
+        int oldEnd = this.end;
+        Arrays.fill(this.groupEnds, 0);
+        this.hardCollidingEnd = 0;
+
+        int live = 0;
+        for (int i = 0; i < oldEnd; ++i) {
+            EntityAccess entity = entities[i];
+            if (entity == null) {
+                continue;
+            }
+            entities[live] = entity;
+            groups[live] = groups[i];
+            this.slots.put(entity, live);
+            this.addSlot(groups[live], live, entity);
+            ++live;
+        }
+        Arrays.fill(entities, live, oldEnd, null);
+        this.end = live;
+    }
+
+    /**
+     * Untyped AABB query, equivalent to iterating every stored entity.
+     */
+    @SuppressWarnings("unchecked")
+    public AbortableIterationConsumer.Continuation getEntities(AABB bounds, AbortableIterationConsumer<T> consumer) {
+        EntityAccess[] entities = this.all;
+        for (int i = 0, len = this.end; i < len; ++i) {
+            T entity = (T) entities[i];
+            if (entity != null && entity.getBoundingBox().intersects(bounds) && consumer.accept(entity).shouldAbort()) {
+                return AbortableIterationConsumer.Continuation.ABORT;
+            }
+        }
+
+        return AbortableIterationConsumer.Continuation.CONTINUE;
+    }
+
+    /**
+     * AABB query over the entities {@link CollisionEngine#isHardColliding} accepts, in the same
+     * relative order as an untyped query would visit them. Only valid when {@link #tracksHardColliding()}.
+     */
+    public AbortableIterationConsumer.Continuation getHardCollidingEntities(AABB bounds, AbortableIterationConsumer<T> consumer) {
+        return this.getEntities(this.hardColliding, this.hardCollidingEnd, bounds, consumer);
+    }
+
+    /**
+     * Typed AABB query. Only the groups that may contain the test's base class are visited,
+     * in the same relative order as an untyped query would visit them.
+     */
+    @SuppressWarnings("unchecked")
+    public <U extends T> AbortableIterationConsumer.Continuation getEntities(EntityTypeTest<T, U> test, AABB bounds, AbortableIterationConsumer<? super U> consumer) {
+        int mask = EntityTypeGroup.maskFor(test.getBaseClass());
+        if (mask == 0) {
+            return AbortableIterationConsumer.Continuation.CONTINUE;
+        }
+
+        int onlyGroup = Integer.numberOfTrailingZeros(mask);
+        if ((mask & (mask - 1)) == 0) {
+            // single group: walk its dedicated slots
+            return this.getEntities(this.byGroup[onlyGroup], this.groupEnds[onlyGroup], test, bounds, consumer);
+        }
+
+        EntityAccess[] entities = this.all;
+        byte[] groups = this.allGroups;
+        for (int i = 0, len = this.end; i < len; ++i) {
+            T entity = (T) entities[i];
+            if (entity == null || (mask & (1 << groups[i])) == 0) {
+                continue;
+            }
+            U casted = test.tryCast(entity);
+            if (casted != null && entity.getBoundingBox().intersects(bounds) && consumer.accept(casted).shouldAbort()) {
+                return AbortableIterationConsumer.Continuation.ABORT;
+            }
+        }
+
+        return AbortableIterationConsumer.Continuation.CONTINUE;
+    }
+
+    @SuppressWarnings("unchecked")
+    private AbortableIterationConsumer.Continuation getEntities(int[] slots, int len, AABB bounds, AbortableIterationConsumer<T> consumer) {
+        EntityAccess[] entities = this.all;
+        for (int i = 0; i < len; ++i) {
+            T entity = (T) entities[slots[i]];
+            if (entity != null && entity.getBoundingBox().intersects(bounds) && consumer.accept(entity).shouldAbort()) {
+                return AbortableIterationConsumer.Continuation.ABORT;
+            }
+        }
+
+        return AbortableIterationConsumer.Continuation.CONTINUE;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <U extends T> AbortableIterationConsumer.Continuation getEntities(int[] slots, int len, EntityTypeTest<T, U> test, AABB bounds, AbortableIterationConsumer<? super U> consumer) {
+        EntityAccess[] entities = this.all;
+        for (int i = 0; i < len; ++i) {
+            T entity = (T) entities[slots[i]];
+            if (entity == null) {
+                continue;
+            }
+            U casted = test.tryCast(entity);
+            if (casted != null && entity.getBoundingBox().intersects(bounds) && consumer.accept(casted).shouldAbort()) {
+                return AbortableIterationConsumer.Continuation.ABORT;
+            }
+        }
+
+        return AbortableIterationConsumer.Continuation.CONTINUE;
+    }
+
+    /**
+     * Copies every stored entity into the given list, in insertion order.
+     */
+    @SuppressWarnings("unchecked")
+    public void copyInto(List<? super T> into) {
+        EntityAccess[] entities = this.all;
+        for (int i = 0, len = this.end; i < len; ++i) {
+            EntityAccess entity = entities[i];
+            if (entity != null) {
+                into.add((T) entity);
+            }
+        }
+    }
+}
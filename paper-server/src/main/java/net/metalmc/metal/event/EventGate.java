@@ -0,0 +1,42 @@
+package net.metalmc.metal.event;
+
+import net.metalmc.metal.MetalConfig;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPhysicsEvent;
+import org.bukkit.event.block.BlockRedstoneEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+
+/**
+ * Listener check for Bukkit events fired from hot paths, so call sites can skip building the
+ * event and its Craft wrappers when no plugin would see it.
+ * <p>
+ * The state comes from the baked listener array of the event's {@link HandlerList}, which the
+ * handler list drops on every register and unregister, so a newly registered listener is seen by
+ * the very next check. Events that have no listener of their own are never dispatched to listeners
+ * of a super class, so only the exact handler list of the fired event matters.
+ */
+public final class EventGate {
+    public static final EventGate BLOCK_PHYSICS = new EventGate(BlockPhysicsEvent.getHandlerList());
+    public static final EventGate BLOCK_FROM_TO = new EventGate(BlockFromToEvent.getHandlerList());
+    public static final EventGate BLOCK_REDSTONE = new EventGate(BlockRedstoneEvent.getHandlerList());
+    /**
+     * Also covers {@link org.bukkit.event.block.EntityBlockFormEvent}, which shares this handler list.
+     */
+    public static final EventGate BLOCK_FORM = new EventGate(BlockFormEvent.getHandlerList());
+    public static final EventGate BLOCK_SPREAD = new EventGate(BlockSpreadEvent.getHandlerList());
+
+    private final HandlerList handlers;
+
+    private EventGate(HandlerList handlers) {
+        this.handlers = handlers;
+    }
+
+    /**
+     * @return whether the event has to be built and called, always {@code true} when the gate is disabled
+     */
+    public boolean hasListeners() {
+        return !MetalConfig.skipUnlistenedEvents || this.handlers.getRegisteredListeners().length != 0;
+    }
+}
@@ -0,0 +1,303 @@
+package net.metalmc.metal.explosion;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Optional;
+import net.metalmc.metal.MetalConfig;
+import net.metalmc.metal.block.SectionStamps;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.Mth;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.EntityBasedExplosionDamageCalculator;
+import net.minecraft.world.level.Explosion;
+import net.minecraft.world.level.ExplosionDamageCalculator;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.ServerExplosion;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.material.FluidState;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Per world caches shared by the explosions of one tick.
+ * <p>
+ * Block resistances are cached by position. An entry is only reused for the same block state and
+ * the same resistance source: explosions using the default resistances share their entries, while
+ * an explosion whose damage calculator or source entity changes them only reuses its own, which
+ * still covers the many rays of one explosion crossing the same blocks.
+ * <p>
+ * Exposures ({@link ServerExplosion#getSeenPercent(Vec3, Entity)}) are cached by explosion centre,
+ * entity bounding box and entity type, together with the {@linkplain SectionStamps stamp} of the
+ * blocks between them, so blocks destroyed by an earlier explosion of the same tick are seen by the
+ * next one. Players are never cached as their collision context depends on more than their type.
+ * <p>
+ * Both caches are dropped at the start of every tick. Main thread only.
+ */
+public final class ExplosionCache {
+    private static final int MAX_RESISTANCE_ENTRIES = 1 << 16;
+    private static final int MAX_EXPOSURE_ENTRIES = 1 << 14;
+    // the box from an explosion centre to an entity in reach is at most 2 * power blocks plus the entity,
+    // up to 32 blocks that spans at most 3x3x3 sections, larger areas are not cached
+    private static final int MAX_EXPOSURE_SECTIONS = 27;
+    private static final Object DEFAULT_RESISTANCES = new Object();
+
+    private static final boolean CAN_DETECT_RESISTANCE_OVERRIDES = declaresExplosionResistance(Entity.class);
+    private static final ClassValue<Boolean> OVERRIDES_RESISTANCE = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            if (!CAN_DETECT_RESISTANCE_OVERRIDES) {
+                return true;
+            }
+            for (Class<?> clazz = type; clazz != null && clazz != Entity.class; clazz = clazz.getSuperclass()) {
+                if (declaresExplosionResistance(clazz)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    };
+
+    private final Level level;
+    private final SectionStamps stamps;
+    private int currentTick = Integer.MIN_VALUE;
+
+    private final Long2IntOpenHashMap resistanceSlots = new Long2IntOpenHashMap();
+    private BlockState[] resistanceStates = new BlockState[256];
+    private Object[] resistanceSources = new Object[256];
+    @SuppressWarnings("unchecked")
+    private Optional<Float>[] resistances = new Optional[256];
+    private int resistanceCount;
+
+    private final Object2ObjectOpenHashMap<ExposureKey, ExposureKey> exposures = new Object2ObjectOpenHashMap<>();
+    private final ExposureKey exposureProbe = new ExposureKey();
+
+    private long exposureHits;
+    private long exposureMisses;
+
+    public ExplosionCache(Level level, SectionStamps stamps) {
+        this.level = level;
+        this.stamps = stamps;
+        this.resistanceSlots.defaultReturnValue(-1);
+    }
+
+    /**
+     * Wraps the damage calculator of a new explosion so that its block resistances go through the cache.
+     *
+     * @param created whether the calculator was made by the explosion itself from its source entity
+     */
+    public ExplosionDamageCalculator wrap(@Nullable Entity source, ExplosionDamageCalculator calculator, boolean created) {
+        if (!MetalConfig.explosionResistanceCache) {
+            return calculator;
+        }
+        final boolean defaultResistances = calculator.getClass() == ExplosionDamageCalculator.class
+            || (created && source != null && calculator instanceof EntityBasedExplosionDamageCalculator && !OVERRIDES_RESISTANCE.get(source.getClass()));
+        return new CachingCalculator(this, calculator, defaultResistances);
+    }
+
+    private void startTick() {
+        final int tick = MinecraftServer.currentTick;
+        if (tick != this.currentTick) {
+            this.currentTick = tick;
+            if (this.resistanceCount != 0) {
+                this.resistanceSlots.clear();
+                Arrays.fill(this.resistanceStates, 0, this.resistanceCount, null);
+                Arrays.fill(this.resistanceSources, 0, this.resistanceCount, null);
+                Arrays.fill(this.resistances, 0, this.resistanceCount, null);
+                this.resistanceCount = 0;
+            }
+            if (!this.exposures.isEmpty()) {
+                this.exposures.clear();
+            }
+        }
+    }
+
+    private Optional<Float> getResistance(Object resistanceSource, ExplosionDamageCalculator calculator, Explosion explosion, BlockGetter reader, BlockPos pos, BlockState state, FluidState fluid) {
+        if (reader != this.level) {
+            return calculator.getBlockExplosionResistance(explosion, reader, pos, state, fluid);
+        }
+        this.startTick();
+
+        final long key = pos.asLong();
+        int slot = this.resistanceSlots.get(key);
+        if (slot >= 0 && this.resistanceStates[slot] == state && this.resistanceSources[slot] == resistanceSource) {
+            return this.resistances[slot];
+        }
+
+        final Optional<Float> resistance = calculator.getBlockExplosionResistance(explosion, reader, pos, state, fluid);
+        if (slot < 0) {
+            if (this.resistanceCount >= MAX_RESISTANCE_ENTRIES) {
+                return resistance;
+            }
+            slot = this.resistanceCount++;
+            if (slot == this.resistanceStates.length) {
+                final int length = slot << 1;
+                this.resistanceStates = Arrays.copyOf(this.resistanceStates, length);
+                this.resistanceSources = Arrays.copyOf(this.resistanceSources, length);
+                this.resistances = Arrays.copyOf(this.resistances, length);
+            }
+            this.resistanceSlots.put(key, slot);
+        }
+        this.resistanceStates[slot] = state;
+        this.resistanceSources[slot] = resistanceSource;
+        this.resistances[slot] = resistance;
+        return resistance;
+    }
+
+    /**
+     * Cached {@link ServerExplosion#getSeenPercent(Vec3, Entity)}.
+     */
+    public float getSeenPercent(Vec3 center, Entity entity) {
+        if (entity instanceof Player) {
+            return ServerExplosion.getSeenPercent(center, entity);
+        }
+        this.startTick();
+
+        final AABB box = entity.getBoundingBox();
+        final long areaStamp = this.stamps.areaStamp(
+            Mth.floor(Math.min(center.x, box.minX)), Mth.floor(Math.min(center.y, box.minY)), Mth.floor(Math.min(center.z, box.minZ)),
+            Mth.floor(Math.max(center.x, box.maxX)), Mth.floor(Math.max(center.y, box.maxY)), Mth.floor(Math.max(center.z, box.maxZ)),
+            MAX_EXPOSURE_SECTIONS
+        );
+        if (areaStamp == SectionStamps.UNCACHEABLE) {
+            return ServerExplosion.getSeenPercent(center, entity);
+        }
+
+        final ExposureKey probe = this.exposureProbe.set(center, box, entity.getType());
+        ExposureKey entry = this.exposures.get(probe);
+        if (entry != null && entry.areaStamp == areaStamp) {
+            ++this.exposureHits;
+            return entry.exposure;
+        }
+        ++this.exposureMisses;
+
+        final float exposure = ServerExplosion.getSeenPercent(center, entity);
+        if (entry == null) {
+            if (this.exposures.size() >= MAX_EXPOSURE_ENTRIES) {
+                return exposure;
+            }
+            entry = new ExposureKey().set(center, box, entity.getType());
+            this.exposures.put(entry, entry);
+        }
+        entry.areaStamp = areaStamp;
+        entry.exposure = exposure;
+        return exposure;
+    }
+
+    public long getExposureHits() {
+        return this.exposureHits;
+    }
+
+    public long getExposureMisses() {
+        return this.exposureMisses;
+    }
+
+    private static boolean declaresExplosionResistance(Class<?> clazz) {
+        for (final Method method : clazz.getDeclaredMethods()) {
+            if (method.getName().equals("getBlockExplosionResistance") && method.getParameterCount() == 6) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class ExposureKey {
+        private double centerX, centerY, centerZ;
+        private double minX, minY, minZ;
+        private double maxX, maxY, maxZ;
+        private @Nullable EntityType<?> type;
+        private int hash;
+
+        private long areaStamp;
+        private float exposure;
+
+        private ExposureKey set(Vec3 center, AABB box, EntityType<?> type) {
+            this.centerX = center.x;
+            this.centerY = center.y;
+            this.centerZ = center.z;
+            this.minX = box.minX;
+            this.minY = box.minY;
+            this.minZ = box.minZ;
+            this.maxX = box.maxX;
+            this.maxY = box.maxY;
+            this.maxZ = box.maxZ;
+            this.type = type;
+
+            int hash = System.identityHashCode(type);
+            hash = 31 * hash + Double.hashCode(this.centerX);
+            hash = 31 * hash + Double.hashCode(this.centerY);
+            hash = 31 * hash + Double.hashCode(this.centerZ);
+            hash = 31 * hash + Double.hashCode(this.minX);
+            hash = 31 * hash + Double.hashCode(this.minY);
+            hash = 31 * hash + Double.hashCode(this.minZ);
+            hash = 31 * hash + Double.hashCode(this.maxX);
+            hash = 31 * hash + Double.hashCode(this.maxY);
+            hash = 31 * hash + Double.hashCode(this.maxZ);
+            this.hash = hash;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ExposureKey other
+                && this.type == other.type
+                && Double.compare(this.centerX, other.centerX) == 0
+                && Double.compare(this.centerY, other.centerY) == 0
+                && Double.compare(this.centerZ, other.centerZ) == 0
+                && Double.compare(this.minX, other.minX) == 0
+                && Double.compare(this.minY, other.minY) == 0
+                && Double.compare(this.minZ, other.minZ) == 0
+                && Double.compare(this.maxX, other.maxX) == 0
+                && Double.compare(this.maxY, other.maxY) == 0
+                && Double.compare(this.maxZ, other.maxZ) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private static final class CachingCalculator extends ExplosionDamageCalculator {
+        private final ExplosionCache cache;
+        private final ExplosionDamageCalculator delegate;
+        private final Object resistanceSource;
+
+        private CachingCalculator(ExplosionCache cache, ExplosionDamageCalculator delegate, boolean defaultResistances) {
+            this.cache = cache;
+            this.delegate = delegate;
+            this.resistanceSource = defaultResistances ? DEFAULT_RESISTANCES : this;
+        }
+
+        @Override
+        public Optional<Float> getBlockExplosionResistance(Explosion explosion, BlockGetter reader, BlockPos pos, BlockState state, FluidState fluid) {
+            return this.cache.getResistance(this.resistanceSource, this.delegate, explosion, reader, pos, state, fluid);
+        }
+
+        @Override
+        public boolean shouldBlockExplode(Explosion explosion, BlockGetter reader, BlockPos pos, BlockState state, float power) {
+            return this.delegate.shouldBlockExplode(explosion, reader, pos, state, power);
+        }
+
+        @Override
+        public boolean shouldDamageEntity(Explosion explosion, Entity entity) {
+            return this.delegate.shouldDamageEntity(explosion, entity);
+        }
+
+        @Override
+        public float getKnockbackMultiplier(Entity entity) {
+            return this.delegate.getKnockbackMultiplier(entity);
+        }
+
+        @Override
+        public float getEntityDamageAmount(Explosion explosion, Entity entity, float seenPercent) {
+            return this.delegate.getEntityDamageAmount(explosion, entity, seenPercent);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package net.metalmc.metal.explosion;
+
+import java.util.List;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.EntityReference;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.item.PrimedTnt;
+import net.minecraft.world.phys.AABB;
+import org.bukkit.event.entity.EntityRemoveEvent;
+
+/**
+ * Merges primed TNT that would explode identically into one entity.
+ * <p>
+ * Before a primed TNT ticks it absorbs every other primed TNT that has not ticked yet this tick and
+ * sits at exactly the same position with the same motion, fuse, power and owner. Such entities move
+ * the same way, so only the remaining entity is ticked and it carries their count
+ * ({@code PrimedTnt#mergeCount}). When its fuse runs out it explodes once per merged entity, each
+ * explosion a complete one of its own: {@code ExplosionPrimeEvent}, block pass, yield,
+ * {@code EntityExplodeEvent} block list, entity damage and knockback events, seeing the blocks the
+ * previous one destroyed. What changes is that the merged entities no longer push each other in
+ * the tick they explode, so they all explode at the position of the remaining one. Merged entities
+ * are removed with {@link EntityRemoveEvent.Cause#MERGE}.
+ */
+public final class TntMerging {
+
+    private TntMerging() {
+    }
+
+    public static void absorb(ServerLevel level, PrimedTnt tnt) {
+        final int tick = MinecraftServer.currentTick;
+        tnt.mergeTick = tick;
+        if (tnt.isPassenger() || tnt.isVehicle()) {
+            return;
+        }
+
+        final double x = tnt.getX();
+        final double y = tnt.getY();
+        final double z = tnt.getZ();
+        final List<PrimedTnt> others = level.getEntities(EntityType.TNT, new AABB(x, y, z, x, y, z), other -> other != tnt && canMerge(tnt, other, tick));
+        for (final PrimedTnt other : others) {
+            tnt.mergeCount += other.mergeCount;
+            other.discard(EntityRemoveEvent.Cause.MERGE);
+        }
+    }
+
+    /**
+     * Runs the explosion of {@code tnt} once for each entity it merged.
+     */
+    public static void explode(PrimedTnt tnt) {
+        for (int merged = 0; merged < tnt.mergeCount; ++merged) {
+            tnt.explode();
+        }
+    }
+
+    static boolean canMerge(PrimedTnt tnt, PrimedTnt other, int tick) {
+        return other.mergeTick != tick
+            && !other.isRemoved()
+            && !other.isPassenger()
+            && !other.isVehicle()
+            && other.getX() == tnt.getX()
+            && other.getY() == tnt.getY()
+            && other.getZ() == tnt.getZ()
+            && other.getDeltaMovement().equals(tnt.getDeltaMovement())
+            && other.getFuse() == tnt.getFuse()
+            && other.explosionPower == tnt.explosionPower
+            && other.isIncendiary == tnt.isIncendiary
+            && other.usedPortal == tnt.usedPortal
+            && other.getBlockState() == tnt.getBlockState()
+            && sameOwner(other.owner, tnt.owner);
+    }
+
+    private static boolean sameOwner(EntityReference<?> first, EntityReference<?> second) {
+        if (first == null || second == null) {
+            return first == second;
+        }
+        return first.getUUID().equals(second.getUUID());
+    }
+}
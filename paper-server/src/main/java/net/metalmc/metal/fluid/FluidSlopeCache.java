@@ -0,0 +1,88 @@
+package net.metalmc.metal.fluid;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.metalmc.metal.block.SectionStamps;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.material.Fluid;
+
+/**
+ * Memoized {@code FlowingFluid#getSlopeDistance} results of one world.
+ * <p>
+ * A slope distance only depends on the blocks within the fluid's slope find distance around the
+ * searched position, on its layer and the layer below. Every result is stored with the
+ * {@linkplain SectionStamps stamp} of that area and computed again once the area reports a higher one.
+ * Areas touching unloaded chunks are never cached. Main thread only.
+ */
+public final class FluidSlopeCache {
+    private static final int MAX_ENTRIES = 1 << 16;
+    private static final int MAX_RADIUS = 8;
+    // a radius of 8 covers at most 2x2 chunks on two section layers
+    private static final int MAX_SECTIONS = 8;
+    private static final int DISTANCE_BITS = 11;
+    private static final long DISTANCE_MASK = (1L << DISTANCE_BITS) - 1L;
+
+    private final SectionStamps stamps;
+    private final Reference2ObjectOpenHashMap<Fluid, Long2LongOpenHashMap[]> entries = new Reference2ObjectOpenHashMap<>();
+
+    private long hits;
+    private long misses;
+
+    public FluidSlopeCache(SectionStamps stamps) {
+        this.stamps = stamps;
+    }
+
+    /**
+     * @return the stamp of the area searched from {@code pos}, or {@code -1} when it cannot be cached
+     */
+    public long areaStamp(BlockPos pos, int radius) {
+        if (radius > MAX_RADIUS) {
+            return SectionStamps.UNCACHEABLE;
+        }
+        return this.stamps.areaStamp(pos.getX() - radius, pos.getY() - 1, pos.getZ() - radius, pos.getX() + radius, pos.getY(), pos.getZ() + radius, MAX_SECTIONS);
+    }
+
+    /**
+     * @return the cached distance, or {@code -1} on a miss
+     */
+    public int get(Fluid fluid, BlockPos pos, Direction from, long areaStamp) {
+        final Long2LongOpenHashMap[] byDirection = this.entries.get(fluid);
+        if (byDirection != null) {
+            final long entry = byDirection[from.get2DDataValue()].get(pos.asLong());
+            if (entry != 0L && (entry >>> DISTANCE_BITS) == areaStamp) {
+                ++this.hits;
+                return (int) (entry & DISTANCE_MASK);
+            }
+        }
+        ++this.misses;
+        return -1;
+    }
+
+    public void put(Fluid fluid, BlockPos pos, Direction from, long areaStamp, int distance) {
+        Long2LongOpenHashMap[] byDirection = this.entries.get(fluid);
+        if (byDirection == null) {
+            byDirection = new Long2LongOpenHashMap[4];
+            for (int i = 0; i < byDirection.length; ++i) {
+                byDirection[i] = new Long2LongOpenHashMap();
+            }
+            this.entries.put(fluid, byDirection);
+        }
+
+        final Long2LongOpenHashMap map = byDirection[from.get2DDataValue()];
+        if (map.size() >= MAX_ENTRIES) {
+            // stale entries are never removed one by one, start over instead
+            map.clear();
+            map.trim();
+        }
+        map.put(pos.asLong(), (areaStamp << DISTANCE_BITS) | (Math.min(distance, (int) DISTANCE_MASK) & DISTANCE_MASK));
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getMisses() {
+        return this.misses;
+    }
+}
@@ -0,0 +1,259 @@
+package net.metalmc.metal.network;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
+import net.minecraft.network.protocol.game.ClientboundLightUpdatePacketData;
+import net.minecraft.world.level.ChunkPos;
+
+/**
+ * Chunk batch sizing of one player, used by {@code PlayerChunkSender} in place of the rate the client asks for.
+ * <p>
+ * Every batch is timed from the moment it is sent until the client acknowledges it. The client only
+ * acknowledges once it has received and processed the batch, so the round trip time and the rate
+ * the acknowledged bytes come back at cover both the connection and the client itself. A batch is
+ * sent while the bytes in flight stay below about twice the bandwidth-delay product, and each tick
+ * sends at most twice what the client took per tick. The product uses the lowest round trip time
+ * seen, so the queue building up in front of a slow client does not raise its own budget; when
+ * none was seen for ten seconds a single chunk is sent on its own to measure it again.
+ * A slow client is held at what it can take instead of building up a backlog of batches behind its
+ * connection, while a fast one keeps growing its budget until it stops acknowledging faster.
+ * <p>
+ * Pending chunks are sent by their distance to the player and to where the player is heading, so a
+ * flying or running player gets the chunks in front of them first. Main thread only.
+ */
+public final class ChunkSendController {
+    // vanilla's MAX_UNACKNOWLEDGED_BATCHES
+    static final int MAX_BATCHES_IN_FLIGHT = 10;
+    private static final double BUDGET_GAIN = 2.0;
+    private static final long RATE_WINDOW = TimeUnit.SECONDS.toNanos(3L);
+    private static final double RTT_GAIN = 0.125;
+    private static final long MIN_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+    private static final long MIN_RTT_WINDOW = TimeUnit.SECONDS.toNanos(10L);
+    private static final double TICK_SECONDS = 0.05;
+    private static final double INITIAL_CHUNK_BYTES = 16384.0;
+    private static final double LOOKAHEAD_TICKS = 40.0;
+    private static final double MAX_LOOKAHEAD_BLOCKS = 128.0;
+    private static final double TELEPORT_DISTANCE = 64.0;
+
+    private final long initialBudget;
+    private final long maxBudget;
+    private final int maxChunksPerTick;
+
+    private final long[] batchSentAt = new long[MAX_BATCHES_IN_FLIGHT];
+    private final long[] batchBytes = new long[MAX_BATCHES_IN_FLIGHT];
+    private final long[] batchDelivered = new long[MAX_BATCHES_IN_FLIGHT];
+    private final long[] batchDeliveredAt = new long[MAX_BATCHES_IN_FLIGHT];
+    private int oldestBatch;
+    private int batchesInFlight;
+    private long bytesInFlight;
+
+    private long delivered;
+    private long deliveredAt;
+    private double deliveryRate; // bytes per second, 0 until the first acknowledgement
+    private long deliveryRateAt;
+    private double quota;
+    private double smoothedRtt; // nanoseconds
+    private long minRtt;
+    private long minRttAt;
+    private boolean probingRtt;
+    private long probeSentAt = -1L;
+    private double chunkBytes = INITIAL_CHUNK_BYTES;
+
+    private boolean hasPosition;
+    private double lastX;
+    private double lastZ;
+    private double velocityX;
+    private double velocityZ;
+
+    /**
+     * @param initialBudget bytes allowed in flight until the first batch is acknowledged
+     * @param maxBudget upper bound of the bytes in flight
+     * @param maxChunksPerTick upper bound of the chunks sent in one tick
+     */
+    public ChunkSendController(long initialBudget, long maxBudget, int maxChunksPerTick) {
+        this.initialBudget = Math.max(1L, initialBudget);
+        this.maxBudget = Math.max(this.initialBudget, maxBudget);
+        this.maxChunksPerTick = Math.max(1, maxChunksPerTick);
+    }
+
+    /**
+     * Follows the movement of the player, called once per tick with their block position.
+     */
+    public void updatePosition(double x, double z) {
+        if (this.hasPosition) {
+            final double dx = x - this.lastX;
+            final double dz = z - this.lastZ;
+            if (Math.abs(dx) > TELEPORT_DISTANCE || Math.abs(dz) > TELEPORT_DISTANCE) {
+                this.velocityX = 0.0;
+                this.velocityZ = 0.0;
+            } else {
+                this.velocityX += (dx - this.velocityX) * 0.2;
+                this.velocityZ += (dz - this.velocityZ) * 0.2;
+            }
+        }
+        this.hasPosition = true;
+        this.lastX = x;
+        this.lastZ = z;
+    }
+
+    /**
+     * Called once per tick while chunks are pending.
+     *
+     * @return how many chunks may be sent now, 0 to wait for acknowledgements
+     */
+    public int chunksToSend() {
+        if (this.batchesInFlight >= MAX_BATCHES_IN_FLIGHT) {
+            return 0;
+        }
+        if (this.probingRtt) {
+            // drained to a single chunk so its round trip shows the connection without a queue
+            return this.batchesInFlight == 0 ? 1 : 0;
+        }
+        final long budget = this.budget();
+        double available = budget - this.bytesInFlight;
+        if (this.deliveryRate > 0.0) {
+            // pace the budget out over the ticks instead of sending it all at once
+            this.quota = Math.min(this.quota + this.deliveryRate * TICK_SECONDS * BUDGET_GAIN, budget);
+            available = Math.min(available, this.quota);
+        }
+        if (available < this.chunkBytes) {
+            // always keep one batch going, however large a single chunk is
+            return this.batchesInFlight == 0 ? 1 : 0;
+        }
+        return (int) Math.min(this.maxChunksPerTick, available / this.chunkBytes);
+    }
+
+    /**
+     * @return the bytes allowed in flight
+     */
+    public long budget() {
+        if (this.deliveryRate <= 0.0) {
+            return this.initialBudget;
+        }
+        final double bdp = this.deliveryRate * this.minRtt * 1.0E-9;
+        return (long) Math.clamp(bdp * BUDGET_GAIN, this.chunkBytes * 2.0, (double) this.maxBudget);
+    }
+
+    public void onBatchSent(long now, int chunks, long bytes) {
+        if (this.batchesInFlight >= MAX_BATCHES_IN_FLIGHT) {
+            // acknowledgements went missing, treat the oldest batch as delivered
+            this.onBatchAcknowledged(now);
+        }
+        if (this.batchesInFlight == 0) {
+            // do not count the time nothing was sent as time spent delivering
+            this.deliveredAt = now;
+            if (this.probingRtt) {
+                this.probeSentAt = now;
+            }
+        }
+        final int index = (this.oldestBatch + this.batchesInFlight) % MAX_BATCHES_IN_FLIGHT;
+        this.batchSentAt[index] = now;
+        this.batchBytes[index] = bytes;
+        this.batchDelivered[index] = this.delivered;
+        this.batchDeliveredAt[index] = this.deliveredAt;
+        this.quota = Math.max(0.0, this.quota - bytes);
+        ++this.batchesInFlight;
+        this.bytesInFlight += bytes;
+        if (chunks > 0) {
+            this.chunkBytes += ((double) bytes / chunks - this.chunkBytes) * 0.25;
+        }
+    }
+
+    /**
+     * Called when the client acknowledges the oldest batch in flight.
+     */
+    public void onBatchAcknowledged(long now) {
+        if (this.batchesInFlight == 0) {
+            return;
+        }
+        final long sentAt = this.batchSentAt[this.oldestBatch];
+        final long bytes = this.batchBytes[this.oldestBatch];
+        final long deliveredBefore = this.batchDelivered[this.oldestBatch];
+        final long deliveredBeforeAt = this.batchDeliveredAt[this.oldestBatch];
+        this.oldestBatch = (this.oldestBatch + 1) % MAX_BATCHES_IN_FLIGHT;
+        --this.batchesInFlight;
+        this.bytesInFlight -= bytes;
+
+        final long rtt = Math.max(MIN_SAMPLE_NANOS, now - sentAt);
+        this.smoothedRtt = this.smoothedRtt == 0.0 ? rtt : this.smoothedRtt + (rtt - this.smoothedRtt) * RTT_GAIN;
+        if (this.minRtt == 0L || rtt <= this.minRtt || (this.probingRtt && sentAt == this.probeSentAt)) {
+            this.minRtt = rtt;
+            this.minRttAt = now;
+            this.probingRtt = false;
+        } else if (now - this.minRttAt > MIN_RTT_WINDOW) {
+            // every round trip of the window went through a queue, which a higher budget would only grow
+            this.probingRtt = true;
+        }
+
+        // everything acknowledged while the batch was in flight, over the time it took
+        this.delivered += bytes;
+        this.deliveredAt = now;
+        final double rate = (this.delivered - deliveredBefore) * 1.0E9 / Math.max(MIN_SAMPLE_NANOS, now - deliveredBeforeAt);
+        // samples are low while there is little to send, so keep the highest one of the last seconds
+        if (rate >= this.deliveryRate || now - this.deliveryRateAt > RATE_WINDOW) {
+            this.deliveryRate = rate;
+            this.deliveryRateAt = now;
+        }
+    }
+
+    /**
+     * @return {@code pending} ordered by priority, nearest to the player and their direction of movement first
+     */
+    public long[] prioritise(LongSet pending, ChunkPos center) {
+        final int size = pending.size();
+        final long[] keys = new long[size];
+        final long[] order = new long[size];
+        final double lookahead = Math.min(LOOKAHEAD_TICKS, MAX_LOOKAHEAD_BLOCKS / Math.max(1.0E-3, Math.hypot(this.velocityX, this.velocityZ)));
+        // chunk coordinates scaled by 2 to score from chunk centers without fractions
+        final double aheadX = center.x * 2 + 1 + this.velocityX * lookahead / 8.0;
+        final double aheadZ = center.z * 2 + 1 + this.velocityZ * lookahead / 8.0;
+        final LongIterator iterator = pending.iterator();
+        for (int i = 0; i < size; ++i) {
+            final long key = iterator.nextLong();
+            final int x = ChunkPos.getX(key) * 2 + 1;
+            final int z = ChunkPos.getZ(key) * 2 + 1;
+            final int dx = x - (center.x * 2 + 1);
+            final int dz = z - (center.z * 2 + 1);
+            final double aheadDx = x - aheadX;
+            final double aheadDz = z - aheadZ;
+            final long score = (long) (dx * dx + dz * dz + aheadDx * aheadDx + aheadDz * aheadDz);
+            keys[i] = key;
+            order[i] = score << 32 | i;
+        }
+        Arrays.sort(order);
+        final long[] sorted = new long[size];
+        for (int i = 0; i < size; ++i) {
+            sorted[i] = keys[(int) order[i]];
+        }
+        return sorted;
+    }
+
+    public double getDeliveryRate() {
+        return this.deliveryRate;
+    }
+
+    public double getSmoothedRttMillis() {
+        return this.smoothedRtt * 1.0E-6;
+    }
+
+    public long getBytesInFlight() {
+        return this.bytesInFlight;
+    }
+
+    public int getBatchesInFlight() {
+        return this.batchesInFlight;
+    }
+
+    /**
+     * @return the uncompressed size of a chunk and light packet, the unit budgets are counted in
+     */
+    public static long estimateBytes(ClientboundLevelChunkWithLightPacket packet) {
+        final ClientboundLightUpdatePacketData light = packet.getLightData();
+        return packet.getChunkData().getReadBuffer().readableBytes()
+            + (long) (light.getSkyUpdates().size() + light.getBlockUpdates().size()) * 2048L
+            + 64L;
+    }
+}
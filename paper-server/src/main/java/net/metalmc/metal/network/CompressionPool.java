@@ -0,0 +1,253 @@
+package net.metalmc.metal.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.handler.codec.DecoderException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.network.VarInt;
+
+/**
+ * Shared zlib state of the packet compression stage.
+ * <p>
+ * Vanilla gives every connection its own {@link Deflater} and {@link Inflater}, about 300 KiB of
+ * native memory per player that sits idle most of the time, and copies packets into heap arrays
+ * around them. Here both are borrowed from pools for the duration of one packet and read from and
+ * write to the direct buffers of the pipeline through {@link ByteBuffer}s. Packets at least
+ * {@code offload-threshold} bytes large are compressed on a bounded worker pool by
+ * {@link OrderedCompressor}, so a burst of chunk packets does not stall the other connections of
+ * the event loop.
+ * <p>
+ * The compression level follows the CPU headroom of the machine, sampled once a second: the
+ * configured level while at least half of the CPU is idle, going down to {@code min-level} as the
+ * idle share drops to 10% or the worker queue fills up.
+ */
+public final class CompressionPool {
+    public static final int MAXIMUM_UNCOMPRESSED_LENGTH = 8388608;
+    private static final int MAX_POOLED = 256;
+    private static final long LEVEL_SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1L);
+
+    public static final LongAdder OFFLOADED = new LongAdder();
+    public static final LongAdder INLINE = new LongAdder();
+
+    private static final ConcurrentLinkedQueue<Deflater> DEFLATERS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_DEFLATERS = new AtomicInteger();
+    private static final ConcurrentLinkedQueue<Inflater> INFLATERS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_INFLATERS = new AtomicInteger();
+
+    private static volatile ThreadPoolExecutor executor;
+    private static volatile int level = -1;
+    private static volatile long levelSampledAt;
+
+    private CompressionPool() {
+    }
+
+    static ExecutorService executor() {
+        ThreadPoolExecutor executor = CompressionPool.executor;
+        if (executor == null) {
+            synchronized (CompressionPool.class) {
+                executor = CompressionPool.executor;
+                if (executor == null) {
+                    final int threads = MetalConfig.compressionThreads > 0 ? MetalConfig.compressionThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+                    executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(Math.max(1, MetalConfig.compressionQueueSize)), new CompressionThreadFactory());
+                    CompressionPool.executor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * @return the current compression level, between {@code min-level} and {@code level}
+     */
+    public static int level() {
+        final long now = System.nanoTime();
+        int level = CompressionPool.level;
+        if (level < 0 || now - levelSampledAt >= LEVEL_SAMPLE_INTERVAL) {
+            levelSampledAt = now;
+            level = sampleLevel();
+            CompressionPool.level = level;
+        }
+        return level;
+    }
+
+    private static int sampleLevel() {
+        final int max = Math.clamp(MetalConfig.compressionLevel, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION);
+        final int min = Math.clamp(MetalConfig.compressionMinLevel, Deflater.BEST_SPEED, max);
+        if (!MetalConfig.compressionAdaptiveLevel || min == max) {
+            return max;
+        }
+        final ThreadPoolExecutor executor = CompressionPool.executor;
+        if (executor != null && executor.getQueue().remainingCapacity() < executor.getQueue().size()) {
+            return min;
+        }
+        final double load = systemCpuLoad();
+        if (load < 0.0) {
+            return max;
+        }
+        final double headroom = Math.clamp((1.0 - load - 0.1) / 0.4, 0.0, 1.0);
+        return min + (int) Math.round((max - min) * headroom);
+    }
+
+    private static double systemCpuLoad() {
+        final OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean sunBean) {
+            return sunBean.getCpuLoad();
+        }
+        return -1.0;
+    }
+
+    /**
+     * Builds the frame vanilla's {@code CompressionEncoder} writes for {@code packet}, taking ownership of it.
+     */
+    public static ByteBuf encodeFrame(ByteBufAllocator alloc, ByteBuf packet, int threshold) {
+        final int length = packet.readableBytes();
+        if (length > MAXIMUM_UNCOMPRESSED_LENGTH) {
+            packet.release();
+            throw new IllegalArgumentException("Packet too big (is " + length + ", should be less than " + MAXIMUM_UNCOMPRESSED_LENGTH + ")");
+        }
+        if (length < threshold) {
+            // prefix the uncompressed packet without copying it
+            final ByteBuf header = alloc.directBuffer(1);
+            VarInt.write(header, 0);
+            final CompositeByteBuf frame = alloc.compositeDirectBuffer(2);
+            frame.addComponents(true, header, packet);
+            return frame;
+        }
+        final ByteBuf frame = alloc.directBuffer(VarInt.getByteSize(length) + (length >> 1) + 64);
+        try {
+            VarInt.write(frame, length);
+            deflate(packet, frame, level());
+            return frame;
+        } catch (Throwable throwable) {
+            frame.release();
+            throw throwable;
+        } finally {
+            packet.release();
+        }
+    }
+
+    /**
+     * Deflates the readable bytes of {@code in} into {@code out} as one zlib stream.
+     */
+    public static void deflate(ByteBuf in, ByteBuf out, int level) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        } else {
+            POOLED_DEFLATERS.decrementAndGet();
+            deflater.setLevel(level);
+        }
+        try {
+            deflater.setInput(nioInput(in));
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.ensureWritable(8192);
+                final ByteBuffer target = out.internalNioBuffer(out.writerIndex(), out.writableBytes());
+                final int start = target.position();
+                deflater.deflate(target);
+                out.writerIndex(out.writerIndex() + target.position() - start);
+            }
+            in.skipBytes(in.readableBytes());
+        } finally {
+            deflater.reset();
+            if (POOLED_DEFLATERS.incrementAndGet() <= MAX_POOLED) {
+                DEFLATERS.offer(deflater);
+            } else {
+                POOLED_DEFLATERS.decrementAndGet();
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Replaces vanilla's {@code CompressionDecoder#decode}, inflating into a pooled direct buffer.
+     */
+    public static void decode(ByteBufAllocator alloc, ByteBuf in, List<Object> out, int threshold, boolean validateDecompressed) throws DataFormatException {
+        if (in.readableBytes() == 0) {
+            return;
+        }
+        final int length = VarInt.read(in);
+        if (length == 0) {
+            out.add(in.readRetainedSlice(in.readableBytes()));
+            return;
+        }
+        if (validateDecompressed) {
+            if (length < threshold) {
+                throw new DecoderException("Badly compressed packet - size of " + length + " is below server threshold of " + threshold);
+            }
+            if (length > MAXIMUM_UNCOMPRESSED_LENGTH) {
+                throw new DecoderException("Badly compressed packet - size of " + length + " is larger than protocol maximum of " + MAXIMUM_UNCOMPRESSED_LENGTH);
+            }
+        }
+
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        } else {
+            POOLED_INFLATERS.decrementAndGet();
+        }
+        final ByteBuf packet = alloc.directBuffer(length);
+        try {
+            inflater.setInput(nioInput(in));
+            final ByteBuffer target = packet.internalNioBuffer(0, length);
+            final int start = target.position();
+            inflater.inflate(target);
+            final int inflated = target.position() - start;
+            if (inflated != length) {
+                throw new DecoderException("Badly compressed packet - actual length of uncompressed payload " + inflated + " is does not match declared size " + length);
+            }
+            packet.writerIndex(inflated);
+            in.skipBytes(in.readableBytes());
+            out.add(packet);
+        } catch (Throwable throwable) {
+            packet.release();
+            throw throwable;
+        } finally {
+            inflater.reset();
+            if (POOLED_INFLATERS.incrementAndGet() <= MAX_POOLED) {
+                INFLATERS.offer(inflater);
+            } else {
+                POOLED_INFLATERS.decrementAndGet();
+                inflater.end();
+            }
+        }
+    }
+
+    private static ByteBuffer nioInput(ByteBuf buf) {
+        if (buf.nioBufferCount() == 1) {
+            return buf.nioBuffer();
+        }
+        final ByteBuffer copy = ByteBuffer.allocateDirect(buf.readableBytes());
+        buf.getBytes(buf.readerIndex(), copy);
+        copy.flip();
+        return copy;
+    }
+
+    private static final class CompressionThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MetalMC-Compression-" + this.threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package net.metalmc.metal.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.network.Connection;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.common.ClientboundKeepAlivePacket;
+import net.minecraft.network.protocol.common.ClientboundPingPacket;
+import net.minecraft.network.protocol.game.ClientboundPlayerPositionPacket;
+import net.minecraft.network.protocol.ping.ClientboundPongResponsePacket;
+
+/**
+ * Flush scheduling and flush statistics of one connection.
+ * <p>
+ * Vanilla already suspends flushing of packets sent by the main thread while
+ * {@code MinecraftServer#tickChildren} runs and flushes every player once at its end. Everything
+ * sent outside of that window, most notably the responses to packets handled between two ticks,
+ * is still flushed one packet at a time, each flush costing a {@code write}/{@code writev} call.
+ * With consolidation enabled those packets are only written and a single delayed flush per
+ * connection picks them up, at the latest after {@code max-delay} or at the end of the next tick,
+ * whichever comes first. Latency sensitive packets (keep-alive, ping, teleports) are flushed after
+ * at most {@code latency-sensitive-max-delay}, immediately by default, even during a tick.
+ * <p>
+ * As the first outbound handler of the pipeline it also counts flushes and the bytes they carry,
+ * each flush carrying data being at least one write call to the socket.
+ */
+public final class FlushConsolidator extends ChannelOutboundHandlerAdapter {
+    public static final String HANDLER_NAME = "metal_flush_stats";
+
+    public static final LongAdder TOTAL_FLUSHES = new LongAdder();
+    public static final LongAdder TOTAL_BYTES = new LongAdder();
+    public static final LongAdder DEFERRED_FLUSHES = new LongAdder();
+
+    private final Connection connection;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Runnable scheduledFlush = this::scheduledFlush;
+    private final long createdNanos = System.nanoTime();
+    // only written by the event loop
+    private long pendingBytes;
+    private volatile long flushes;
+    private volatile long flushedBytes;
+
+    public FlushConsolidator(Connection connection) {
+        this.connection = connection;
+    }
+
+    public static boolean isLatencySensitive(Packet<?> packet) {
+        if (packet instanceof SharedPacket<?> sharedPacket) {
+            packet = sharedPacket.packet();
+        }
+        return packet instanceof ClientboundKeepAlivePacket
+            || packet instanceof ClientboundPingPacket
+            || packet instanceof ClientboundPongResponsePacket
+            || packet instanceof ClientboundPlayerPositionPacket;
+    }
+
+    /**
+     * Decides whether a packet sent by the main thread is flushed right away.
+     *
+     * @param flush whether vanilla would flush it, {@code false} while flushing is suspended during a tick
+     * @return whether to flush it with the write
+     */
+    public boolean shouldFlush(Packet<?> packet, boolean flush) {
+        final Channel channel = this.connection.channel;
+        if (channel == null) {
+            return flush;
+        }
+        if (isLatencySensitive(packet)) {
+            return this.deferFlush(channel, MetalConfig.flushConsolidationSensitiveMaxDelayMillis);
+        }
+        if (!flush) {
+            // flushed by ServerCommonPacketListenerImpl#resumeFlushing at the end of the tick
+            return false;
+        }
+        return this.deferFlush(channel, MetalConfig.flushConsolidationMaxDelayMillis);
+    }
+
+    private boolean deferFlush(Channel channel, int maxDelayMillis) {
+        if (maxDelayMillis <= 0) {
+            return true;
+        }
+        if (this.flushScheduled.compareAndSet(false, true)) {
+            channel.eventLoop().schedule(this.scheduledFlush, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+        DEFERRED_FLUSHES.increment();
+        return false;
+    }
+
+    private void scheduledFlush() {
+        this.flushScheduled.set(false);
+        this.connection.flushChannel();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf buf) {
+            this.pendingBytes += buf.readableBytes();
+        } else if (msg instanceof ByteBufHolder holder) {
+            this.pendingBytes += holder.content().readableBytes();
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        final long bytes = this.pendingBytes;
+        if (bytes != 0L) {
+            this.pendingBytes = 0L;
+            this.flushes = this.flushes + 1L;
+            this.flushedBytes = this.flushedBytes + bytes;
+            TOTAL_FLUSHES.increment();
+            TOTAL_BYTES.add(bytes);
+        }
+        super.flush(ctx);
+    }
+
+    public long getFlushes() {
+        return this.flushes;
+    }
+
+    public long getFlushedBytes() {
+        return this.flushedBytes;
+    }
+
+    public double getFlushesPerSecond() {
+        final double seconds = (System.nanoTime() - this.createdNanos) / 1.0E9;
+        return seconds <= 0.0 ? 0.0 : this.flushes / seconds;
+    }
+
+    public double getBytesPerFlush() {
+        final long flushes = this.flushes;
+        return flushes == 0L ? 0.0 : (double) this.flushedBytes / flushes;
+    }
+}
@@ -0,0 +1,101 @@
+package net.metalmc.metal.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+import javax.annotation.Nullable;
+
+/**
+ * Splits the inbound byte stream into frames, in place of vanilla's {@code Varint21FrameDecoder#decode}.
+ * <p>
+ * Vanilla copies the length prefix into a helper buffer to read it, rewinds on every partial frame
+ * and copies each complete frame into a newly allocated buffer. Here the prefix is read where it
+ * is and a frame is passed on as a retained slice of the pooled cumulation buffer, so the
+ * decompressor and the packet decoder read the bytes as they came off the socket. The slice is
+ * released by the packet decoder once the packet went through the rest of the pipeline, which
+ * leaves the cumulation buffer free to be compacted and reused on the next read.
+ * <p>
+ * A frame longer than {@code max-frame-length} is rejected as soon as its prefix is readable,
+ * before any of its body is accumulated. {@link #checkLength} applies the same limit when vanilla's
+ * copying decoder is used instead.
+ */
+public final class FrameSplitter {
+    // vanilla's MAX_VARINT21_BYTES
+    public static final int MAX_PREFIX_BYTES = 3;
+    // largest length a 21 bit prefix can hold
+    public static final int MAX_FRAME_LENGTH = (1 << 7 * MAX_PREFIX_BYTES) - 1;
+
+    private static final int PREFIX_BITS = 2;
+    private static final int PREFIX_MASK = (1 << PREFIX_BITS) - 1;
+    private static final int INCOMPLETE = -1;
+
+    private FrameSplitter() {
+    }
+
+    /**
+     * Takes the next frame from {@code in}, leaving {@code in} untouched when it is not complete yet.
+     *
+     * @param maxLength the longest frame accepted
+     * @return the frame as a retained slice of {@code in}, {@code null} when more bytes are needed
+     * @throws CorruptedFrameException if the prefix is wider than 21 bits or the frame longer than {@code maxLength}
+     */
+    @Nullable
+    public static ByteBuf split(ByteBuf in, int maxLength) {
+        final int prefixAndLength = peekLength(in, maxLength);
+        if (prefixAndLength == INCOMPLETE) {
+            return null;
+        }
+        final int prefix = prefixAndLength & PREFIX_MASK;
+        final int length = prefixAndLength >>> PREFIX_BITS;
+        if (in.readableBytes() - prefix < length) {
+            return null;
+        }
+        in.skipBytes(prefix);
+        return in.readRetainedSlice(length);
+    }
+
+    /**
+     * Applies the same checks as {@link #split} to the next frame of {@code in} without reading
+     * anything, for vanilla's copying decoder.
+     *
+     * @throws CorruptedFrameException if the prefix is wider than 21 bits or the frame longer than {@code maxLength}
+     */
+    public static void checkLength(ByteBuf in, int maxLength) {
+        peekLength(in, maxLength);
+    }
+
+    /**
+     * @return the width of the prefix in the lowest {@link #PREFIX_BITS} bits and the frame length
+     *     above them, {@link #INCOMPLETE} while the prefix has not arrived completely
+     */
+    private static int peekLength(ByteBuf in, int maxLength) {
+        final int start = in.readerIndex();
+        final int readable = in.readableBytes();
+        int length = 0;
+        int prefix = 0;
+        while (true) {
+            if (prefix == MAX_PREFIX_BYTES) {
+                throw new CorruptedFrameException("length wider than 21-bit");
+            }
+            if (prefix == readable) {
+                return INCOMPLETE;
+            }
+            final byte b = in.getByte(start + prefix);
+            length |= (b & 0x7F) << prefix * 7;
+            ++prefix;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length > maxLength) {
+            throw new CorruptedFrameException("frame of " + length + " bytes is longer than the limit of " + maxLength);
+        }
+        return length << PREFIX_BITS | prefix;
+    }
+
+    /**
+     * @return {@code maxLength} limited to what a frame prefix can hold
+     */
+    public static int clampMaxLength(int maxLength) {
+        return maxLength <= 0 ? MAX_FRAME_LENGTH : Math.min(maxLength, MAX_FRAME_LENGTH);
+    }
+}
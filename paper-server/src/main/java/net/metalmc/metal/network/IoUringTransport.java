@@ -0,0 +1,72 @@
+package net.metalmc.metal.network;
+
+import com.google.common.base.Suppliers;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import java.net.SocketAddress;
+import java.util.function.Supplier;
+import net.metalmc.metal.MetalConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The io_uring server transport, used instead of epoll or NIO when enabled and supported.
+ * <p>
+ * io_uring needs a Linux 5.9+ kernel that does not forbid it ({@code kernel.io_uring_disabled}) and
+ * the native library of the platform. When any of that is missing, or the server listens on a Unix
+ * domain socket, the listener keeps using the vanilla choice between epoll and NIO.
+ */
+public final class IoUringTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IoUringTransport.class);
+
+    public static final Supplier<EventLoopGroup> SERVER_EVENT_GROUP = Suppliers.memoize(
+        () -> new IOUringEventLoopGroup(0, new ThreadFactoryBuilder().setNameFormat("Netty io_uring Server IO #%d").setDaemon(true).setUncaughtExceptionHandler(new net.minecraft.DefaultUncaughtExceptionHandlerWithName(LOGGER)).build())
+    );
+
+    private IoUringTransport() {
+    }
+
+    public static boolean isAvailable() {
+        try {
+            return IOUring.isAvailable();
+        } catch (LinkageError error) {
+            return false;
+        }
+    }
+
+    private static Object unavailabilityCause() {
+        try {
+            final Throwable cause = IOUring.unavailabilityCause();
+            return cause == null ? "unknown" : cause.toString();
+        } catch (LinkageError error) {
+            return error.toString();
+        }
+    }
+
+    /**
+     * @return whether the server listening on {@code address} should use io_uring, logs why not when it was enabled
+     */
+    public static boolean shouldUse(SocketAddress address) {
+        if (!MetalConfig.ioUringTransport) {
+            return false;
+        }
+        if (address instanceof DomainSocketAddress) {
+            LOGGER.info("io_uring does not support Unix domain sockets, falling back to the default transport");
+            return false;
+        }
+        if (!isAvailable()) {
+            LOGGER.warn("io_uring is not available ({}), falling back to the default transport", unavailabilityCause());
+            return false;
+        }
+        return true;
+    }
+
+    public static Class<? extends ServerChannel> serverChannel() {
+        return IOUringServerSocketChannel.class;
+    }
+}
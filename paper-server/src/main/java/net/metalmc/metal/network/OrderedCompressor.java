@@ -0,0 +1,149 @@
+package net.metalmc.metal.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nullable;
+import net.metalmc.metal.MetalConfig;
+
+/**
+ * Compression stage of one connection, replacing the body of vanilla's {@code CompressionEncoder}.
+ * <p>
+ * Small packets are compressed on the event loop through {@link CompressionPool}. Packets of at
+ * least {@code offload-threshold} bytes are handed to the compression workers. Until such a packet
+ * is compressed every later write and flush of the connection waits in {@link #pending}, and once
+ * it is done the queue is drained on the event loop, so the connection sees its packets in the
+ * order they were sent. A full worker queue compresses on the event loop like vanilla.
+ * <p>
+ * Only used from the event loop of the channel, apart from the worker filling in the result.
+ */
+public final class OrderedCompressor {
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private boolean removed;
+
+    private static final class Entry {
+        @Nullable
+        final Object msg;
+        @Nullable
+        final ChannelPromise promise;
+        final int threshold;
+        final boolean offloaded;
+        @Nullable
+        volatile ByteBuf frame;
+        @Nullable
+        volatile Throwable failure;
+        volatile boolean done;
+
+        Entry(@Nullable Object msg, @Nullable ChannelPromise promise, int threshold, boolean offloaded) {
+            this.msg = msg;
+            this.promise = promise;
+            this.threshold = threshold;
+            this.offloaded = offloaded;
+        }
+
+        void compress(ChannelHandlerContext ctx) {
+            try {
+                this.frame = CompressionPool.encodeFrame(ctx.alloc(), (ByteBuf) this.msg, this.threshold);
+            } catch (Throwable throwable) {
+                this.failure = throwable;
+            } finally {
+                this.done = true;
+            }
+        }
+    }
+
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise, int threshold) throws Exception {
+        if (this.removed) {
+            ctx.write(msg, promise);
+            return;
+        }
+        if (msg instanceof ByteBuf buf && MetalConfig.compressionOffload && buf.readableBytes() >= Math.max(threshold, MetalConfig.compressionOffloadThreshold)
+            && !(buf.unwrap() instanceof SharedPacket.Body)) {
+            final Entry entry = new Entry(buf, promise, threshold, true);
+            this.pending.add(entry);
+            try {
+                CompressionPool.executor().execute(() -> {
+                    entry.compress(ctx);
+                    ctx.executor().execute(() -> this.drain(ctx));
+                });
+                CompressionPool.OFFLOADED.increment();
+            } catch (RejectedExecutionException ignored) {
+                entry.compress(ctx);
+                CompressionPool.INLINE.increment();
+                this.drain(ctx);
+            }
+            return;
+        }
+        if (!this.pending.isEmpty()) {
+            this.pending.add(new Entry(msg, promise, threshold, false));
+            return;
+        }
+        this.writeNow(ctx, msg, promise, threshold);
+    }
+
+    public void flush(ChannelHandlerContext ctx) {
+        if (this.pending.isEmpty()) {
+            ctx.flush();
+        } else {
+            this.pending.add(new Entry(null, null, 0, false));
+        }
+    }
+
+    private void writeNow(ChannelHandlerContext ctx, Object msg, ChannelPromise promise, int threshold) throws Exception {
+        if (!(msg instanceof ByteBuf buf)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        if (SharedPacket.writeCompressed(ctx, buf, threshold, promise)) {
+            return;
+        }
+        CompressionPool.INLINE.increment();
+        ctx.write(CompressionPool.encodeFrame(ctx.alloc(), buf, threshold), promise);
+    }
+
+    private void drain(ChannelHandlerContext ctx) {
+        Entry entry;
+        while ((entry = this.pending.peek()) != null) {
+            if (entry.offloaded && !entry.done) {
+                return;
+            }
+            this.pending.poll();
+            if (entry.msg == null) {
+                if (!this.removed) {
+                    ctx.flush();
+                }
+            } else if (entry.offloaded) {
+                final ByteBuf frame = entry.frame;
+                if (entry.failure != null) {
+                    entry.promise.tryFailure(new EncoderException(entry.failure));
+                } else if (this.removed) {
+                    frame.release();
+                    entry.promise.tryFailure(new EncoderException("Compression stage was removed"));
+                } else {
+                    ctx.write(frame, entry.promise);
+                }
+            } else if (this.removed) {
+                ReferenceCountUtil.release(entry.msg);
+                entry.promise.tryFailure(new EncoderException("Compression stage was removed"));
+            } else {
+                try {
+                    this.writeNow(ctx, entry.msg, entry.promise, entry.threshold);
+                } catch (Throwable throwable) {
+                    entry.promise.tryFailure(throwable);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fails the writes still waiting for a worker, called when the handler leaves the pipeline.
+     */
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        this.removed = true;
+        this.drain(ctx);
+    }
+}
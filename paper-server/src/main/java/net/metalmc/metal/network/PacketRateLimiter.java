@@ -0,0 +1,139 @@
+package net.metalmc.metal.network;
+
+import io.papermc.paper.configuration.GlobalConfiguration;
+import io.papermc.paper.util.ObfHelper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import net.minecraft.network.Connection;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerCommonPacketListenerImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Paper's packet limiter without the lock and the class keyed map lookups of {@code Connection#channelRead0}.
+ * <p>
+ * Inbound packets of a connection are only read by its event loop, so the counters need no
+ * synchronization. The enabled per-packet limits of the configuration get dense indices, a
+ * {@link ClassValue} resolves every packet class once to the indices of the limits that apply to it
+ * (its own and those of its superclasses, in the order Paper checks them), and each connection keeps
+ * its {@link SlidingWindowCounter}s in an array by that index. Limits, actions and the kick message
+ * are the ones of the {@code packet-limiter} section of the Paper global configuration.
+ */
+public final class PacketRateLimiter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PacketRateLimiter.class);
+
+    public static final int ALLOW = 0;
+    public static final int DROP = 1;
+    public static final int KICK = 2;
+
+    private static volatile Limits limits;
+
+    private Limits counterLimits;
+    @Nullable
+    private SlidingWindowCounter allPackets;
+    private SlidingWindowCounter[] counters;
+
+    private static final class Limits {
+        final GlobalConfiguration.PacketLimiter config;
+        @Nullable
+        final GlobalConfiguration.PacketLimiter.PacketLimit allPackets;
+        final GlobalConfiguration.PacketLimiter.PacketLimit[] limits;
+        final Class<?>[] limitClasses;
+        final ClassValue<int[]> indices;
+
+        Limits(GlobalConfiguration.PacketLimiter config) {
+            this.config = config;
+            this.allPackets = config.allPackets.isEnabled() ? config.allPackets : null;
+            final List<GlobalConfiguration.PacketLimiter.PacketLimit> limits = new ArrayList<>();
+            final List<Class<?>> limitClasses = new ArrayList<>();
+            for (final Map.Entry<Class<? extends Packet<?>>, GlobalConfiguration.PacketLimiter.PacketLimit> entry : config.overrides.entrySet()) {
+                if (entry.getValue().isEnabled()) {
+                    limits.add(entry.getValue());
+                    limitClasses.add(entry.getKey());
+                }
+            }
+            this.limits = limits.toArray(GlobalConfiguration.PacketLimiter.PacketLimit[]::new);
+            this.limitClasses = limitClasses.toArray(Class<?>[]::new);
+            this.indices = new ClassValue<>() {
+                @Override
+                protected int[] computeValue(Class<?> packetClass) {
+                    // like Paper, superclass limits only apply when the all packets limit or one for the class itself is enabled
+                    if (Limits.this.allPackets == null && !config.overrides.containsKey(packetClass)) {
+                        return new int[0];
+                    }
+                    final List<Class<?>> classes = List.of(Limits.this.limitClasses);
+                    final List<Integer> indices = new ArrayList<>();
+                    for (Class<?> check = packetClass; check != null && check != Object.class; check = check.getSuperclass()) {
+                        final int index = classes.indexOf(check);
+                        if (index >= 0) {
+                            indices.add(index);
+                        }
+                    }
+                    return indices.stream().mapToInt(Integer::intValue).toArray();
+                }
+            };
+        }
+    }
+
+    private static Limits limits() {
+        final GlobalConfiguration.PacketLimiter config = GlobalConfiguration.get().packetLimiter;
+        Limits limits = PacketRateLimiter.limits;
+        if (limits == null || limits.config != config) {
+            limits = new Limits(config);
+            PacketRateLimiter.limits = limits;
+        }
+        return limits;
+    }
+
+    /**
+     * Counts an inbound packet.
+     *
+     * @return {@link #ALLOW}, {@link #DROP} to ignore the packet or {@link #KICK} to kick for packet spam
+     */
+    public int check(Connection connection, Packet<?> packet, long now) {
+        final Limits limits = limits();
+        if (this.counterLimits != limits) {
+            this.counterLimits = limits;
+            this.allPackets = limits.allPackets == null ? null : new SlidingWindowCounter((long) (limits.allPackets.interval() * 1.0E9));
+            this.counters = new SlidingWindowCounter[limits.limits.length];
+        }
+
+        if (this.allPackets != null && this.allPackets.add(now) >= limits.allPackets.maxPacketRate()) {
+            return KICK;
+        }
+
+        final int[] indices = limits.indices.get(packet.getClass());
+        for (final int index : indices) {
+            final GlobalConfiguration.PacketLimiter.PacketLimit limit = limits.limits[index];
+            SlidingWindowCounter counter = this.counters[index];
+            if (counter == null) {
+                counter = this.counters[index] = new SlidingWindowCounter((long) (limit.interval() * 1.0E9));
+            }
+            if (counter.add(now) >= limit.maxPacketRate()) {
+                switch (limit.action()) {
+                    case DROP:
+                        return DROP;
+                    case KICK:
+                        logKick(connection, limits.limitClasses[index]);
+                        return KICK;
+                }
+            }
+        }
+        return ALLOW;
+    }
+
+    private static void logKick(Connection connection, Class<?> check) {
+        final String deobfedPacketName = ObfHelper.INSTANCE.deobfClassName(check.getName());
+        final String playerName;
+        if (connection.getPacketListener() instanceof ServerCommonPacketListenerImpl impl) {
+            playerName = impl.getOwner().name();
+        } else {
+            playerName = connection.getLoggableAddress(MinecraftServer.getServer().logIPs());
+        }
+        LOGGER.warn("{} kicked for packet spamming: {}", playerName, deobfedPacketName.substring(deobfedPacketName.lastIndexOf(".") + 1));
+    }
+}
@@ -0,0 +1,190 @@
+package net.metalmc.metal.network;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.network.protocol.game.ClientboundPlayerInfoRemovePacket;
+import net.minecraft.network.protocol.game.ClientboundPlayerInfoUpdatePacket;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.players.PlayerList;
+
+/**
+ * Coalesces the tab list updates of one tick into as few packets per recipient as possible.
+ * <p>
+ * Joins, quits, game mode, display name, hat and latency changes each send their own player info
+ * packet to every player, so a join storm of n players costs n² packets. Sent through here on the
+ * main thread, they are collected per recipient instead and sent at the end of
+ * {@code PlayerList#tick}: at most one removal, then one update per distinct action set, each
+ * carrying the players that were queued with exactly those actions and built from the state of the
+ * players at that time. A latency update thus never re-sends the chat session or the profile of an
+ * unrelated player that joined in the same tick.
+ * <p>
+ * Visibility is checked again when sending, so players hidden in the meantime are left out. A
+ * player's pending entry is sent early when their entity is about to be shown to the recipient,
+ * since the client drops player entities it has no tab list entry for. Updates of the recipient's
+ * own entry that add it to the list are never held back.
+ * <p>
+ * One instance is owned by each {@link PlayerList}.
+ */
+public final class PlayerInfoAggregator {
+    public static final LongAdder QUEUED = new LongAdder();
+    public static final LongAdder SAVED = new LongAdder();
+
+    private final PlayerList playerList;
+    private final Map<ServerPlayer, Pending> pending = new IdentityHashMap<>();
+
+    private static final class Pending {
+        // insertion ordered, the actions of each player are the union of everything queued for them
+        final Map<ServerPlayer, EnumSet<ClientboundPlayerInfoUpdatePacket.Action>> updated = new LinkedHashMap<>();
+        final Set<UUID> removed = new LinkedHashSet<>();
+        int packets;
+    }
+
+    public PlayerInfoAggregator(PlayerList playerList) {
+        this.playerList = playerList;
+    }
+
+    /**
+     * Sends {@code packet} to {@code recipient}, or queues it for the end of the tick.
+     */
+    public void send(ServerPlayer recipient, ClientboundPlayerInfoUpdatePacket packet) {
+        if (!this.queue(recipient, packet)) {
+            recipient.connection.send(packet);
+        }
+    }
+
+    /**
+     * Sends {@code packet} to {@code recipient}, or queues it for the end of the tick.
+     */
+    public void send(ServerPlayer recipient, ClientboundPlayerInfoRemovePacket packet) {
+        if (!this.canQueue()) {
+            recipient.connection.send(packet);
+            return;
+        }
+        final Pending pending = this.pending.computeIfAbsent(recipient, key -> new Pending());
+        pending.removed.addAll(packet.profileIds());
+        ++pending.packets;
+        QUEUED.increment();
+    }
+
+    /**
+     * Like {@code PlayerList#broadcastAll(Packet, Player)}, sends {@code packet} to every player that can see {@code subject}.
+     */
+    public void broadcast(ClientboundPlayerInfoUpdatePacket packet, @Nullable ServerPlayer subject) {
+        for (final ServerPlayer recipient : this.playerList.players) {
+            if (subject != null && !recipient.getBukkitEntity().canSee(subject.getBukkitEntity())) {
+                continue;
+            }
+            this.send(recipient, packet);
+        }
+    }
+
+    private boolean canQueue() {
+        return MetalConfig.playerInfoAggregation && this.playerList.getServer().isSameThread();
+    }
+
+    private boolean queue(ServerPlayer recipient, ClientboundPlayerInfoUpdatePacket packet) {
+        if (!this.canQueue()) {
+            return false;
+        }
+        final boolean adds = packet.actions().contains(ClientboundPlayerInfoUpdatePacket.Action.ADD_PLAYER);
+        final List<ServerPlayer> players = new ArrayList<>(packet.entries().size());
+        for (final ClientboundPlayerInfoUpdatePacket.Entry entry : packet.entries()) {
+            final ServerPlayer player = this.playerList.getPlayer(entry.profileId());
+            if (player == null || (adds && player == recipient)) {
+                return false;
+            }
+            players.add(player);
+        }
+        final Pending pending = this.pending.computeIfAbsent(recipient, key -> new Pending());
+        for (final ServerPlayer player : players) {
+            pending.updated.computeIfAbsent(player, key -> EnumSet.noneOf(ClientboundPlayerInfoUpdatePacket.Action.class)).addAll(packet.actions());
+        }
+        ++pending.packets;
+        QUEUED.increment();
+        return true;
+    }
+
+    /**
+     * Sends the pending updates of {@code recipient} that include {@code player} before their entity is paired.
+     */
+    public void beforePairing(ServerPlayer recipient, ServerPlayer player) {
+        if (this.pending.isEmpty()) {
+            return;
+        }
+        final Pending pending = this.pending.get(recipient);
+        if (pending != null && pending.updated.containsKey(player)) {
+            this.pending.remove(recipient);
+            this.flush(recipient, pending);
+        }
+    }
+
+    /**
+     * Sends everything queued this tick, called at the end of {@code PlayerList#tick}.
+     */
+    public void flushAll() {
+        if (this.pending.isEmpty()) {
+            return;
+        }
+        final List<Map.Entry<ServerPlayer, Pending>> pending = new ArrayList<>(this.pending.entrySet());
+        this.pending.clear();
+        for (final Map.Entry<ServerPlayer, Pending> entry : pending) {
+            this.flush(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void flush(ServerPlayer recipient, Pending pending) {
+        if (recipient.hasDisconnected()) {
+            SAVED.add(pending.packets);
+            return;
+        }
+        int sent = 0;
+
+        final List<UUID> removed = new ArrayList<>(pending.removed.size());
+        for (final UUID uuid : pending.removed) {
+            // back already, the add of the join replaces the entry
+            if (this.playerList.getPlayer(uuid) == null) {
+                removed.add(uuid);
+            }
+        }
+        if (!removed.isEmpty()) {
+            recipient.connection.send(new ClientboundPlayerInfoRemovePacket(removed));
+            ++sent;
+        }
+
+        final Map<ServerPlayer, EnumSet<ClientboundPlayerInfoUpdatePacket.Action>> visible = new LinkedHashMap<>(pending.updated.size());
+        for (final Map.Entry<ServerPlayer, EnumSet<ClientboundPlayerInfoUpdatePacket.Action>> entry : pending.updated.entrySet()) {
+            final ServerPlayer player = entry.getKey();
+            if (!player.hasDisconnected() && recipient.getBukkitEntity().canSee(player.getBukkitEntity())) {
+                visible.put(player, entry.getValue());
+            }
+        }
+        for (final Map.Entry<EnumSet<ClientboundPlayerInfoUpdatePacket.Action>, List<ServerPlayer>> group : groupByActions(visible).entrySet()) {
+            recipient.connection.send(ClientboundPlayerInfoUpdatePacket.createUpdate(group.getKey(), group.getValue(), recipient));
+            ++sent;
+        }
+        SAVED.add(Math.max(0, pending.packets - sent));
+    }
+
+    /**
+     * Groups the players by their exact action set, keeping the order in which each set and each player first appeared.
+     */
+    static <T> Map<EnumSet<ClientboundPlayerInfoUpdatePacket.Action>, List<T>> groupByActions(Map<T, EnumSet<ClientboundPlayerInfoUpdatePacket.Action>> updated) {
+        final Map<EnumSet<ClientboundPlayerInfoUpdatePacket.Action>, List<T>> groups = new LinkedHashMap<>();
+        for (final Map.Entry<T, EnumSet<ClientboundPlayerInfoUpdatePacket.Action>> entry : updated.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                groups.computeIfAbsent(entry.getValue(), key -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        return groups;
+    }
+}
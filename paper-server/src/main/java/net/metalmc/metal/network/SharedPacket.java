@@ -0,0 +1,300 @@
+package net.metalmc.metal.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.UnpooledHeapByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TranslatableComponent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.network.ConnectionProtocol;
+import net.minecraft.network.PacketListener;
+import net.minecraft.network.ProtocolInfo;
+import net.minecraft.network.VarInt;
+import net.minecraft.network.protocol.BundlePacket;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.PacketFlow;
+import net.minecraft.network.protocol.PacketType;
+import net.minecraft.network.protocol.game.ClientboundSetDefaultSpawnPositionPacket;
+import net.minecraft.util.profiling.jfr.JvmProfiler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A packet sent to many players that is encoded only once.
+ * <p>
+ * Broadcasts wrap their packet with {@link #wrap(Packet, int)} and send the wrapper to every
+ * recipient. The first {@code PacketEncoder} that writes it encodes the body into an unpooled heap
+ * buffer, every other channel writes a read-only retained view of the same bytes, and
+ * {@code CompressionEncoder} likewise compresses the body once and shares the result. The buffers
+ * belong to the wrapper and are never released by it, so a wrapper dropped with a closed connection
+ * is simply collected.
+ * <p>
+ * Components are rendered for the locale of the recipient while encoding. When the body contains a
+ * translatable component that is rendered that way, it is cached per locale instead, so only players
+ * with different locales cost another encode. Bodies with plain text only are shared by all locales.
+ */
+public final class SharedPacket<T extends PacketListener> implements Packet<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedPacket.class);
+    // keep in sync with PacketEncoder, larger packets take the vanilla path and its error handling
+    private static final int MAX_FINAL_PACKET_SIZE = (1 << 21) - 1;
+    private static final Body UNSHAREABLE = new Body();
+    private static final FastThreadLocal<int[]> LOCALIZED_COMPONENTS = new FastThreadLocal<>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    public static final LongAdder ENCODES = new LongAdder();
+    public static final LongAdder REUSES = new LongAdder();
+
+    private final Packet<T> packet;
+    @Nullable
+    private volatile Body shared;
+    @Nullable
+    private Map<Locale, Body> localized;
+
+    private SharedPacket(Packet<T> packet) {
+        this.packet = packet;
+    }
+
+    /**
+     * @return a wrapper of {@code packet} for a broadcast to up to {@code recipients} players, or {@code packet} itself when it must not be shared
+     */
+    public static <T extends PacketListener> Packet<T> wrap(Packet<T> packet, int recipients) {
+        if (!MetalConfig.encodeOnceBroadcasts
+            || recipients < 2
+            || packet instanceof SharedPacket<?>
+            // unbundled by the pipeline before the encoder
+            || packet instanceof BundlePacket<?>
+            || packet.isTerminal()
+            || packet.hasLargePacketFallback()
+            // inspected by ServerCommonPacketListenerImpl#send
+            || packet instanceof ClientboundSetDefaultSpawnPositionPacket) {
+            return packet;
+        }
+        return new SharedPacket<>(packet);
+    }
+
+    /**
+     * @return a wrapper of {@code packet} that is encoded once however often it is sent, for responses held in a cache
+     */
+    public static <T extends PacketListener> SharedPacket<T> cached(Packet<T> packet) {
+        return new SharedPacket<>(packet);
+    }
+
+    /**
+     * Called by {@code ComponentSerialization} for every component rendered for the locale of the recipient.
+     */
+    public static void onLocalizedComponent(Component component) {
+        if (containsTranslatable(component)) {
+            ++LOCALIZED_COMPONENTS.get()[0];
+        }
+    }
+
+    /**
+     * @return whether rendering {@code component} for a locale can change it
+     */
+    static boolean containsTranslatable(Component component) {
+        if (component instanceof TranslatableComponent) {
+            return true;
+        }
+        final HoverEvent<?> hoverEvent = component.hoverEvent();
+        if (hoverEvent != null) {
+            final Object value = hoverEvent.value();
+            if (value instanceof Component text && containsTranslatable(text)) {
+                return true;
+            }
+            if (value instanceof HoverEvent.ShowEntity entity && entity.name() != null && containsTranslatable(entity.name())) {
+                return true;
+            }
+            // item names and lore are not looked into
+            if (value instanceof HoverEvent.ShowItem) {
+                return true;
+            }
+        }
+        for (final Component child : component.children()) {
+            if (containsTranslatable(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Packet<T> packet() {
+        return this.packet;
+    }
+
+    /**
+     * Writes the shared body of this packet to the next handler, called by {@code PacketEncoder} with
+     * the locale of the channel set for encoding.
+     *
+     * @return {@code false} when the packet has to be encoded for this channel alone
+     */
+    public boolean write(ChannelHandlerContext ctx, ProtocolInfo<?> protocolInfo, @Nullable Locale locale, ChannelPromise promise) {
+        if ((protocolInfo.id() != ConnectionProtocol.PLAY && protocolInfo.id() != ConnectionProtocol.STATUS) || protocolInfo.flow() != PacketFlow.CLIENTBOUND) {
+            return false;
+        }
+        final Body body = this.body(protocolInfo, locale);
+        if (body == UNSHAREABLE) {
+            return false;
+        }
+        final int length = body.readableBytes();
+        JvmProfiler.INSTANCE.onPacketSent(protocolInfo.id(), this.packet.type(), ctx.channel().remoteAddress(), length);
+        ctx.write(body.retain().asReadOnly(), promise);
+        return true;
+    }
+
+    private Body body(ProtocolInfo<?> protocolInfo, @Nullable Locale locale) {
+        Body body = this.shared;
+        if (body != null) {
+            countReuse(body);
+            return body;
+        }
+        synchronized (this) {
+            body = this.shared;
+            if (body == null && this.localized != null) {
+                body = this.localized.get(locale);
+            }
+            if (body != null) {
+                countReuse(body);
+                return body;
+            }
+
+            final int[] components = LOCALIZED_COMPONENTS.get();
+            final int before = components[0];
+            body = this.encode(protocolInfo);
+            if (body == UNSHAREABLE || components[0] == before) {
+                this.shared = body;
+            } else {
+                if (this.localized == null) {
+                    this.localized = new HashMap<>();
+                }
+                this.localized.put(locale, body);
+            }
+            return body;
+        }
+    }
+
+    private static void countReuse(Body body) {
+        if (body != UNSHAREABLE) {
+            REUSES.increment();
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Body encode(ProtocolInfo<?> protocolInfo) {
+        final Body body = new Body();
+        try {
+            ((ProtocolInfo) protocolInfo).codec().encode(body, this.packet);
+        } catch (Throwable throwable) {
+            LOGGER.debug("Could not encode {} once for all recipients", this.packet.type(), throwable);
+            return UNSHAREABLE;
+        }
+        if (body.readableBytes() > MAX_FINAL_PACKET_SIZE) {
+            return UNSHAREABLE;
+        }
+        ENCODES.increment();
+        return body;
+    }
+
+    /**
+     * Writes the frame of a shared body to the next handler, compressed when above {@code threshold}.
+     * Called by {@code CompressionEncoder} for every outbound buffer.
+     *
+     * @return {@code false} when {@code buf} is not a shared body and has to be compressed for this channel alone
+     */
+    public static boolean writeCompressed(ChannelHandlerContext ctx, ByteBuf buf, int threshold, ChannelPromise promise) {
+        if (!(buf.unwrap() instanceof Body body) || buf.readableBytes() != body.readableBytes()) {
+            return false;
+        }
+        final ByteBuf frame = body.frame(body.readableBytes() >= threshold);
+        buf.release();
+        ctx.write(frame.retain().asReadOnly(), promise);
+        return true;
+    }
+
+    @Override
+    public PacketType<? extends Packet<T>> type() {
+        return this.packet.type();
+    }
+
+    @Override
+    public void handle(T handler) {
+        this.packet.handle(handler);
+    }
+
+    @Override
+    public boolean isSkippable() {
+        return this.packet.isSkippable();
+    }
+
+    @Override
+    public boolean isTerminal() {
+        return this.packet.isTerminal();
+    }
+
+    @Override
+    public boolean packetTooLarge(net.minecraft.network.Connection manager) {
+        return this.packet.packetTooLarge(manager);
+    }
+
+    /**
+     * Encoded packet body with its lazily built frames for the compression stage.
+     */
+    static final class Body extends UnpooledHeapByteBuf {
+        @Nullable
+        private volatile ByteBuf uncompressed;
+        @Nullable
+        private volatile ByteBuf compressed;
+
+        private Body() {
+            super(UnpooledByteBufAllocator.DEFAULT, 256, Integer.MAX_VALUE);
+        }
+
+        private ByteBuf frame(boolean compress) {
+            ByteBuf frame = compress ? this.compressed : this.uncompressed;
+            if (frame != null) {
+                return frame;
+            }
+            synchronized (this) {
+                frame = compress ? this.compressed : this.uncompressed;
+                if (frame == null) {
+                    frame = compress ? this.deflate() : this.prefix();
+                    if (compress) {
+                        this.compressed = frame;
+                    } else {
+                        this.uncompressed = frame;
+                    }
+                }
+                return frame;
+            }
+        }
+
+        private ByteBuf prefix() {
+            final int length = this.readableBytes();
+            final ByteBuf frame = Unpooled.buffer(length + 1);
+            VarInt.write(frame, 0);
+            frame.writeBytes(this, this.readerIndex(), length);
+            return frame;
+        }
+
+        private ByteBuf deflate() {
+            final int length = this.readableBytes();
+            final ByteBuf frame = Unpooled.buffer(length / 2 + VarInt.getByteSize(length));
+            VarInt.write(frame, length);
+            CompressionPool.deflate(this.duplicate(), frame, CompressionPool.level());
+            return frame;
+        }
+    }
+}
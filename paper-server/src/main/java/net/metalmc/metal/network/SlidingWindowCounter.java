@@ -0,0 +1,67 @@
+package net.metalmc.metal.network;
+
+/**
+ * Event count over a sliding time window, a fixed size replacement of Paper's {@code IntervalledCounter}.
+ * <p>
+ * {@code IntervalledCounter} keeps one timestamp per event, thousands of entries for a spamming
+ * client. This splits the window into {@value #BUCKETS} buckets and only counts events per bucket,
+ * so memory and work per event are constant. The window covers the current bucket and the
+ * {@code BUCKETS - 1} before it, so it can be up to one bucket shorter than the interval and never
+ * reports a higher rate than the exact counter would. Not thread safe, it belongs to one event loop.
+ */
+public final class SlidingWindowCounter {
+    static final int BUCKETS = 32;
+
+    private final long bucketNanos;
+    private final double intervalSeconds;
+    private final int[] counts = new int[BUCKETS];
+    private long currentBucket = Long.MIN_VALUE;
+    private long sum;
+
+    public SlidingWindowCounter(long intervalNanos) {
+        this.bucketNanos = Math.max(1L, intervalNanos / BUCKETS);
+        this.intervalSeconds = intervalNanos * 1.0E-9;
+    }
+
+    /**
+     * Counts one event at {@code now} ({@link System#nanoTime()}).
+     *
+     * @return the rate in events per second after counting it
+     */
+    public double add(long now) {
+        this.advance(now);
+        ++this.counts[(int) Math.floorMod(this.currentBucket, BUCKETS)];
+        ++this.sum;
+        return this.getRate();
+    }
+
+    private void advance(long now) {
+        final long bucket = Math.floorDiv(now, this.bucketNanos);
+        final long current = this.currentBucket;
+        if (bucket == current) {
+            return;
+        }
+        if (current == Long.MIN_VALUE || bucket - current >= BUCKETS || bucket < current) {
+            java.util.Arrays.fill(this.counts, 0);
+            this.sum = 0L;
+        } else {
+            for (long expired = current + 1L; expired <= bucket; ++expired) {
+                final int index = (int) Math.floorMod(expired, BUCKETS);
+                this.sum -= this.counts[index];
+                this.counts[index] = 0;
+            }
+        }
+        this.currentBucket = bucket;
+    }
+
+    /**
+     * @return events per second over the window, like {@code IntervalledCounter#getRate()}
+     */
+    public double getRate() {
+        return this.sum / this.intervalSeconds;
+    }
+
+    public long getSum() {
+        return this.sum;
+    }
+}
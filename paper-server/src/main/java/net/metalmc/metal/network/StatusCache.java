@@ -0,0 +1,175 @@
+package net.metalmc.metal.network;
+
+import com.destroystokyo.paper.network.StandardPaperServerListPingEventImpl;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.network.Connection;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.status.ClientboundStatusResponsePacket;
+import net.minecraft.server.MinecraftServer;
+import org.bukkit.event.server.ServerListPingEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server list ping responses shared between status requests.
+ * <p>
+ * Building a response calls {@code PaperServerListPingEvent}, collects the player sample and
+ * encodes the MOTD and favicon to JSON, for every ping of every server list scanner or health
+ * check. The response is built for one request, kept as a {@link SharedPacket} so it is encoded
+ * only once, and answers every request for {@code ttl-ms}. An expired response keeps being
+ * served while a new one is built on a background thread, unless it is more than twice as old.
+ * <p>
+ * Ping event listeners may answer differently per address or protocol version, so with listeners
+ * registered the cache is only used when {@code cache-with-event-listeners} allows it, and the
+ * event is then called at most {@code max-events-per-second} times a second.
+ * <p>
+ * Changes to what the response shows that do not come from a ping event listener, like a new MOTD
+ * or a reload, {@link #invalidate() invalidate} the response.
+ */
+public final class StatusCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatusCache.class);
+
+    public static final LongAdder HITS = new LongAdder();
+    public static final LongAdder BUILDS = new LongAdder();
+
+    private static final AtomicBoolean REFRESHING = new AtomicBoolean();
+    private static volatile ExecutorService executor;
+    @Nullable
+    private static volatile Response response;
+
+    /**
+     * @param packet the encoded response, {@code null} when the ping event was cancelled
+     */
+    private record Response(@Nullable Packet<?> packet, long createdAt) {
+    }
+
+    private StatusCache() {
+    }
+
+    /**
+     * Answers a status request from the cache, called on the event loop of {@code connection}.
+     *
+     * @return {@code false} when the request has to be answered without the cache
+     */
+    public static boolean handle(MinecraftServer server, Connection connection) {
+        return handle(connection, System.nanoTime(), () -> StandardPaperServerListPingEventImpl.createResponse(server, connection));
+    }
+
+    /**
+     * @param now the {@link System#nanoTime()} of the request
+     * @param responses builds a response, {@code null} when the ping event was cancelled
+     */
+    static boolean handle(Connection connection, long now, Supplier<ClientboundStatusResponsePacket> responses) {
+        if (!MetalConfig.statusCache) {
+            return false;
+        }
+        final boolean listeners = ServerListPingEvent.getHandlerList().getRegisteredListeners().length > 0;
+        if (listeners && !MetalConfig.statusCacheWithEventListeners) {
+            return false;
+        }
+
+        Response response = StatusCache.response;
+        if (response == null) {
+            response = build(responses, now);
+        } else {
+            final long age = now - response.createdAt();
+            final long ttl = ttl(listeners);
+            if (age < ttl || !REFRESHING.compareAndSet(false, true)) {
+                HITS.increment();
+            } else if (age >= ttl * 2) {
+                // nobody asked for a while, build it for this request rather than serve an old one
+                try {
+                    response = build(responses, now);
+                } finally {
+                    REFRESHING.set(false);
+                }
+            } else {
+                HITS.increment();
+                try {
+                    executor().execute(() -> {
+                        try {
+                            build(responses, now);
+                        } catch (Throwable throwable) {
+                            LOGGER.warn("Failed to refresh the cached server status", throwable);
+                        } finally {
+                            REFRESHING.set(false);
+                        }
+                    });
+                } catch (RejectedExecutionException ignored) {
+                    REFRESHING.set(false);
+                }
+            }
+        }
+
+        if (response.packet() == null) {
+            connection.disconnect((Component) null);
+        } else {
+            connection.send(response.packet());
+        }
+        return true;
+    }
+
+    private static Response build(Supplier<ClientboundStatusResponsePacket> responses, long now) {
+        final ClientboundStatusResponsePacket packet = responses.get();
+        final Response response = new Response(packet == null ? null : SharedPacket.cached(packet), now);
+        StatusCache.response = response;
+        BUILDS.increment();
+        return response;
+    }
+
+    /**
+     * Drops the cached response, the next request builds a new one.
+     */
+    public static void invalidate() {
+        response = null;
+    }
+
+    static boolean refreshing() {
+        return REFRESHING.get();
+    }
+
+    private static long ttl(boolean listeners) {
+        final long ttl = TimeUnit.MILLISECONDS.toNanos(Math.max(0, MetalConfig.statusCacheTtlMillis));
+        if (!listeners || MetalConfig.statusCacheMaxEventsPerSecond <= 0.0) {
+            return ttl;
+        }
+        return Math.max(ttl, (long) (1.0E9 / MetalConfig.statusCacheMaxEventsPerSecond));
+    }
+
+    private static ExecutorService executor() {
+        ExecutorService executor = StatusCache.executor;
+        if (executor == null) {
+            synchronized (StatusCache.class) {
+                executor = StatusCache.executor;
+                if (executor == null) {
+                    executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), new StatusThreadFactory());
+                    StatusCache.executor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static final class StatusThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MetalMC-Status-" + this.threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
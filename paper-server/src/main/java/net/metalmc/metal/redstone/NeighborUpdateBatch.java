@@ -0,0 +1,292 @@
+package net.metalmc.metal.redstone;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.Arrays;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.redstone.CollectingNeighborUpdater;
+import net.minecraft.world.level.redstone.Orientation;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Layered neighbour update queue used by {@link CollectingNeighborUpdater} in batching mode.
+ * <p>
+ * A cascade is processed layer by layer: the updates queued while a layer runs form the next layer.
+ * Pending updates are not kept as update objects but as columns (kind, position, block, state,
+ * orientation, direction, flags), identical pending updates of the same layer are dropped, and each
+ * layer runs sorted by position. This replaces the depth first order of the vanilla queue, so
+ * contraptions that depend on the exact update order can behave differently, which is why the mode
+ * is opt-in.
+ * <p>
+ * Each cascade may run at most {@code maxChained} updates, the limit of the level resolved once by
+ * {@link MetalConfig#maxChainedNeighborUpdates}; the rest are dropped like vanilla does when
+ * {@code max-chained-neighbor-updates} is reached.
+ */
+public final class NeighborUpdateBatch {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NeighborUpdateBatch.class);
+
+    private static final byte SIMPLE = 0;
+    private static final byte FULL = 1;
+    private static final byte SHAPE = 2;
+    private static final byte MULTI = 3;
+
+    /**
+     * Runs the updates of a layer, see the matching {@code NeighborUpdater} methods.
+     */
+    public interface Executor {
+        void neighborChanged(BlockPos pos, Block block, @Nullable Orientation orientation);
+
+        void neighborChanged(BlockState state, BlockPos pos, Block block, @Nullable Orientation orientation, boolean movedByPiston);
+
+        void shapeUpdate(Direction direction, BlockState neighborState, BlockPos pos, BlockPos neighborPos, int flags, int updateLimit);
+
+        void updateNeighborsAtExceptFromFacing(BlockPos pos, Block block, @Nullable Direction skipDirection, @Nullable Orientation orientation);
+    }
+
+    private final Executor executor;
+    private final int maxChained;
+
+    private Layer current = new Layer();
+    private Layer next = new Layer();
+    private boolean running;
+    private boolean truncating;
+    private int count; // updates queued in this cascade, all of which run
+
+    // metrics, totals since startup
+    private long cascades;
+    private long executed;
+    private long duplicates;
+    private long truncated;
+    private int largestCascade;
+
+    /**
+     * @param maxChained updates a cascade may run, negative for no limit
+     */
+    public NeighborUpdateBatch(int maxChained, Executor executor) {
+        this.maxChained = maxChained;
+        this.executor = executor;
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    public int getMaxChained() {
+        return this.maxChained;
+    }
+
+    // The add methods queue an update and, if no cascade is running, run the cascade it starts.
+
+    public void addNeighborChanged(BlockPos pos, Block block, @Nullable Orientation orientation) {
+        this.add(SIMPLE, pos.asLong(), 0L, block, null, orientation, null, 0, 0);
+    }
+
+    public void addNeighborChanged(BlockState state, BlockPos pos, Block block, @Nullable Orientation orientation, boolean movedByPiston) {
+        this.add(FULL, pos.asLong(), 0L, block, state, orientation, null, movedByPiston ? 1 : 0, 0);
+    }
+
+    public void addShapeUpdate(Direction direction, BlockState neighborState, BlockPos pos, BlockPos neighborPos, int flags, int updateLimit) {
+        this.add(SHAPE, pos.asLong(), neighborPos.asLong(), null, neighborState, null, direction, flags, updateLimit);
+    }
+
+    public void addNeighborsAtExceptFromFacing(BlockPos pos, Block block, @Nullable Direction skipDirection, @Nullable Orientation orientation) {
+        this.add(MULTI, pos.asLong(), 0L, block, null, orientation, skipDirection, 0, 0);
+    }
+
+    private void add(byte kind, long pos, long neighborPos, @Nullable Block block, @Nullable BlockState state,
+                     @Nullable Orientation orientation, @Nullable Direction direction, int flags, int updateLimit) {
+        if (!this.running) {
+            this.truncating = false;
+        }
+
+        if (this.maxChained >= 0 && this.count >= this.maxChained) {
+            if (!this.truncating) {
+                this.truncating = true;
+                ++this.truncated;
+                LOGGER.error("Too many chained neighbor updates. Skipping the rest. First skipped position: {}", BlockPos.of(pos).toShortString());
+            }
+            return;
+        }
+
+        Layer layer = this.running ? this.next : this.current;
+        if (!layer.add(kind, pos, neighborPos, block, state, orientation, direction, flags, updateLimit)) {
+            ++this.duplicates;
+            return;
+        }
+        ++this.count;
+
+        if (!this.running) {
+            this.run();
+        }
+    }
+
+    private void run() {
+        this.running = true;
+        try {
+            while (this.current.size != 0) {
+                Layer layer = this.current;
+                layer.sort();
+                for (int i = 0; i < layer.size; ++i) {
+                    this.execute(layer, layer.order[i]);
+                }
+                this.executed += layer.size;
+                layer.clear();
+                this.current = this.next;
+                this.next = layer;
+            }
+        } finally {
+            ++this.cascades;
+            this.largestCascade = Math.max(this.largestCascade, this.count);
+            this.current.clear();
+            this.next.clear();
+            this.count = 0;
+            this.truncating = false;
+            this.running = false;
+        }
+    }
+
+    private void execute(Layer layer, int slot) {
+        // handlers may keep the position (scheduled ticks, events), so it has to be immutable
+        BlockPos pos = BlockPos.of(layer.positions[slot]);
+        switch (layer.kinds[slot]) {
+            case SIMPLE -> this.executor.neighborChanged(pos, layer.blocks[slot], layer.orientations[slot]);
+            case FULL -> this.executor.neighborChanged(layer.states[slot], pos, layer.blocks[slot], layer.orientations[slot], layer.flags[slot] != 0);
+            case SHAPE -> this.executor.shapeUpdate(layer.directions[slot], layer.states[slot], pos, BlockPos.of(layer.neighborPositions[slot]), layer.flags[slot], layer.updateLimits[slot]);
+            case MULTI -> this.executor.updateNeighborsAtExceptFromFacing(pos, layer.blocks[slot], layer.directions[slot], layer.orientations[slot]);
+            default -> throw new IllegalStateException("Unknown neighbor update kind " + layer.kinds[slot]);
+        }
+    }
+
+    public long getCascades() {
+        return this.cascades;
+    }
+
+    public long getExecuted() {
+        return this.executed;
+    }
+
+    public long getDuplicates() {
+        return this.duplicates;
+    }
+
+    public long getTruncated() {
+        return this.truncated;
+    }
+
+    public int getLargestCascade() {
+        return this.largestCascade;
+    }
+
+    private static final class Layer {
+        private byte[] kinds = new byte[64];
+        private long[] positions = new long[64];
+        private long[] neighborPositions = new long[64];
+        private Block[] blocks = new Block[64];
+        private BlockState[] states = new BlockState[64];
+        private Orientation[] orientations = new Orientation[64];
+        private Direction[] directions = new Direction[64];
+        private int[] flags = new int[64];
+        private int[] updateLimits = new int[64];
+        private int[] order = new int[64];
+        private int size;
+
+        // open addressing set of the queued slots (slot + 1, 0 is free), compared column by column
+        private int[] table = new int[128];
+
+        private boolean add(byte kind, long pos, long neighborPos, @Nullable Block block, @Nullable BlockState state,
+                            @Nullable Orientation orientation, @Nullable Direction direction, int flags, int updateLimit) {
+            if (this.size == this.positions.length) {
+                this.grow();
+            }
+
+            int mask = this.table.length - 1;
+            int index = hash(kind, pos, neighborPos, block, state, orientation, direction, flags, updateLimit) & mask;
+            for (int slot; (slot = this.table[index]) != 0; index = (index + 1) & mask) {
+                --slot;
+                // blocks, states, orientations and directions are all canonical instances
+                if (this.kinds[slot] == kind && this.positions[slot] == pos && this.neighborPositions[slot] == neighborPos
+                    && this.blocks[slot] == block && this.states[slot] == state && this.orientations[slot] == orientation
+                    && this.directions[slot] == direction && this.flags[slot] == flags && this.updateLimits[slot] == updateLimit) {
+                    return false;
+                }
+            }
+
+            int slot = this.size++;
+            this.kinds[slot] = kind;
+            this.positions[slot] = pos;
+            this.neighborPositions[slot] = neighborPos;
+            this.blocks[slot] = block;
+            this.states[slot] = state;
+            this.orientations[slot] = orientation;
+            this.directions[slot] = direction;
+            this.flags[slot] = flags;
+            this.updateLimits[slot] = updateLimit;
+            this.table[index] = slot + 1;
+            return true;
+        }
+
+        private static int hash(byte kind, long pos, long neighborPos, @Nullable Block block, @Nullable BlockState state,
+                                @Nullable Orientation orientation, @Nullable Direction direction, int flags, int updateLimit) {
+            int hash = HashCommon.long2int(HashCommon.mix(pos)) + kind;
+            hash = 31 * hash + HashCommon.long2int(neighborPos);
+            hash = 31 * hash + System.identityHashCode(block);
+            hash = 31 * hash + System.identityHashCode(state);
+            hash = 31 * hash + System.identityHashCode(orientation);
+            hash = 31 * hash + (direction == null ? -1 : direction.ordinal());
+            hash = 31 * hash + flags;
+            hash = 31 * hash + updateLimit;
+            return HashCommon.mix(hash);
+        }
+
+        private void grow() {
+            int capacity = this.size * 2;
+            this.kinds = Arrays.copyOf(this.kinds, capacity);
+            this.positions = Arrays.copyOf(this.positions, capacity);
+            this.neighborPositions = Arrays.copyOf(this.neighborPositions, capacity);
+            this.blocks = Arrays.copyOf(this.blocks, capacity);
+            this.states = Arrays.copyOf(this.states, capacity);
+            this.orientations = Arrays.copyOf(this.orientations, capacity);
+            this.directions = Arrays.copyOf(this.directions, capacity);
+            this.flags = Arrays.copyOf(this.flags, capacity);
+            this.updateLimits = Arrays.copyOf(this.updateLimits, capacity);
+            this.order = new int[capacity];
+
+            // keep the table at most half full
+            int[] table = new int[capacity * 2];
+            int mask = table.length - 1;
+            for (int slot = 0; slot < this.size; ++slot) {
+                int index = hash(this.kinds[slot], this.positions[slot], this.neighborPositions[slot], this.blocks[slot], this.states[slot],
+                    this.orientations[slot], this.directions[slot], this.flags[slot], this.updateLimits[slot]) & mask;
+                while (table[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = slot + 1;
+            }
+            this.table = table;
+        }
+
+        private void sort() {
+            for (int i = 0; i < this.size; ++i) {
+                this.order[i] = i;
+            }
+            long[] positions = this.positions;
+            // stable, so updates of the same position keep their queue order
+            IntArrays.mergeSort(this.order, 0, this.size, (a, b) -> Long.compare(positions[a], positions[b]));
+        }
+
+        private void clear() {
+            Arrays.fill(this.blocks, 0, this.size, null);
+            Arrays.fill(this.states, 0, this.size, null);
+            Arrays.fill(this.orientations, 0, this.size, null);
+            Arrays.fill(this.directions, 0, this.size, null);
+            Arrays.fill(this.table, 0);
+            this.size = 0;
+        }
+    }
+}
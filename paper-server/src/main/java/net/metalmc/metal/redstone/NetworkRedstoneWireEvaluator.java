@@ -0,0 +1,376 @@
+package net.metalmc.metal.redstone;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.metalmc.metal.MetalConfig;
+import net.metalmc.metal.event.EventGate;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.RedStoneWireBlock;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.redstone.DefaultRedstoneWireEvaluator;
+import net.minecraft.world.level.redstone.NeighborUpdater;
+import net.minecraft.world.level.redstone.Orientation;
+import net.minecraft.world.level.redstone.RedstoneWireEvaluator;
+import org.bukkit.craftbukkit.block.CraftBlock;
+import org.bukkit.event.block.BlockRedstoneEvent;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Wire evaluator that solves a whole wire network at once.
+ * <p>
+ * When a wire's power no longer matches its inputs, the wires connected to it are collected with a
+ * breadth-first search, their non wire inputs are read once, and the final power of every wire is
+ * computed in a single pass that walks power levels from 15 down to 1. Only wires whose power
+ * actually changes are written, and the neighbour updates for all of them are emitted afterwards,
+ * each position once, in discovery order and {@link NeighborUpdater#UPDATE_ORDER}. Since every wire
+ * of the network already holds its final power, the updates that reach wires of the same network
+ * find nothing to do, instead of starting another round of recalculation.
+ * <p>
+ * This default order updates fewer blocks than {@link DefaultRedstoneWireEvaluator}, which updates
+ * the neighbours of the wire and of each of its six neighbours, reaching every block up to two steps
+ * away. Here a block two steps away is only updated when the block between it and the wire is a
+ * conductor. Blocks two above a wire or diagonally next to it through air are not updated anymore,
+ * so pistons, droppers and dispensers placed there no longer notice quasi-connected power changing
+ * (block update detectors built that way stop working), and wires of the network don't receive
+ * updates at all.
+ * <p>
+ * With {@code redstone.network-evaluator.vanilla-update-order} enabled, every changed wire instead
+ * emits the same updates as {@link DefaultRedstoneWireEvaluator}: updates around itself and around
+ * each of its six neighbours, in the order the default evaluator's {@code HashSet} iterates them.
+ * Networks larger than {@code max-network-size} are left to the default evaluator. Main thread
+ * only; the buffers are kept between evaluations and shared by all levels, nested evaluations of
+ * other networks use their own.
+ */
+public final class NetworkRedstoneWireEvaluator extends RedstoneWireEvaluator {
+    private static final Direction[] UPDATE_ORDER = NeighborUpdater.UPDATE_ORDER;
+    private static final Direction[] HORIZONTAL = Direction.Plane.HORIZONTAL.stream().toArray(Direction[]::new);
+    private static final Direction[] DIRECTIONS = Direction.values();
+    // the wire and its six neighbours
+    static final int VANILLA_UPDATES = 7;
+
+    private final DefaultRedstoneWireEvaluator fallback;
+    private final List<Network> networks = new ArrayList<>();
+    private final BlockPos.MutableBlockPos targetScratch = new BlockPos.MutableBlockPos();
+    private int depth;
+    private boolean inFallback;
+
+    public NetworkRedstoneWireEvaluator(RedStoneWireBlock wireBlock) {
+        super(wireBlock);
+        this.fallback = new DefaultRedstoneWireEvaluator(wireBlock);
+    }
+
+    @Override
+    public void updatePowerStrength(Level level, BlockPos pos, BlockState state, @Nullable Orientation orientation, boolean updateShape) {
+        // cheap local check first, a network at rest stays at rest when this wire agrees with its inputs
+        if (state.getValue(RedStoneWireBlock.POWER) == this.calculateTargetStrength(level, pos)) {
+            return;
+        }
+
+        if (this.inFallback) {
+            // the oversized network is being updated wire by wire, don't search it again for every wire
+            this.fallback.updatePowerStrength(level, pos, state, orientation, updateShape);
+            return;
+        }
+
+        if (this.depth == this.networks.size()) {
+            this.networks.add(new Network());
+        }
+        Network network = this.networks.get(this.depth++);
+        try {
+            if (!network.collect(level, pos.asLong(), MetalConfig.networkWireEvaluatorMaxSize)) {
+                network.clear();
+                this.inFallback = true;
+                try {
+                    this.fallback.updatePowerStrength(level, pos, state, orientation, updateShape);
+                } finally {
+                    this.inFallback = false;
+                }
+                return;
+            }
+            network.solve(level);
+            network.apply(level);
+        } finally {
+            network.clear();
+            --this.depth;
+        }
+    }
+
+    private int calculateTargetStrength(Level level, BlockPos pos) {
+        int blockSignal = this.getBlockSignal(level, pos);
+        if (blockSignal == 15) {
+            return blockSignal;
+        }
+        int wireSignal = 0;
+        BlockPos.MutableBlockPos neighbor = this.targetScratch;
+        BlockPos above = pos.above();
+        boolean aboveConductor = level.getBlockState(above).isRedstoneConductor(level, above);
+        for (Direction direction : HORIZONTAL) {
+            neighbor.setWithOffset(pos, direction);
+            BlockState neighborState = level.getBlockState(neighbor);
+            if (neighborState.is(this.wireBlock)) {
+                wireSignal = Math.max(wireSignal, neighborState.getValue(RedStoneWireBlock.POWER));
+                continue;
+            }
+            boolean conductor = neighborState.isRedstoneConductor(level, neighbor);
+            if (conductor && !aboveConductor) {
+                neighbor.move(Direction.UP);
+            } else if (!conductor) {
+                neighbor.move(Direction.DOWN);
+            } else {
+                continue;
+            }
+            BlockState diagonal = level.getBlockState(neighbor);
+            if (diagonal.is(this.wireBlock)) {
+                wireSignal = Math.max(wireSignal, diagonal.getValue(RedStoneWireBlock.POWER));
+            }
+        }
+        return Math.max(blockSignal, wireSignal - 1);
+    }
+
+    /**
+     * Buffers for one network evaluation. Node ids follow breadth-first discovery order from the
+     * wire that triggered the evaluation.
+     */
+    private final class Network {
+        private final Long2IntOpenHashMap ids = new Long2IntOpenHashMap();
+        private final LongArrayList positions = new LongArrayList();
+        private final IntArrayList[] buckets = new IntArrayList[16];
+        private final LongOpenHashSet updated = new LongOpenHashSet();
+        private final LongArrayList updates = new LongArrayList();
+        private BlockState[] states = new BlockState[64];
+        private int[] edges = new int[64 * 4];
+        private int[] power = new int[64];
+        private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        private final BlockPos.MutableBlockPos neighbor = new BlockPos.MutableBlockPos();
+        private final long[] vanillaOrder = new long[VANILLA_UPDATES];
+        private final int[] vanillaBuckets = new int[VANILLA_UPDATES];
+
+        private Network() {
+            this.ids.defaultReturnValue(-1);
+            for (int i = 0; i < this.buckets.length; ++i) {
+                this.buckets[i] = new IntArrayList();
+            }
+        }
+
+        private int add(long pos, BlockState state) {
+            int id = this.positions.size();
+            if (id == this.states.length) {
+                int capacity = id * 2;
+                this.states = Arrays.copyOf(this.states, capacity);
+                this.edges = Arrays.copyOf(this.edges, capacity * 4);
+                this.power = Arrays.copyOf(this.power, capacity);
+            }
+            this.positions.add(pos);
+            this.states[id] = state;
+            this.ids.put(pos, id);
+            return id;
+        }
+
+        /**
+         * Collects the wires connected to {@code start}, using the same connections vanilla reads
+         * signals through: horizontal neighbours, up a step unless a conductor covers the wire and
+         * down a step next to a non conductor.
+         *
+         * @return {@code false} when the network has more than {@code maxSize} wires
+         */
+        private boolean collect(Level level, long start, int maxSize) {
+            BlockPos.MutableBlockPos pos = this.pos;
+            BlockPos.MutableBlockPos neighbor = this.neighbor;
+            this.add(start, level.getBlockState(pos.set(start)));
+
+            for (int id = 0; id < this.positions.size(); ++id) {
+                pos.set(this.positions.getLong(id));
+                neighbor.setWithOffset(pos, Direction.UP);
+                boolean aboveConductor = level.getBlockState(neighbor).isRedstoneConductor(level, neighbor);
+
+                int edge = id * 4;
+                for (Direction direction : HORIZONTAL) {
+                    neighbor.setWithOffset(pos, direction);
+                    BlockState neighborState = level.getBlockState(neighbor);
+                    if (!neighborState.is(NetworkRedstoneWireEvaluator.this.wireBlock)) {
+                        boolean conductor = neighborState.isRedstoneConductor(level, neighbor);
+                        if (conductor && !aboveConductor) {
+                            neighbor.move(Direction.UP);
+                        } else if (!conductor) {
+                            neighbor.move(Direction.DOWN);
+                        } else {
+                            this.edges[edge++] = -1;
+                            continue;
+                        }
+                        neighborState = level.getBlockState(neighbor);
+                        if (!neighborState.is(NetworkRedstoneWireEvaluator.this.wireBlock)) {
+                            this.edges[edge++] = -1;
+                            continue;
+                        }
+                    }
+
+                    long neighborPos = neighbor.asLong();
+                    int neighborId = this.ids.get(neighborPos);
+                    if (neighborId == -1) {
+                        if (this.positions.size() >= maxSize) {
+                            return false;
+                        }
+                        neighborId = this.add(neighborPos, neighborState);
+                    }
+                    this.edges[edge++] = neighborId;
+                }
+            }
+            return true;
+        }
+
+        private void solve(Level level) {
+            int size = this.positions.size();
+            for (int id = 0; id < size; ++id) {
+                this.power[id] = NetworkRedstoneWireEvaluator.this.getBlockSignal(level, this.pos.set(this.positions.getLong(id)));
+            }
+            NetworkRedstoneWireEvaluator.solve(size, this.edges, this.power, this.buckets);
+        }
+
+        private void apply(Level level) {
+            Block wireBlock = NetworkRedstoneWireEvaluator.this.wireBlock;
+            boolean redstoneEvent = EventGate.BLOCK_REDSTONE.hasListeners();
+            boolean vanillaOrder = MetalConfig.networkWireEvaluatorVanillaOrder;
+            BlockPos.MutableBlockPos neighbor = this.neighbor;
+
+            IntArrayList changed = this.buckets[0]; // bucket 0 is never used by solve
+            int size = this.positions.size();
+            for (int id = 0; id < size; ++id) {
+                BlockState state = this.states[id];
+                int oldPower = state.getValue(RedStoneWireBlock.POWER);
+                int newPower = this.power[id];
+                if (oldPower == newPower) {
+                    continue;
+                }
+
+                BlockPos pos = BlockPos.of(this.positions.getLong(id));
+                if (redstoneEvent) {
+                    BlockRedstoneEvent event = new BlockRedstoneEvent(CraftBlock.at(level, pos), oldPower, newPower);
+                    level.getCraftServer().getPluginManager().callEvent(event);
+                    newPower = event.getNewCurrent();
+                    if (oldPower == newPower) {
+                        continue;
+                    }
+                }
+
+                if (level.getBlockState(pos) == state) {
+                    level.setBlock(pos, state.setValue(RedStoneWireBlock.POWER, newPower), Block.UPDATE_CLIENTS);
+                    changed.add(id);
+                }
+            }
+
+            if (vanillaOrder) {
+                for (int i = 0; i < changed.size(); ++i) {
+                    vanillaUpdateOrder(this.positions.getLong(changed.getInt(i)), this.vanillaOrder, this.vanillaBuckets, this.pos);
+                    for (long pos : this.vanillaOrder) {
+                        level.updateNeighborsAt(BlockPos.of(pos), wireBlock);
+                    }
+                }
+                return;
+            }
+
+            // first the direct neighbours of every changed wire, then the neighbours of those that conduct
+            for (int i = 0; i < changed.size(); ++i) {
+                long pos = this.positions.getLong(changed.getInt(i));
+                for (Direction direction : UPDATE_ORDER) {
+                    this.queueUpdate(BlockPos.offset(pos, direction));
+                }
+            }
+            for (int i = 0, direct = this.updates.size(); i < direct; ++i) {
+                neighbor.set(this.updates.getLong(i));
+                if (level.getBlockState(neighbor).isRedstoneConductor(level, neighbor)) {
+                    long pos = neighbor.asLong();
+                    for (Direction direction : UPDATE_ORDER) {
+                        this.queueUpdate(BlockPos.offset(pos, direction));
+                    }
+                }
+            }
+
+            for (int i = 0; i < this.updates.size(); ++i) {
+                level.neighborChanged(BlockPos.of(this.updates.getLong(i)), wireBlock, null);
+            }
+        }
+
+        private void queueUpdate(long pos) {
+            // wires of this network already hold their final power
+            if (!this.ids.containsKey(pos) && this.updated.add(pos)) {
+                this.updates.add(pos);
+            }
+        }
+
+        private void clear() {
+            this.ids.clear();
+            this.updated.clear();
+            this.updates.clear();
+            for (IntArrayList bucket : this.buckets) {
+                bucket.clear();
+            }
+            Arrays.fill(this.states, 0, this.positions.size(), null);
+            this.positions.clear();
+        }
+    }
+
+    /**
+     * Computes the final power of every wire: each wire takes the strongest of its own non wire
+     * input and its neighbours' power minus one. Levels are settled from 15 down, so every wire
+     * is finalised the first time it is reached at its highest level.
+     *
+     * @param edges the ids of the four connected wires of every wire, -1 where there is none
+     * @param power the non wire input of every wire, replaced by its final power
+     * @param buckets 16 empty lists, left holding the wires queued at each level
+     */
+    static void solve(int size, int[] edges, int[] power, IntArrayList[] buckets) {
+        for (int id = 0; id < size; ++id) {
+            if (power[id] > 0) {
+                buckets[power[id]].add(id);
+            }
+        }
+
+        for (int signal = 15; signal > 1; --signal) {
+            IntArrayList bucket = buckets[signal];
+            for (int i = 0; i < bucket.size(); ++i) {
+                int id = bucket.getInt(i);
+                if (power[id] != signal) {
+                    continue; // raised after it was queued here
+                }
+                int next = signal - 1;
+                for (int edge = id * 4, end = edge + 4; edge < end; ++edge) {
+                    int neighborId = edges[edge];
+                    if (neighborId != -1 && power[neighborId] < next) {
+                        power[neighborId] = next;
+                        buckets[next].add(neighborId);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills {@code order} with the positions {@link DefaultRedstoneWireEvaluator} updates around a
+     * changed wire, in the order it does: the wire and its six neighbours as iterated from a new
+     * {@code HashSet}, whose buckets are the spread hash codes of the positions modulo its initial
+     * capacity of 16, in insertion order within a bucket.
+     */
+    static void vanillaUpdateOrder(long pos, long[] order, int[] buckets, BlockPos.MutableBlockPos scratch) {
+        for (int i = 0; i < VANILLA_UPDATES; ++i) {
+            long position = i == 0 ? pos : BlockPos.offset(pos, DIRECTIONS[i - 1]);
+            int hash = scratch.set(position).hashCode();
+            int bucket = (hash ^ hash >>> 16) & 15;
+            // stable insertion sort by bucket
+            int j = i;
+            for (; j > 0 && buckets[j - 1] > bucket; --j) {
+                order[j] = order[j - 1];
+                buckets[j] = buckets[j - 1];
+            }
+            order[j] = position;
+            buckets[j] = bucket;
+        }
+    }
+}
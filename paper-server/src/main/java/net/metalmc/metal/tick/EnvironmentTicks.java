@@ -0,0 +1,333 @@
+package net.metalmc.metal.tick;
+
+import java.util.Arrays;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.GameRules;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+/**
+ * Ice, snow and lightning rolls of a world, scheduled on timing wheels of loaded chunks.
+ * <p>
+ * Every tick vanilla rolls {@code randomTickSpeed} times per ticking chunk for ice and snow, each
+ * roll succeeding with a chance of 1 in 48, and once per chunk for lightning, with a chance of 1 in
+ * {@code thunder-chance}. These are sequences of independent trials, so the number of failed rolls
+ * before the next success follows a geometric distribution. Each loaded chunk is put on one wheel
+ * under the tick of its next ice and snow success and on another under the tick of its next
+ * lightning success. A tick only takes the chunks due in that tick off the wheels, marks them and
+ * puts them back under their next success. Ticking a chunk then only compares the marked tick with
+ * the current one.
+ * <p>
+ * A success is dropped when the chunk is not ticked in its tick, or when it does not thunder.
+ * The trials are independent, so the ticks in which the chunk does tick keep vanilla's rates.
+ * Chunks join the wheels when they load and leave them when they unload.
+ */
+public final class EnvironmentTicks {
+    private static final int PRECIPITATION_CHANCE = 48;
+    private static final int WHEEL_SIZE = 1024;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final long NEVER = Long.MAX_VALUE;
+    private static final long NOT_MARKED = Long.MIN_VALUE;
+
+    private static final int PRECIPITATION = 0;
+    private static final int THUNDER = 1;
+
+    private final ServerLevel level;
+    private final Wheel precipitation = new Wheel(PRECIPITATION);
+    private final Wheel thunder = new Wheel(THUNDER);
+    private long currentTick = NOT_MARKED;
+    // what the wheels are scheduled with, 0 while nothing is rolled
+    private int randomTickSpeed;
+    private int thunderChance;
+    private Schedule[] due = new Schedule[16];
+
+    /**
+     * The place of a loaded chunk on the wheels, see {@code LevelChunk#environmentSchedule}.
+     */
+    public static final class Schedule {
+        private final long[] dueTick = {NEVER, NEVER};
+        private final int[] slot = {-1, -1};
+        // absolute index of the next successful ice and snow roll, randomTickSpeed rolls per tick
+        private long precipitationRoll;
+        private long precipitationTick = NOT_MARKED;
+        private int precipitations;
+        private long thunderTick = NOT_MARKED;
+
+        private Schedule() {
+        }
+    }
+
+    public EnvironmentTicks(ServerLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * Puts a chunk on the wheels, called when it is loaded.
+     */
+    public void add(LevelChunk chunk) {
+        if (chunk.environmentSchedule != null) {
+            return;
+        }
+        final Schedule schedule = new Schedule();
+        chunk.environmentSchedule = schedule;
+        // rolls start with the next tick that has not been marked yet
+        final long from = Math.max(this.level.getGameTime(), this.currentTick + 1L);
+        final RandomSource random = this.level.random;
+        if (this.randomTickSpeed > 0) {
+            schedule.precipitationRoll = from * this.randomTickSpeed + failuresBeforeSuccess(random, PRECIPITATION_CHANCE);
+            this.precipitation.add(schedule, schedule.precipitationRoll / this.randomTickSpeed);
+        } else {
+            this.precipitation.add(schedule, NEVER);
+        }
+        this.thunder.add(schedule, this.thunderChance > 0 ? from + failuresBeforeSuccess(random, this.thunderChance) : NEVER);
+    }
+
+    /**
+     * Takes a chunk off the wheels, called when it is unloaded.
+     */
+    public void remove(LevelChunk chunk) {
+        final Schedule schedule = chunk.environmentSchedule;
+        if (schedule == null) {
+            return;
+        }
+        this.precipitation.remove(schedule);
+        this.thunder.remove(schedule);
+        chunk.environmentSchedule = null;
+    }
+
+    /**
+     * Replaces the {@code iceandsnow} rolls of {@code ServerLevel#tickChunk}.
+     */
+    public void tickPrecipitation(LevelChunk chunk) {
+        this.startTick();
+        final Schedule schedule = chunk.environmentSchedule;
+        if (schedule == null) {
+            this.add(chunk);
+            return;
+        }
+        if (schedule.precipitationTick != this.currentTick) {
+            return;
+        }
+        schedule.precipitationTick = NOT_MARKED;
+        final ChunkPos pos = chunk.getPos();
+        for (int i = 0; i < schedule.precipitations; ++i) {
+            this.level.tickPrecipitation(this.level.getBlockRandomPos(pos.getMinBlockX(), 0, pos.getMinBlockZ(), 15));
+        }
+    }
+
+    /**
+     * Replaces the lightning roll of {@code ServerLevel#tickThunder}, only called while a strike is possible.
+     *
+     * @return whether lightning strikes this chunk in this tick
+     */
+    public boolean rollThunder(LevelChunk chunk) {
+        this.startTick();
+        final Schedule schedule = chunk.environmentSchedule;
+        if (schedule == null) {
+            this.add(chunk);
+            return false;
+        }
+        if (schedule.thunderTick != this.currentTick) {
+            return false;
+        }
+        schedule.thunderTick = NOT_MARKED;
+        return true;
+    }
+
+    /**
+     * Marks the chunks with a success in this tick, once per tick before the first chunk asks.
+     */
+    private void startTick() {
+        final long now = this.level.getGameTime();
+        if (now == this.currentTick) {
+            return;
+        }
+        final long previous = this.currentTick;
+        this.currentTick = now;
+
+        final int randomTickSpeed = Math.max(0, this.level.getGameRules().getInt(GameRules.RULE_RANDOMTICKING));
+        if (randomTickSpeed != this.randomTickSpeed) {
+            this.randomTickSpeed = randomTickSpeed;
+            this.takeDue(this.precipitation, previous, NEVER);
+        } else if (randomTickSpeed > 0) {
+            this.takeDue(this.precipitation, previous, now);
+        }
+
+        final int thunderChance = Math.max(0, this.level.spigotConfig.thunderChance);
+        if (thunderChance != this.thunderChance) {
+            this.thunderChance = thunderChance;
+            this.takeDue(this.thunder, previous, NEVER);
+        } else if (thunderChance > 0) {
+            this.takeDue(this.thunder, previous, now);
+        }
+    }
+
+    /**
+     * Takes the chunks due up to {@code until} off the wheel and schedules them again from the current tick.
+     * Taking all of them with {@link #NEVER} draws every next success again, for a changed chance.
+     *
+     * @param previous the last tick the wheel was advanced to, buckets after it are visited
+     */
+    private void takeDue(Wheel wheel, long previous, long until) {
+        final boolean redraw = until == NEVER;
+        int count = 0;
+        if (redraw || previous < until - WHEEL_MASK) {
+            count = wheel.takeAll(this, count, until);
+        } else {
+            for (long tick = previous + 1L; tick <= until; ++tick) {
+                count = wheel.take((int) (tick & WHEEL_MASK), this, count, until);
+            }
+        }
+
+        final Schedule[] due = this.due;
+        for (int i = 0; i < count; ++i) {
+            final Schedule schedule = due[i];
+            due[i] = null;
+            if (wheel.id == PRECIPITATION) {
+                this.reschedulePrecipitation(schedule, redraw);
+            } else {
+                this.rescheduleThunder(schedule, redraw);
+            }
+        }
+    }
+
+    private void reschedulePrecipitation(Schedule schedule, boolean redraw) {
+        final int speed = this.randomTickSpeed;
+        if (speed <= 0) {
+            this.precipitation.add(schedule, NEVER);
+            return;
+        }
+        final long now = this.currentTick;
+        final RandomSource random = this.level.random;
+        long roll = schedule.precipitationRoll;
+        if (redraw || roll / speed < now) {
+            // the successes of ticks without ticking chunks are dropped
+            roll = now * speed + failuresBeforeSuccess(random, PRECIPITATION_CHANCE);
+        }
+        int successes = 0;
+        while (roll / speed == now) {
+            ++successes;
+            roll += 1L + failuresBeforeSuccess(random, PRECIPITATION_CHANCE);
+        }
+        if (successes != 0) {
+            schedule.precipitationTick = now;
+            schedule.precipitations = successes;
+        }
+        schedule.precipitationRoll = roll;
+        this.precipitation.add(schedule, roll / speed);
+    }
+
+    private void rescheduleThunder(Schedule schedule, boolean redraw) {
+        final int chance = this.thunderChance;
+        if (chance <= 0) {
+            this.thunder.add(schedule, NEVER);
+            return;
+        }
+        final long now = this.currentTick;
+        final RandomSource random = this.level.random;
+        long tick = schedule.dueTick[THUNDER];
+        if (redraw || tick < now) {
+            tick = now + failuresBeforeSuccess(random, chance);
+        }
+        if (tick == now) {
+            schedule.thunderTick = now;
+            tick = now + 1L + failuresBeforeSuccess(random, chance);
+        }
+        this.thunder.add(schedule, tick);
+    }
+
+    private void addDue(Schedule schedule, int count) {
+        if (count == this.due.length) {
+            this.due = Arrays.copyOf(this.due, count * 2);
+        }
+        this.due[count] = schedule;
+    }
+
+    /**
+     * @return the number of failed trials before the first success of trials succeeding with a chance of {@code 1 / chance}
+     */
+    static long failuresBeforeSuccess(RandomSource random, int chance) {
+        if (chance <= 1) {
+            return 0L;
+        }
+        final double failure = Math.log1p(-1.0 / chance);
+        return (long) Math.min(Math.floor(Math.log1p(-random.nextDouble()) / failure), (double) (Long.MAX_VALUE >> 2));
+    }
+
+    /**
+     * Schedules in buckets by due tick modulo {@link #WHEEL_SIZE}. A bucket holds the chunks due in
+     * any tick of that residue, the ones due in later rounds stay when it is visited.
+     */
+    private static final class Wheel {
+        private final int id;
+        private final Schedule[][] buckets = new Schedule[WHEEL_SIZE][];
+        private final int[] sizes = new int[WHEEL_SIZE];
+
+        private Wheel(int id) {
+            this.id = id;
+        }
+
+        private void add(Schedule schedule, long dueTick) {
+            final int bucket = (int) (dueTick & WHEEL_MASK);
+            Schedule[] schedules = this.buckets[bucket];
+            final int size = this.sizes[bucket];
+            if (schedules == null) {
+                schedules = this.buckets[bucket] = new Schedule[4];
+            } else if (size == schedules.length) {
+                schedules = this.buckets[bucket] = Arrays.copyOf(schedules, size * 2);
+            }
+            schedules[size] = schedule;
+            this.sizes[bucket] = size + 1;
+            schedule.dueTick[this.id] = dueTick;
+            schedule.slot[this.id] = size;
+        }
+
+        private void remove(Schedule schedule) {
+            final int slot = schedule.slot[this.id];
+            if (slot < 0) {
+                return;
+            }
+            final int bucket = (int) (schedule.dueTick[this.id] & WHEEL_MASK);
+            final Schedule[] schedules = this.buckets[bucket];
+            final int last = --this.sizes[bucket];
+            if (slot != last) {
+                final Schedule moved = schedules[last];
+                schedules[slot] = moved;
+                moved.slot[this.id] = slot;
+            }
+            schedules[last] = null;
+            schedule.slot[this.id] = -1;
+        }
+
+        /**
+         * Moves the schedules of a bucket due up to {@code until} to the due list of {@code ticks}.
+         *
+         * @return the new size of the due list
+         */
+        private int take(int bucket, EnvironmentTicks ticks, int count, long until) {
+            final Schedule[] schedules = this.buckets[bucket];
+            if (schedules == null) {
+                return count;
+            }
+            for (int i = 0; i < this.sizes[bucket]; ) {
+                final Schedule schedule = schedules[i];
+                if (schedule.dueTick[this.id] > until) {
+                    ++i;
+                    continue;
+                }
+                // the last one moves into this slot
+                this.remove(schedule);
+                ticks.addDue(schedule, count++);
+            }
+            return count;
+        }
+
+        private int takeAll(EnvironmentTicks ticks, int count, long until) {
+            for (int bucket = 0; bucket < WHEEL_SIZE; ++bucket) {
+                count = this.take(bucket, ticks, count, until);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package net.metalmc.metal.tick;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.ticks.SavedTick;
+import net.minecraft.world.ticks.ScheduledTick;
+import net.minecraft.world.ticks.TickPriority;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Scheduled ticks of one chunk kept in primitive arrays instead of {@link ScheduledTick} records in
+ * a priority queue and a hash set, see {@code LevelChunkTicks}.
+ * <p>
+ * Every tick occupies a slot of {@value #STRIDE} longs: the position, the trigger tick, the sub tick
+ * order and a meta word holding the priority, the index of the tick type in a small per-chunk palette
+ * and the next slot scheduled at the same position. Slots are ordered by an implicit binary heap in
+ * drain order and indexed by position to answer {@link #hasScheduledTick(BlockPos, Object)} and to
+ * reject duplicates. {@link ScheduledTick} objects only exist while a tick is being scheduled or
+ * drained, so long waiting ticks no longer keep objects alive. The saved form is the same
+ * {@link SavedTick} list vanilla writes.
+ * <p>
+ * The first tick to drain is kept as an object, compared by its slot: {@link #peek()} hands out the
+ * object the tick was scheduled with when it went straight to the front, and otherwise builds the one
+ * {@link #poll()} returns later. Asking for the head again, as {@code LevelTicks} does for every
+ * scheduled tick and whenever it sorts its chunks, does not allocate.
+ * <p>
+ * Ticks loaded from disk stay pending, in the index but outside the heap, until they are unpacked.
+ */
+public final class PackedChunkTicks<T> {
+    private static final int STRIDE = 4;
+    private static final int POS = 0;
+    private static final int TRIGGER = 1;
+    private static final int SUB_TICK = 2;
+    private static final int META = 3;
+
+    private static final int PRIORITY_BITS = 8;
+    private static final long PRIORITY_MASK = (1L << PRIORITY_BITS) - 1L;
+    private static final int TYPE_SHIFT = PRIORITY_BITS;
+    private static final long TYPE_MASK = (1L << 24) - 1L;
+    private static final int NEXT_SHIFT = 32;
+    private static final int NO_SLOT = -1;
+
+    private static final TickPriority[] PRIORITIES = TickPriority.values();
+
+    private long[] data = new long[8 * STRIDE];
+    // slot -> position in the heap, -1 for pending ticks
+    private int[] heapIndex = new int[8];
+    private int[] heap = new int[8];
+    private int heapSize;
+    private int slots;
+    private int freeSlot = NO_SLOT;
+
+    private final Long2IntOpenHashMap firstSlotAt = new Long2IntOpenHashMap();
+    private final Reference2IntOpenHashMap<T> typeIds = new Reference2IntOpenHashMap<>();
+    private final List<T> types = new ArrayList<>();
+
+    private @Nullable List<SavedTick<T>> pendingTicks;
+    private int @Nullable [] pendingSlots;
+    private @Nullable ScheduledTick<T> head;
+    private int headSlot = NO_SLOT;
+
+    public PackedChunkTicks() {
+        this.firstSlotAt.defaultReturnValue(NO_SLOT);
+        this.typeIds.defaultReturnValue(-1);
+    }
+
+    public void setPending(List<SavedTick<T>> pendingTicks) {
+        this.pendingTicks = pendingTicks;
+        final int[] pendingSlots = new int[pendingTicks.size()];
+        for (int i = 0; i < pendingSlots.length; ++i) {
+            final SavedTick<T> tick = pendingTicks.get(i);
+            final int slot = this.allocate(tick.pos().asLong(), this.typeId(tick.type()), 0L, tick.priority(), 0L);
+            this.heapIndex[slot] = -1;
+            pendingSlots[i] = slot;
+        }
+        this.pendingSlots = pendingSlots;
+    }
+
+    public @Nullable ScheduledTick<T> peek() {
+        if (this.heapSize == 0) {
+            return null;
+        }
+        final int slot = this.heap[0];
+        if (slot != this.headSlot) {
+            this.head = this.toTick(slot);
+            this.headSlot = slot;
+        }
+        return this.head;
+    }
+
+    public @Nullable ScheduledTick<T> poll() {
+        final ScheduledTick<T> tick = this.peek();
+        if (tick != null) {
+            this.remove(this.heap[0]);
+        }
+        return tick;
+    }
+
+    /**
+     * @return {@code false} if the same type is already scheduled at the position
+     */
+    public boolean schedule(ScheduledTick<T> tick) {
+        final long pos = tick.pos().asLong();
+        final int type = this.typeId(tick.type());
+        if (this.find(pos, type) != NO_SLOT) {
+            return false;
+        }
+        final int slot = this.allocate(pos, type, tick.triggerTick(), tick.priority(), tick.subTickOrder());
+        this.enqueue(slot);
+        if (this.heap[0] == slot) {
+            // the caller's object describes the same tick, keep it instead of building another on peek
+            this.head = tick;
+            this.headSlot = slot;
+        }
+        return true;
+    }
+
+    public boolean hasScheduledTick(BlockPos pos, T type) {
+        final int typeId = this.typeIds.getInt(type);
+        return typeId >= 0 && this.find(pos.asLong(), typeId) != NO_SLOT;
+    }
+
+    public void removeIf(Predicate<ScheduledTick<T>> predicate) {
+        // walk a copy, removing reorders the heap
+        final int[] scheduled = Arrays.copyOf(this.heap, this.heapSize);
+        for (final int slot : scheduled) {
+            if (predicate.test(slot == this.headSlot ? this.head : this.toTick(slot))) {
+                this.remove(slot);
+            }
+        }
+    }
+
+    public Stream<ScheduledTick<T>> getAll() {
+        final int[] scheduled = Arrays.copyOf(this.heap, this.heapSize);
+        return IntStream.of(scheduled).mapToObj(slot -> slot == this.headSlot ? this.head : this.toTick(slot));
+    }
+
+    public int count() {
+        return this.heapSize + (this.pendingTicks != null ? this.pendingTicks.size() : 0);
+    }
+
+    public List<SavedTick<T>> pack(long gameTime) {
+        final List<SavedTick<T>> ticks = new ArrayList<>(this.count());
+        if (this.pendingTicks != null) {
+            ticks.addAll(this.pendingTicks);
+        }
+        for (int i = 0; i < this.heapSize; ++i) {
+            final int offset = this.heap[i] * STRIDE;
+            ticks.add(new SavedTick<>(
+                this.types.get(typeOf(this.data[offset + META])),
+                BlockPos.of(this.data[offset + POS]),
+                (int) (this.data[offset + TRIGGER] - gameTime),
+                PRIORITIES[(int) (this.data[offset + META] & PRIORITY_MASK)]
+            ));
+        }
+        return ticks;
+    }
+
+    /**
+     * Schedules the ticks loaded from disk. {@code onTickAdded} is only told about the loaded tick that
+     * ends up first to drain, if any: the only one {@code LevelTicks} would react to out of the ticks
+     * vanilla reports one by one, as later ticks can only move the front earlier.
+     */
+    public void unpack(long gameTime, @Nullable Consumer<ScheduledTick<T>> onTickAdded) {
+        final List<SavedTick<T>> pendingTicks = this.pendingTicks;
+        final int[] pendingSlots = this.pendingSlots;
+        this.pendingTicks = null;
+        this.pendingSlots = null;
+        if (pendingTicks == null || pendingSlots == null) {
+            return;
+        }
+
+        final int headBefore = this.heapSize != 0 ? this.heap[0] : NO_SLOT;
+        int subTick = -pendingTicks.size();
+        for (int i = 0; i < pendingSlots.length; ++i) {
+            final int slot = pendingSlots[i];
+            final int offset = slot * STRIDE;
+            this.data[offset + TRIGGER] = gameTime + pendingTicks.get(i).delay();
+            this.data[offset + SUB_TICK] = subTick++;
+            this.enqueue(slot);
+        }
+        if (onTickAdded != null && this.heapSize != 0 && this.heap[0] != headBefore) {
+            onTickAdded.accept(this.peek());
+        }
+    }
+
+    private int typeId(T type) {
+        int id = this.typeIds.getInt(type);
+        if (id < 0) {
+            id = this.types.size();
+            this.types.add(type);
+            this.typeIds.put(type, id);
+        }
+        return id;
+    }
+
+    private static int typeOf(long meta) {
+        return (int) ((meta >>> TYPE_SHIFT) & TYPE_MASK);
+    }
+
+    private static int nextOf(long meta) {
+        return (int) (meta >> NEXT_SHIFT);
+    }
+
+    private static long withNext(long meta, int next) {
+        return (meta & 0xFFFFFFFFL) | ((long) next << NEXT_SHIFT);
+    }
+
+    private ScheduledTick<T> toTick(int slot) {
+        final int offset = slot * STRIDE;
+        final long meta = this.data[offset + META];
+        return new ScheduledTick<>(
+            this.types.get(typeOf(meta)),
+            BlockPos.of(this.data[offset + POS]),
+            this.data[offset + TRIGGER],
+            PRIORITIES[(int) (meta & PRIORITY_MASK)],
+            this.data[offset + SUB_TICK]
+        );
+    }
+
+    private int find(long pos, int type) {
+        for (int slot = this.firstSlotAt.get(pos); slot != NO_SLOT; slot = nextOf(this.data[slot * STRIDE + META])) {
+            if (typeOf(this.data[slot * STRIDE + META]) == type) {
+                return slot;
+            }
+        }
+        return NO_SLOT;
+    }
+
+    private int allocate(long pos, int type, long triggerTick, TickPriority priority, long subTick) {
+        int slot = this.freeSlot;
+        if (slot != NO_SLOT) {
+            this.freeSlot = nextOf(this.data[slot * STRIDE + META]);
+        } else {
+            slot = this.slots++;
+            if (slot == this.heapIndex.length) {
+                final int capacity = slot << 1;
+                this.data = Arrays.copyOf(this.data, capacity * STRIDE);
+                this.heapIndex = Arrays.copyOf(this.heapIndex, capacity);
+                this.heap = Arrays.copyOf(this.heap, capacity);
+            }
+        }
+
+        final int offset = slot * STRIDE;
+        this.data[offset + POS] = pos;
+        this.data[offset + TRIGGER] = triggerTick;
+        this.data[offset + SUB_TICK] = subTick;
+        final long meta = ((long) type << TYPE_SHIFT) | priority.ordinal();
+        this.data[offset + META] = withNext(meta, this.firstSlotAt.get(pos));
+        this.firstSlotAt.put(pos, slot);
+        return slot;
+    }
+
+    private void remove(int slot) {
+        final int index = this.heapIndex[slot];
+        final int last = this.heap[--this.heapSize];
+        if (index != this.heapSize) {
+            this.heap[index] = last;
+            this.heapIndex[last] = index;
+            if (!this.siftUp(index)) {
+                this.siftDown(index);
+            }
+        }
+        if (slot == this.headSlot) {
+            // the slot is reused by the next tick scheduled
+            this.head = null;
+            this.headSlot = NO_SLOT;
+        }
+
+        final int offset = slot * STRIDE;
+        final long pos = this.data[offset + POS];
+        final int next = nextOf(this.data[offset + META]);
+        int current = this.firstSlotAt.get(pos);
+        if (current == slot) {
+            if (next == NO_SLOT) {
+                this.firstSlotAt.remove(pos);
+            } else {
+                this.firstSlotAt.put(pos, next);
+            }
+        } else {
+            while (current != NO_SLOT) {
+                final int currentOffset = current * STRIDE + META;
+                if (nextOf(this.data[currentOffset]) == slot) {
+                    this.data[currentOffset] = withNext(this.data[currentOffset], next);
+                    break;
+                }
+                current = nextOf(this.data[currentOffset]);
+            }
+        }
+
+        this.data[offset + META] = withNext(0L, this.freeSlot);
+        this.freeSlot = slot;
+    }
+
+    private void enqueue(int slot) {
+        final int index = this.heapSize++;
+        this.heap[index] = slot;
+        this.heapIndex[slot] = index;
+        this.siftUp(index);
+    }
+
+    private boolean siftUp(int index) {
+        final int slot = this.heap[index];
+        final int start = index;
+        while (index > 0) {
+            final int parentIndex = (index - 1) >>> 1;
+            final int parent = this.heap[parentIndex];
+            if (this.compare(slot, parent) >= 0) {
+                break;
+            }
+            this.heap[index] = parent;
+            this.heapIndex[parent] = index;
+            index = parentIndex;
+        }
+        this.heap[index] = slot;
+        this.heapIndex[slot] = index;
+        return index != start;
+    }
+
+    private void siftDown(int index) {
+        final int slot = this.heap[index];
+        final int half = this.heapSize >>> 1;
+        while (index < half) {
+            int childIndex = (index << 1) + 1;
+            int child = this.heap[childIndex];
+            final int rightIndex = childIndex + 1;
+            if (rightIndex < this.heapSize && this.compare(this.heap[rightIndex], child) < 0) {
+                childIndex = rightIndex;
+                child = this.heap[childIndex];
+            }
+            if (this.compare(slot, child) <= 0) {
+                break;
+            }
+            this.heap[index] = child;
+            this.heapIndex[child] = index;
+            index = childIndex;
+        }
+        this.heap[index] = slot;
+        this.heapIndex[slot] = index;
+    }
+
+    /**
+     * Same order as {@link ScheduledTick#DRAIN_ORDER}: trigger tick, priority, sub tick order.
+     */
+    private int compare(int first, int second) {
+        final int firstOffset = first * STRIDE;
+        final int secondOffset = second * STRIDE;
+        int result = Long.compare(this.data[firstOffset + TRIGGER], this.data[secondOffset + TRIGGER]);
+        if (result != 0) {
+            return result;
+        }
+        result = Long.compare(this.data[firstOffset + META] & PRIORITY_MASK, this.data[secondOffset + META] & PRIORITY_MASK);
+        if (result != 0) {
+            return result;
+        }
+        return Long.compare(this.data[firstOffset + SUB_TICK], this.data[secondOffset + SUB_TICK]);
+    }
+}
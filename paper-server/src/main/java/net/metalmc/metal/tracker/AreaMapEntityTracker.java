@@ -0,0 +1,131 @@
+package net.metalmc.metal.tracker;
+
+import ca.spottedleaf.moonrise.common.list.ReferenceList;
+import ca.spottedleaf.moonrise.common.misc.SingleUserAreaMap;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ChunkMap;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.network.ServerPlayerConnection;
+import net.minecraft.world.entity.Entity;
+
+/**
+ * Entity tracker pair updates driven by a {@link PlayerTrackerAreaMap} and a {@link TrackerCellMap}.
+ * <p>
+ * Vanilla re-checks a tracked entity against every player of the world when the entity changes
+ * section, and every tracked entity against a player whenever that player moves ({@code ChunkMap#move}).
+ * With this tracker enabled, {@code ChunkMap#tick} and {@code ChunkMap#move} skip those scans and this
+ * tracker does the same updates once per tick, after the chunk tracking views were updated:
+ * <ul>
+ *     <li>an entity that changed section is checked against the players whose area covers its chunk,
+ *     plus the players already tracking it;</li>
+ *     <li>a player that moved is checked against the entities in the chunks its area covers now or
+ *     covered before the move.</li>
+ * </ul>
+ * Every check goes through {@code TrackedEntity#updatePlayer}, so range, visibility API and tracking
+ * events behave as before. Main thread only.
+ */
+public final class AreaMapEntityTracker {
+    private final ChunkMap chunkMap;
+    private final PlayerTrackerAreaMap areaMap = new PlayerTrackerAreaMap();
+    private final TrackerCellMap<ChunkMap.TrackedEntity> cells = new TrackerCellMap<>();
+    private final ReferenceList<ServerPlayer> candidates = new ReferenceList<>();
+
+    public AreaMapEntityTracker(ChunkMap chunkMap) {
+        this.chunkMap = chunkMap;
+    }
+
+    public static boolean isEnabled() {
+        return MetalConfig.areaMapEntityTracker;
+    }
+
+    public PlayerTrackerAreaMap getAreaMap() {
+        return this.areaMap;
+    }
+
+    /**
+     * Updates both maps and the pairs of every changed entity and moved player.
+     * Must run after the chunk tracking views of the tick were updated.
+     */
+    public void tick() {
+        this.areaMap.update(this.chunkMap.level.players());
+
+        this.cells.startUpdate();
+        for (ChunkMap.TrackedEntity tracker : this.chunkMap.entityMap.values()) {
+            Entity entity = tracker.entity;
+            this.cells.update(tracker, SectionPos.blockToSectionCoord(entity.getBlockX()), SectionPos.blockToSectionCoord(entity.getBlockY()), SectionPos.blockToSectionCoord(entity.getBlockZ()));
+        }
+        this.cells.finishUpdate();
+
+        ReferenceList<PlayerTrackerAreaMap.PlayerArea> moved = this.areaMap.getMovedAreas();
+        Object[] movedAreas = moved.getRawData();
+        // vanilla re-checks the moving player's own tracker against every player
+        for (int i = 0, len = moved.size(); i < len; ++i) {
+            ChunkMap.TrackedEntity tracker = this.chunkMap.entityMap.get(((PlayerTrackerAreaMap.PlayerArea) movedAreas[i]).getParameter().getId());
+            if (tracker != null) {
+                this.cells.markChanged(tracker);
+            }
+        }
+
+        ReferenceList<ChunkMap.TrackedEntity> changed = this.cells.getChanged();
+        Object[] changedTrackers = changed.getRawData();
+        for (int i = 0, len = changed.size(); i < len; ++i) {
+            this.updateTracker((ChunkMap.TrackedEntity) changedTrackers[i]);
+        }
+
+        for (int i = 0, len = moved.size(); i < len; ++i) {
+            this.updatePlayer((PlayerTrackerAreaMap.PlayerArea) movedAreas[i]);
+        }
+    }
+
+    private void updateTracker(ChunkMap.TrackedEntity tracker) {
+        Entity entity = tracker.entity;
+        ReferenceList<ServerPlayer> candidates = this.candidates;
+        ReferenceList<ServerPlayer> nearby = this.areaMap.getPlayersNear(entity.chunkPosition().x, entity.chunkPosition().z);
+        if (nearby != null) {
+            Object[] players = nearby.getRawData();
+            for (int i = 0, len = nearby.size(); i < len; ++i) {
+                candidates.add((ServerPlayer) players[i]);
+            }
+        }
+        // players outside of the area can't have the chunk tracked anymore, updatePlayer drops them
+        for (ServerPlayerConnection connection : tracker.seenBy) {
+            candidates.add(connection.getPlayer());
+        }
+
+        // updatePlayer changes seenBy, so the candidates are collected first
+        try {
+            Object[] players = candidates.getRawData();
+            for (int i = 0, len = candidates.size(); i < len; ++i) {
+                tracker.updatePlayer((ServerPlayer) players[i]);
+            }
+        } finally {
+            candidates.clear();
+        }
+    }
+
+    private void updatePlayer(PlayerTrackerAreaMap.PlayerArea area) {
+        ServerPlayer player = area.getParameter();
+        ReferenceList<ChunkMap.TrackedEntity> changed = this.cells.getChanged();
+        this.cells.forEachInArea(area.getLastChunkX(), area.getLastChunkZ(), area.getLastDistance(), 0, 0, -1, tracker -> {
+            // changed trackers already checked every player whose area covers their chunk
+            if (!changed.contains(tracker)) {
+                tracker.updatePlayer(player);
+            }
+        });
+
+        if (area.getPreviousChunkX() != SingleUserAreaMap.NOT_SET) {
+            this.cells.forEachInArea(area.getPreviousChunkX(), area.getPreviousChunkZ(), area.getPreviousDistance(),
+                area.getLastChunkX(), area.getLastChunkZ(), area.getLastDistance(), tracker -> {
+                    if (!changed.contains(tracker)) {
+                        tracker.updatePlayer(player);
+                    }
+                });
+        }
+    }
+
+    public void clear() {
+        this.areaMap.clear();
+        this.cells.clear();
+    }
+}
@@ -0,0 +1,145 @@
+package net.metalmc.metal.tracker;
+
+import ca.spottedleaf.moonrise.common.list.ReferenceList;
+import ca.spottedleaf.moonrise.common.misc.SingleUserAreaMap;
+import ca.spottedleaf.moonrise.common.util.CoordinateUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+import java.util.List;
+import net.minecraft.server.level.ChunkTrackingView;
+import net.minecraft.server.level.ServerPlayer;
+
+/**
+ * Chunk keyed map of the players whose chunk tracking view covers a chunk.
+ * Entity trackers only need to consider the players registered at the entity's chunk
+ * (plus the players already tracking it), instead of every player in the world.
+ * <p>
+ * The radius of each player is one chunk larger than its tracking view, so the candidate
+ * set is always a superset of the players that {@code ChunkMap#isChunkTracked} accepts.
+ * Every update also records the players that were added or moved since the previous one,
+ * with the area they covered before, so their pairs can be re-checked like {@code ChunkMap#move} does.
+ * Main thread only.
+ */
+public final class PlayerTrackerAreaMap {
+    private final Long2ObjectOpenHashMap<ReferenceList<ServerPlayer>> playersByChunk = new Long2ObjectOpenHashMap<>();
+    private final Reference2ReferenceOpenHashMap<ServerPlayer, PlayerArea> areas = new Reference2ReferenceOpenHashMap<>();
+    private final ReferenceList<PlayerArea> moved = new ReferenceList<>();
+    private int updateCounter;
+
+    /**
+     * Returns the players that may track an entity in the given chunk, or {@code null} if there are none.
+     */
+    public ReferenceList<ServerPlayer> getPlayersNear(int chunkX, int chunkZ) {
+        return this.playersByChunk.get(CoordinateUtils.getChunkKey(chunkX, chunkZ));
+    }
+
+    public int getTrackedPlayerCount() {
+        return this.areas.size();
+    }
+
+    /**
+     * Returns the areas of the players that were added or changed position in the last {@link #update}.
+     */
+    public ReferenceList<PlayerArea> getMovedAreas() {
+        return this.moved;
+    }
+
+    /**
+     * Moves every given player's area to its current tracking view and drops the areas of players
+     * not present in the list anymore.
+     */
+    public void update(List<ServerPlayer> players) {
+        int counter = ++this.updateCounter;
+        this.moved.clear();
+
+        for (int i = 0, len = players.size(); i < len; ++i) {
+            ServerPlayer player = players.get(i);
+            if (!(player.getChunkTrackingView() instanceof ChunkTrackingView.Positioned view)) {
+                continue;
+            }
+
+            int radius = view.viewDistance() + 1;
+            PlayerArea area = this.areas.get(player);
+            if (area == null) {
+                area = new PlayerArea(player);
+                this.areas.put(player, area);
+                area.add(view.center().x, view.center().z, radius);
+                this.moved.add(area);
+            } else {
+                area.previousChunkX = area.getLastChunkX();
+                area.previousChunkZ = area.getLastChunkZ();
+                area.previousDistance = area.getLastDistance();
+                if (view.center().x != area.previousChunkX || view.center().z != area.previousChunkZ || radius != area.previousDistance) {
+                    area.update(view.center().x, view.center().z, radius);
+                    this.moved.add(area);
+                } else if (player.getX() != area.x || player.getY() != area.y || player.getZ() != area.z) {
+                    this.moved.add(area);
+                }
+            }
+            area.x = player.getX();
+            area.y = player.getY();
+            area.z = player.getZ();
+            area.lastUpdate = counter;
+        }
+
+        for (ObjectIterator<PlayerArea> iterator = this.areas.values().iterator(); iterator.hasNext();) {
+            PlayerArea area = iterator.next();
+            if (area.lastUpdate != counter) {
+                area.remove();
+                iterator.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        for (PlayerArea area : this.areas.values()) {
+            area.remove();
+        }
+        this.areas.clear();
+        this.moved.clear();
+    }
+
+    public final class PlayerArea extends SingleUserAreaMap<ServerPlayer> {
+        private int lastUpdate;
+        private double x;
+        private double y;
+        private double z;
+        private int previousChunkX = NOT_SET;
+        private int previousChunkZ = NOT_SET;
+        private int previousDistance = NOT_SET;
+
+        private PlayerArea(ServerPlayer player) {
+            super(player);
+        }
+
+        /**
+         * Center chunk x of the area before the last update, {@link #NOT_SET} for a new area.
+         */
+        public int getPreviousChunkX() {
+            return this.previousChunkX;
+        }
+
+        public int getPreviousChunkZ() {
+            return this.previousChunkZ;
+        }
+
+        public int getPreviousDistance() {
+            return this.previousDistance;
+        }
+
+        @Override
+        protected void addCallback(ServerPlayer player, int chunkX, int chunkZ) {
+            PlayerTrackerAreaMap.this.playersByChunk.computeIfAbsent(CoordinateUtils.getChunkKey(chunkX, chunkZ), key -> new ReferenceList<>()).add(player);
+        }
+
+        @Override
+        protected void removeCallback(ServerPlayer player, int chunkX, int chunkZ) {
+            long key = CoordinateUtils.getChunkKey(chunkX, chunkZ);
+            ReferenceList<ServerPlayer> players = PlayerTrackerAreaMap.this.playersByChunk.get(key);
+            if (players != null && players.remove(player) && players.size() == 0) {
+                PlayerTrackerAreaMap.this.playersByChunk.remove(key);
+            }
+        }
+    }
+}
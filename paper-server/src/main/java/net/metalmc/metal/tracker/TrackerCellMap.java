@@ -0,0 +1,171 @@
+package net.metalmc.metal.tracker;
+
+import ca.spottedleaf.moonrise.common.list.ReferenceList;
+import ca.spottedleaf.moonrise.common.util.CoordinateUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Chunk keyed map of the entity trackers an {@link AreaMapEntityTracker} follows.
+ * <p>
+ * Every tick the tracker reports the current section of each tracked value between
+ * {@link #startUpdate()} and {@link #finishUpdate()}. Values that are new or whose section
+ * changed are collected as changed, like the section check of the vanilla tracker tick,
+ * and values that were not reported anymore are dropped. Main thread only.
+ */
+public final class TrackerCellMap<T> {
+    private final Long2ObjectOpenHashMap<ReferenceList<T>> valuesByChunk = new Long2ObjectOpenHashMap<>();
+    private final Reference2ObjectOpenHashMap<T, Cell> cells = new Reference2ObjectOpenHashMap<>();
+    private final ReferenceList<T> changed = new ReferenceList<>();
+    private int updateCounter;
+
+    public int size() {
+        return this.cells.size();
+    }
+
+    /**
+     * Returns the values whose section is in the given chunk, or {@code null} if there are none.
+     */
+    public ReferenceList<T> get(int chunkX, int chunkZ) {
+        return this.valuesByChunk.get(CoordinateUtils.getChunkKey(chunkX, chunkZ));
+    }
+
+    /**
+     * Returns the values that were added or changed section in the last update, plus the ones marked through {@link #markChanged}.
+     */
+    public ReferenceList<T> getChanged() {
+        return this.changed;
+    }
+
+    public void markChanged(T value) {
+        this.changed.add(value);
+    }
+
+    public void startUpdate() {
+        ++this.updateCounter;
+        this.changed.clear();
+    }
+
+    /**
+     * Reports the current section of a value, returns whether it is new or changed section.
+     */
+    public boolean update(T value, int sectionX, int sectionY, int sectionZ) {
+        Cell cell = this.cells.get(value);
+        boolean changed = false;
+        if (cell == null) {
+            cell = new Cell(sectionX, sectionY, sectionZ);
+            this.cells.put(value, cell);
+            this.add(value, sectionX, sectionZ);
+            changed = true;
+        } else if (cell.sectionX != sectionX || cell.sectionY != sectionY || cell.sectionZ != sectionZ) {
+            if (cell.sectionX != sectionX || cell.sectionZ != sectionZ) {
+                this.remove(value, cell.sectionX, cell.sectionZ);
+                this.add(value, sectionX, sectionZ);
+            }
+            cell.sectionX = sectionX;
+            cell.sectionY = sectionY;
+            cell.sectionZ = sectionZ;
+            changed = true;
+        }
+
+        cell.lastUpdate = this.updateCounter;
+        if (changed) {
+            this.changed.add(value);
+        }
+        return changed;
+    }
+
+    /**
+     * Drops every value that was not reported since {@link #startUpdate()}.
+     */
+    public void finishUpdate() {
+        int counter = this.updateCounter;
+        for (ObjectIterator<Reference2ObjectMap.Entry<T, Cell>> iterator = this.cells.reference2ObjectEntrySet().fastIterator(); iterator.hasNext();) {
+            Reference2ObjectMap.Entry<T, Cell> entry = iterator.next();
+            Cell cell = entry.getValue();
+            if (cell.lastUpdate != counter) {
+                this.remove(entry.getKey(), cell.sectionX, cell.sectionZ);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Runs the action for every value in the square of chunks around the center, skipping
+     * the chunks inside the excluded square. A negative excluded radius excludes nothing.
+     */
+    public void forEachInArea(int centerX, int centerZ, int radius, int excludeX, int excludeZ, int excludeRadius, Consumer<T> action) {
+        int side = (radius << 1) + 1;
+        if ((long) side * side <= this.valuesByChunk.size()) {
+            for (int chunkX = centerX - radius; chunkX <= centerX + radius; ++chunkX) {
+                for (int chunkZ = centerZ - radius; chunkZ <= centerZ + radius; ++chunkZ) {
+                    if (!isExcluded(chunkX, chunkZ, excludeX, excludeZ, excludeRadius)) {
+                        forEach(this.get(chunkX, chunkZ), action);
+                    }
+                }
+            }
+            return;
+        }
+
+        // fewer occupied chunks than chunks in the area, walk those instead
+        for (ObjectIterator<Long2ObjectMap.Entry<ReferenceList<T>>> iterator = this.valuesByChunk.long2ObjectEntrySet().fastIterator(); iterator.hasNext();) {
+            Long2ObjectMap.Entry<ReferenceList<T>> entry = iterator.next();
+            int chunkX = CoordinateUtils.getChunkX(entry.getLongKey());
+            int chunkZ = CoordinateUtils.getChunkZ(entry.getLongKey());
+            if (Math.abs(chunkX - centerX) <= radius && Math.abs(chunkZ - centerZ) <= radius
+                && !isExcluded(chunkX, chunkZ, excludeX, excludeZ, excludeRadius)) {
+                forEach(entry.getValue(), action);
+            }
+        }
+    }
+
+    private static boolean isExcluded(int chunkX, int chunkZ, int excludeX, int excludeZ, int excludeRadius) {
+        return excludeRadius >= 0 && Math.abs(chunkX - excludeX) <= excludeRadius && Math.abs(chunkZ - excludeZ) <= excludeRadius;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void forEach(ReferenceList<T> values, Consumer<T> action) {
+        if (values == null) {
+            return;
+        }
+        Object[] raw = values.getRawData();
+        for (int i = 0, len = values.size(); i < len; ++i) {
+            action.accept((T) raw[i]);
+        }
+    }
+
+    private void add(T value, int chunkX, int chunkZ) {
+        this.valuesByChunk.computeIfAbsent(CoordinateUtils.getChunkKey(chunkX, chunkZ), key -> new ReferenceList<>()).add(value);
+    }
+
+    private void remove(T value, int chunkX, int chunkZ) {
+        long key = CoordinateUtils.getChunkKey(chunkX, chunkZ);
+        ReferenceList<T> values = this.valuesByChunk.get(key);
+        if (values != null && values.remove(value) && values.size() == 0) {
+            this.valuesByChunk.remove(key);
+        }
+    }
+
+    public void clear() {
+        this.valuesByChunk.clear();
+        this.cells.clear();
+        this.changed.clear();
+    }
+
+    private static final class Cell {
+        private int sectionX;
+        private int sectionY;
+        private int sectionZ;
+        private int lastUpdate;
+
+        private Cell(int sectionX, int sectionY, int sectionZ) {
+            this.sectionX = sectionX;
+            this.sectionY = sectionY;
+            this.sectionZ = sectionZ;
+        }
+    }
+}
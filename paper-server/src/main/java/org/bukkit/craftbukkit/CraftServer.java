@@ -991,6 +991,8 @@ public final class CraftServer implements Server {
         }
 
         org.spigotmc.SpigotConfig.init((File) this.console.options.valueOf("spigot-settings")); // Spigot
+        net.metalmc.metal.MetalConfig.init((File) this.console.options.valueOf("metal-settings")); // MetalMC
+        net.metalmc.metal.network.StatusCache.invalidate(); // MetalMC - status cache
         this.console.paperConfigurations.reloadConfigs(this.console);
         for (ServerLevel world : this.console.getAllLevels()) {
             // world.serverLevelData.setDifficulty(config.difficulty); // Paper - per level difficulty
@@ -1022,6 +1024,7 @@ public final class CraftServer implements Server {
         // Paper end
         this.reloadData();
         org.spigotmc.SpigotConfig.registerCommands(); // Spigot
+        net.metalmc.metal.MetalConfig.registerCommands(); // MetalMC
         io.papermc.paper.command.PaperCommands.registerCommands(this.console); // Paper
         this.spark.registerCommandBeforePlugins(this); // Paper - spark
         this.overrideAllCommandBlockCommands = this.commandsConfiguration.getStringList("command-block-overrides").contains("*");
@@ -2319,6 +2322,7 @@ public final class CraftServer implements Server {
     @Override
     public void motd(final net.kyori.adventure.text.Component motd) {
         this.console.motd(motd);
+        net.metalmc.metal.network.StatusCache.invalidate(); // MetalMC - status cache
     }
 
     @Override
@@ -2329,6 +2333,7 @@ public final class CraftServer implements Server {
     @Override
     public void setMotd(String motd) {
         this.console.setMotd(motd);
+        net.metalmc.metal.network.StatusCache.invalidate(); // MetalMC - status cache
     }
 
     @Override
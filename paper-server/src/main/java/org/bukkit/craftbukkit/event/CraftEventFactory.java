@@ -818,6 +818,13 @@ public class CraftEventFactory {
             return !checkSetResult || result;
         }
 
+        // MetalMC start - skip events without listeners
+        if (!net.metalmc.metal.event.EventGate.BLOCK_SPREAD.hasListeners() && !world.getBlockState(target).hasBlockEntity()) {
+            boolean result = world.setBlock(target, state, flags);
+            return !checkSetResult || result;
+        }
+        // MetalMC end - skip events without listeners
+
         CraftBlockState snapshot = CraftBlockStates.getBlockState(world, target);
         snapshot.setData(state);
 
@@ -1382,8 +1389,17 @@ public class CraftEventFactory {
     public static boolean callBinaryRedstoneChange(LevelAccessor level, BlockPos pos, boolean willBePowered) {
         int oldCurrent = willBePowered ? Redstone.SIGNAL_MIN : Redstone.SIGNAL_MAX;
         int newCurrent = willBePowered ? Redstone.SIGNAL_MAX : Redstone.SIGNAL_MIN;
-        return callRedstoneChange(level, pos, oldCurrent, newCurrent).getNewCurrent() == newCurrent;
+        return callRedstoneChangeCurrent(level, pos, oldCurrent, newCurrent) == newCurrent; // MetalMC - skip events without listeners
+    }
+
+    // MetalMC start - skip events without listeners
+    public static int callRedstoneChangeCurrent(LevelAccessor level, BlockPos pos, int oldCurrent, int newCurrent) {
+        if (!net.metalmc.metal.event.EventGate.BLOCK_REDSTONE.hasListeners()) {
+            return newCurrent;
+        }
+        return callRedstoneChange(level, pos, oldCurrent, newCurrent).getNewCurrent();
     }
+    // MetalMC end - skip events without listeners
 
     public static BlockRedstoneEvent callRedstoneChange(LevelAccessor level, BlockPos pos, int oldCurrent, int newCurrent) {
         BlockRedstoneEvent event = new BlockRedstoneEvent(CraftBlock.at(level, pos), oldCurrent, newCurrent); // todo normalize newCurrent change outcome
@@ -1787,6 +1803,13 @@ public class CraftEventFactory {
     }
 
     public static boolean handleBlockFormEvent(Level world, BlockPos pos, net.minecraft.world.level.block.state.BlockState state, int flags, @Nullable Entity entity, boolean checkSetResult) {
+        // MetalMC start - skip events without listeners
+        if (!net.metalmc.metal.event.EventGate.BLOCK_FORM.hasListeners() && !world.getBlockState(pos).hasBlockEntity()) {
+            boolean result = world.setBlock(pos, state, flags);
+            return !checkSetResult || result;
+        }
+        // MetalMC end - skip events without listeners
+
         CraftBlockState snapshot = CraftBlockStates.getBlockState(world, pos);
         snapshot.setData(state);
 
@@ -0,0 +1,56 @@
+package net.metalmc.metal.block;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.EmptyBlockGetter;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.phys.shapes.CollisionContext;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class BlockStateTableTest {
+
+    @Test
+    public void testIdsMatchRegistry() {
+        for (BlockState state : Block.BLOCK_STATE_REGISTRY) {
+            assertEquals(Block.BLOCK_STATE_REGISTRY.getId(state), BlockStateTable.id(state));
+        }
+    }
+
+    @Test
+    public void testConstantCollisionMatchesState() {
+        for (BlockState state : Block.BLOCK_STATE_REGISTRY) {
+            if (BlockStateTable.hasConstantCollision(state)) {
+                assertSame(state.getCollisionShape(EmptyBlockGetter.INSTANCE, BlockPos.ZERO, CollisionContext.empty()), BlockStateTable.collisionShape(state));
+            }
+        }
+    }
+
+    @Test
+    public void testFullBlock() {
+        int flags = BlockStateTable.flags(Blocks.STONE.defaultBlockState());
+        assertTrue((flags & BlockStateTable.FULL_BLOCK_COLLISION) != 0);
+        assertTrue((flags & BlockStateTable.SINGLE_BOX_COLLISION) != 0);
+        assertFalse(BlockStateTable.isSpecialColliding(Blocks.STONE.defaultBlockState()));
+    }
+
+    @Test
+    public void testAir() {
+        int flags = BlockStateTable.flags(Blocks.AIR.defaultBlockState());
+        assertTrue((flags & BlockStateTable.EMPTY_COLLISION) != 0);
+        assertFalse(BlockStateTable.isSpecialColliding(Blocks.AIR.defaultBlockState()));
+    }
+
+    @Test
+    public void testContextDependentShapesAreNotCached() {
+        assertFalse(BlockStateTable.hasConstantCollision(Blocks.SCAFFOLDING.defaultBlockState()));
+        assertFalse(BlockStateTable.hasConstantCollision(Blocks.POWDER_SNOW.defaultBlockState()));
+    }
+}
@@ -0,0 +1,87 @@
+package net.metalmc.metal.block;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import net.minecraft.util.RandomSource;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@Normal
+public class RandomTickIndexTest {
+
+    private static final int SECTION_SIZE = 16 * 16 * 16;
+    private static final int TRIALS = 100_000;
+
+    /**
+     * The roll loop of {@link RandomTickIndex#tickChunk} for a section whose index does not change.
+     *
+     * @return how many of the {@code randomTickSpeed} rolls hit one of {@code ticking} positions
+     */
+    private static int hits(RandomSource random, int ticking, int randomTickSpeed) {
+        int hits = 0;
+        for (long roll = RandomTickIndex.rollsUntilHit(random, ticking); roll < randomTickSpeed; roll += 1L + RandomTickIndex.rollsUntilHit(random, ticking)) {
+            ++hits;
+        }
+        return hits;
+    }
+
+    @Test
+    public void testHitsMatchVanillaRate() {
+        // vanilla rolls randomTickSpeed positions out of the section, each hitting with n / 4096
+        final RandomSource random = RandomSource.create(11L);
+        for (final int ticking : new int[] {1, 16, 300, 2048, 4095, 4096}) {
+            for (final int speed : new int[] {1, 3, 40}) {
+                final double chance = (double) ticking / SECTION_SIZE;
+                long total = 0L;
+                int none = 0;
+                for (int trial = 0; trial < TRIALS; ++trial) {
+                    final int hits = hits(random, ticking, speed);
+                    total += hits;
+                    if (hits == 0) {
+                        ++none;
+                    }
+                }
+
+                final String what = ticking + " ticking positions at speed " + speed;
+                final double mean = speed * chance;
+                assertEquals(mean, (double) total / TRIALS, 5.0 * Math.sqrt(mean * (1.0 - chance) / TRIALS) + 1.0E-6, "hits per tick, " + what);
+                final double missed = Math.pow(1.0 - chance, speed);
+                assertEquals(missed, (double) none / TRIALS, 5.0 * Math.sqrt(missed * (1.0 - missed) / TRIALS) + 1.0E-6, "ticks without a hit, " + what);
+            }
+        }
+    }
+
+    @Test
+    public void testAddAndRemoveKeepPositionsUnique() {
+        final Random random = new Random(4L);
+        final RandomTickIndex index = new RandomTickIndex();
+        final Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 20000; ++i) {
+            final int x = random.nextInt(16);
+            final int y = random.nextInt(16);
+            final int z = random.nextInt(16);
+            if (random.nextBoolean()) {
+                index.add(x, y, z);
+                expected.add((y << 8) | (z << 4) | x);
+            } else {
+                index.remove(x, y, z);
+                expected.remove((y << 8) | (z << 4) | x);
+            }
+            assertEquals(expected.size(), index.size());
+        }
+
+        // a copy does not share its arrays with the original
+        final RandomTickIndex copy = index.copy();
+        assertEquals(expected.size(), copy.size());
+        for (final int packed : expected) {
+            copy.remove(packed & 15, packed >>> 8, (packed >>> 4) & 15);
+        }
+        assertEquals(0, copy.size());
+        assertEquals(expected.size(), index.size());
+        assertSame(RandomTickIndex.UNBUILT, RandomTickIndex.UNBUILT.copy());
+    }
+}
@@ -0,0 +1,155 @@
+package net.metalmc.metal.collision;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Random;
+import net.minecraft.core.Direction;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.Interaction;
+import net.minecraft.world.entity.animal.HappyGhast;
+import net.minecraft.world.entity.boss.enderdragon.EnderDragon;
+import net.minecraft.world.entity.boss.enderdragon.EnderDragonPart;
+import net.minecraft.world.entity.decoration.ArmorStand;
+import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.entity.monster.Ghast;
+import net.minecraft.world.entity.monster.Shulker;
+import net.minecraft.world.entity.monster.Zombie;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.entity.projectile.Arrow;
+import net.minecraft.world.entity.vehicle.Boat;
+import net.minecraft.world.entity.vehicle.ChestBoat;
+import net.minecraft.world.entity.vehicle.ChestRaft;
+import net.minecraft.world.entity.vehicle.Minecart;
+import net.minecraft.world.entity.vehicle.MinecartChest;
+import net.minecraft.world.entity.vehicle.MinecartCommandBlock;
+import net.minecraft.world.entity.vehicle.MinecartFurnace;
+import net.minecraft.world.entity.vehicle.MinecartHopper;
+import net.minecraft.world.entity.vehicle.MinecartSpawner;
+import net.minecraft.world.entity.vehicle.MinecartTNT;
+import net.minecraft.world.entity.vehicle.Raft;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import net.minecraft.world.phys.shapes.Shapes;
+import net.minecraft.world.phys.shapes.VoxelShape;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class CollisionEngineTest {
+
+    private static final List<Class<? extends Entity>> HARD_COLLIDING = List.of(
+        Boat.class, ChestBoat.class, Raft.class, ChestRaft.class,
+        Minecart.class, MinecartChest.class, MinecartCommandBlock.class, MinecartFurnace.class,
+        MinecartHopper.class, MinecartSpawner.class, MinecartTNT.class,
+        Shulker.class, HappyGhast.class
+    );
+    private static final List<Class<? extends Entity>> NOT_HARD_COLLIDING = List.of(
+        Player.class, Zombie.class, Ghast.class, ArmorStand.class, Interaction.class,
+        ItemEntity.class, Arrow.class, EnderDragon.class, EnderDragonPart.class
+    );
+
+    // entities a plugin may add, only hard colliding when they override canBeCollidedWith
+    private abstract static class PluginEntity extends Zombie {
+        private PluginEntity() {
+            super(null);
+        }
+    }
+
+    private abstract static class PluginVehicle extends Zombie {
+        private PluginVehicle() {
+            super(null);
+        }
+
+        @Override
+        public boolean canBeCollidedWith(Entity entity) {
+            return true;
+        }
+    }
+
+    private abstract static class PluginVehicleVariant extends PluginVehicle {
+    }
+
+    /**
+     * Whether vanilla overrides {@code Entity#canBeCollidedWith} anywhere between the class and {@link Entity}.
+     */
+    private static boolean overridesCanBeCollidedWith(Class<?> type) {
+        for (Class<?> clazz = type; clazz != Entity.class; clazz = clazz.getSuperclass()) {
+            for (final Method method : clazz.getDeclaredMethods()) {
+                if (method.getName().equals("canBeCollidedWith") && method.getParameterCount() == 1) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testHardCollidingMatchesVanilla() {
+        for (final Class<? extends Entity> type : HARD_COLLIDING) {
+            assertTrue(overridesCanBeCollidedWith(type), type.getName());
+            assertTrue(CollisionEngine.isHardColliding(type), type.getName());
+        }
+        for (final Class<? extends Entity> type : NOT_HARD_COLLIDING) {
+            assertEquals(overridesCanBeCollidedWith(type), CollisionEngine.isHardColliding(type), type.getName());
+        }
+    }
+
+    @Test
+    public void testPluginEntityClasses() {
+        assertFalse(CollisionEngine.isHardColliding(PluginEntity.class));
+        assertTrue(CollisionEngine.isHardColliding(PluginVehicle.class));
+        assertTrue(CollisionEngine.isHardColliding(PluginVehicleVariant.class));
+    }
+
+    @Test
+    public void testBoxCollisionsMatchVanilla() {
+        final Random random = new Random(7L);
+        // boat, minecart, shulker and happy ghast bounding boxes
+        final double[][] sizes = {{1.375, 0.5625}, {0.98, 0.7}, {1.0, 1.0}, {4.0, 4.0}};
+        final double[] target = new double[6];
+        final double[] source = new double[6];
+        for (int iteration = 0; iteration < 100000; ++iteration) {
+            final double[] size = sizes[random.nextInt(sizes.length)];
+            final AABB targetBox = AABB.ofSize(randomPosition(random, 0.0), size[0], size[1], size[0]);
+            final AABB sourceBox = AABB.ofSize(randomPosition(random, 2.0), 0.6, 1.8, 0.6);
+            copy(targetBox, target);
+            copy(sourceBox, source);
+
+            final VoxelShape shape = Shapes.create(targetBox);
+            double move = (random.nextDouble() - 0.5) * 8.0;
+            if (Math.abs(move) < CollisionEngine.COLLISION_EPSILON) {
+                move = 1.0;
+            }
+            final String message = targetBox + " " + sourceBox + " " + move;
+            assertEquals(shape.collide(Direction.Axis.X, sourceBox, move), CollisionEngine.collideX(target, 0, source, move), message);
+            assertEquals(shape.collide(Direction.Axis.Y, sourceBox, move), CollisionEngine.collideY(target, 0, source, move), message);
+            assertEquals(shape.collide(Direction.Axis.Z, sourceBox, move), CollisionEngine.collideZ(target, 0, source, move), message);
+        }
+    }
+
+    /**
+     * A position around the origin, half the time on the 1/16 grid.
+     */
+    private static Vec3 randomPosition(Random random, double spread) {
+        final double x = (random.nextDouble() - 0.5) * 2.0 * spread;
+        final double y = (random.nextDouble() - 0.5) * 2.0 * spread;
+        final double z = (random.nextDouble() - 0.5) * 2.0 * spread;
+        if (random.nextBoolean()) {
+            return new Vec3(Math.round(x * 16.0) / 16.0, Math.round(y * 16.0) / 16.0, Math.round(z * 16.0) / 16.0);
+        }
+        return new Vec3(x, y, z);
+    }
+
+    private static void copy(AABB box, double[] into) {
+        into[0] = box.minX;
+        into[1] = box.minY;
+        into[2] = box.minZ;
+        into[3] = box.maxX;
+        into[4] = box.maxY;
+        into[5] = box.maxZ;
+    }
+}
@@ -0,0 +1,91 @@
+package net.metalmc.metal.entity;
+
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class EntityTickBudgetTest {
+
+    /**
+     * Runs {@code ticks} ticks of a category with {@code entities} entities that each cost {@code entityNanos}.
+     *
+     * @return how often each entity ticked
+     */
+    private static int[] run(EntityTickBudget.Category category, int entities, long entityNanos, int maxDeferredTicks, int ticks, int expectedPerTick) {
+        final int[] ticked = new int[entities];
+        final int[] waiting = new int[entities];
+        for (int tick = 0; tick < ticks; ++tick) {
+            category.startTick(maxDeferredTicks);
+            int admitted = 0;
+            for (int entity = 0; entity < entities; ++entity) {
+                if (category.admit()) {
+                    category.record(entityNanos);
+                    ++ticked[entity];
+                    ++admitted;
+                    waiting[entity] = 0;
+                } else {
+                    ++waiting[entity];
+                    assertTrue(waiting[entity] <= maxDeferredTicks, "entity " + entity + " deferred " + waiting[entity] + " ticks in a row");
+                }
+            }
+            // the first tick only measures
+            if (tick > 0 && expectedPerTick >= 0) {
+                assertEquals(expectedPerTick, admitted, "entities ticked in tick " + tick);
+            }
+        }
+        return ticked;
+    }
+
+    @Test
+    public void testWithoutBudgetEverythingTicks() {
+        final EntityTickBudget.Category category = new EntityTickBudget.Category("test", -1.0);
+        for (final int count : run(category, 50, 1_000_000L, 2, 20, 50)) {
+            assertEquals(20, count);
+        }
+        assertEquals(0L, category.getTotalDeferred());
+    }
+
+    @Test
+    public void testWindowRotatesRoundRobin() {
+        // 1ms for entities of 0.1ms fits 10 out of 40, each entity ticks every 4th tick
+        final EntityTickBudget.Category category = new EntityTickBudget.Category("test", 1.0);
+        final int[] ticked = run(category, 40, 100_000L, 5, 41, 10);
+        for (int entity = 0; entity < ticked.length; ++entity) {
+            // the measuring tick plus 10 rounds
+            assertEquals(11, ticked[entity], "ticks of entity " + entity);
+        }
+        // counted when the next tick starts, so up to the second to last tick
+        assertEquals(39L * 30L, category.getTotalDeferred());
+    }
+
+    @Test
+    public void testMaxDeferredTicksBoundsTheWindow() {
+        // 1ms entities with a 1ms budget would fit one, but none may wait more than 3 ticks
+        final EntityTickBudget.Category category = new EntityTickBudget.Category("test", 1.0);
+        final int[] ticked = run(category, 20, 1_000_000L, 3, 41, 5);
+        for (int entity = 0; entity < ticked.length; ++entity) {
+            assertEquals(11, ticked[entity], "ticks of entity " + entity);
+        }
+    }
+
+    @Test
+    public void testNewEntitiesTickUntilTheyJoinTheRotation() {
+        final EntityTickBudget.Category category = new EntityTickBudget.Category("test", 1.0);
+        run(category, 40, 100_000L, 5, 3, 10);
+
+        // 5 more entities than last tick, all of them tick on top of the window
+        category.startTick(5);
+        int admitted = 0;
+        for (int entity = 0; entity < 45; ++entity) {
+            if (category.admit()) {
+                ++admitted;
+            } else {
+                assertTrue(entity < 40, "new entity " + entity + " deferred");
+            }
+        }
+        assertEquals(15, admitted);
+    }
+}
@@ -0,0 +1,46 @@
+package net.metalmc.metal.entity;
+
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.entity.monster.Enemy;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.entity.projectile.Arrow;
+import net.minecraft.world.entity.vehicle.AbstractMinecart;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Normal
+public class EntityTypeGroupTest {
+
+    @Test
+    public void testBaseEntityMatchesEveryGroup() {
+        assertEquals(EntityTypeGroup.ALL_MASK, EntityTypeGroup.maskFor(Entity.class));
+    }
+
+    @Test
+    public void testInterfacesMatchEveryGroup() {
+        assertEquals(EntityTypeGroup.ALL_MASK, EntityTypeGroup.maskFor(Enemy.class));
+    }
+
+    @Test
+    public void testLivingIncludesPlayers() {
+        assertEquals(EntityTypeGroup.PLAYER.bit() | EntityTypeGroup.LIVING.bit(), EntityTypeGroup.maskFor(LivingEntity.class));
+    }
+
+    @Test
+    public void testSubclassesUseOwningGroup() {
+        assertEquals(EntityTypeGroup.PLAYER.bit(), EntityTypeGroup.maskFor(Player.class));
+        assertEquals(EntityTypeGroup.LIVING.bit(), EntityTypeGroup.maskFor(Mob.class));
+        assertEquals(EntityTypeGroup.ITEM.bit(), EntityTypeGroup.maskFor(ItemEntity.class));
+        assertEquals(EntityTypeGroup.PROJECTILE.bit(), EntityTypeGroup.maskFor(Arrow.class));
+    }
+
+    @Test
+    public void testUngroupedClassesOnlyMatchOther() {
+        assertEquals(EntityTypeGroup.OTHER.bit(), EntityTypeGroup.maskFor(AbstractMinecart.class));
+    }
+}
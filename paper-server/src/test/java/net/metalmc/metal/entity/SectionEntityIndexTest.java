@@ -0,0 +1,158 @@
+package net.metalmc.metal.entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import net.minecraft.util.AbortableIterationConsumer;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.entity.monster.Zombie;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.entity.vehicle.Boat;
+import net.minecraft.world.entity.vehicle.Minecart;
+import net.minecraft.world.level.entity.EntityTypeTest;
+import net.minecraft.world.phys.AABB;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class SectionEntityIndexTest {
+
+    private static final AABB EVERYWHERE = new AABB(-1000.0, -1000.0, -1000.0, 1000.0, 1000.0, 1000.0);
+    private static final List<Class<? extends Entity>> TYPES = List.of(
+        Zombie.class, Player.class, ItemEntity.class, Boat.class, Minecart.class
+    );
+
+    private static <E extends Entity> E entity(Class<E> type, double x) {
+        final E entity = Mockito.mock(type);
+        Mockito.when(entity.getBoundingBox()).thenReturn(new AABB(x, 0.0, 0.0, x + 1.0, 1.0, 1.0));
+        return entity;
+    }
+
+    private static List<Entity> all(SectionEntityIndex<Entity> index, AABB bounds) {
+        final List<Entity> found = new ArrayList<>();
+        index.getEntities(bounds, entity -> {
+            found.add(entity);
+            return AbortableIterationConsumer.Continuation.CONTINUE;
+        });
+        return found;
+    }
+
+    private static <U extends Entity> List<U> typed(SectionEntityIndex<Entity> index, Class<U> type) {
+        final List<U> found = new ArrayList<>();
+        index.getEntities(EntityTypeTest.forClass(type), EVERYWHERE, entity -> {
+            found.add(entity);
+            return AbortableIterationConsumer.Continuation.CONTINUE;
+        });
+        return found;
+    }
+
+    private static List<Entity> hardColliding(SectionEntityIndex<Entity> index) {
+        final List<Entity> found = new ArrayList<>();
+        index.getHardCollidingEntities(EVERYWHERE, entity -> {
+            found.add(entity);
+            return AbortableIterationConsumer.Continuation.CONTINUE;
+        });
+        return found;
+    }
+
+    @Test
+    public void testAddKeepsInsertionOrder() {
+        final SectionEntityIndex<Entity> index = new SectionEntityIndex<>(true);
+        final Zombie zombie = entity(Zombie.class, 0.0);
+        final ItemEntity item = entity(ItemEntity.class, 1.0);
+        final Boat boat = entity(Boat.class, 2.0);
+        final Zombie zombie2 = entity(Zombie.class, 3.0);
+        index.add(zombie);
+        index.add(item);
+        index.add(boat);
+        index.add(zombie2);
+
+        assertEquals(4, index.size());
+        assertEquals(2, index.size(EntityTypeGroup.LIVING));
+        assertEquals(List.of(zombie, item, boat, zombie2), all(index, EVERYWHERE));
+        assertEquals(List.of(zombie, zombie2), typed(index, Zombie.class));
+        assertEquals(List.of(boat), hardColliding(index));
+
+        final List<Entity> copied = new ArrayList<>();
+        index.copyInto(copied);
+        assertEquals(List.of(zombie, item, boat, zombie2), copied);
+    }
+
+    @Test
+    public void testBoundsAreRespected() {
+        final SectionEntityIndex<Entity> index = new SectionEntityIndex<>(false);
+        final Zombie near = entity(Zombie.class, 0.0);
+        final Zombie far = entity(Zombie.class, 10.0);
+        index.add(near);
+        index.add(far);
+
+        assertEquals(List.of(near), all(index, new AABB(0.5, 0.5, 0.5, 1.5, 1.5, 1.5)));
+    }
+
+    @Test
+    public void testRemove() {
+        final SectionEntityIndex<Entity> index = new SectionEntityIndex<>(true);
+        final Zombie zombie = entity(Zombie.class, 0.0);
+        final Boat boat = entity(Boat.class, 1.0);
+        final ItemEntity item = entity(ItemEntity.class, 2.0);
+        index.add(zombie);
+        index.add(boat);
+        index.add(item);
+
+        assertTrue(index.remove(boat));
+        assertFalse(index.remove(boat));
+        assertEquals(2, index.size());
+        assertEquals(List.of(zombie, item), all(index, EVERYWHERE));
+        assertEquals(List.of(), hardColliding(index));
+
+        // re-adding moves the entity to the end, like the vanilla storage
+        index.add(boat);
+        assertEquals(List.of(zombie, item, boat), all(index, EVERYWHERE));
+        assertEquals(List.of(boat), hardColliding(index));
+        assertEquals(List.of(item), typed(index, ItemEntity.class));
+    }
+
+    @Test
+    public void testHardCollidingUntracked() {
+        final SectionEntityIndex<Entity> index = new SectionEntityIndex<>(false);
+        index.add(entity(Boat.class, 0.0));
+
+        assertFalse(index.tracksHardColliding());
+        assertEquals(List.of(), hardColliding(index));
+    }
+
+    @Test
+    public void testMatchesListThroughCompaction() {
+        final Random random = new Random(26L);
+        final List<Entity> pool = new ArrayList<>();
+        for (int i = 0; i < 64; ++i) {
+            pool.add(entity(TYPES.get(random.nextInt(TYPES.size())), i));
+        }
+
+        final SectionEntityIndex<Entity> index = new SectionEntityIndex<>(true);
+        final List<Entity> expected = new ArrayList<>();
+        for (int iteration = 0; iteration < 5000; ++iteration) {
+            final Entity entity = pool.get(random.nextInt(pool.size()));
+            // bias towards removal so the index regularly drains and compacts
+            if (expected.contains(entity) || random.nextInt(3) == 0) {
+                assertEquals(expected.remove(entity), index.remove(entity));
+            } else {
+                expected.add(entity);
+                index.add(entity);
+            }
+
+            assertEquals(expected.size(), index.size());
+            assertEquals(expected, all(index, EVERYWHERE));
+            assertEquals(expected.stream().filter(LivingEntity.class::isInstance).toList(), typed(index, LivingEntity.class));
+            assertEquals(expected.stream().filter(ItemEntity.class::isInstance).toList(), typed(index, ItemEntity.class));
+            assertEquals(expected.stream().filter(e -> e instanceof Boat || e instanceof Minecart).toList(), hardColliding(index));
+        }
+    }
+}
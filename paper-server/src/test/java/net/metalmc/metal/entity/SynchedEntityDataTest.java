@@ -0,0 +1,150 @@
+package net.metalmc.metal.entity;
+
+import java.util.List;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.network.syncher.EntityDataAccessor;
+import net.minecraft.network.syncher.EntityDataSerializers;
+import net.minecraft.network.syncher.SyncedDataHolder;
+import net.minecraft.network.syncher.SynchedEntityData;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The dirty id bitset of {@link SynchedEntityData} against a full scan of the items.
+ */
+@Normal
+public class SynchedEntityDataTest {
+
+    private static final class Holder implements SyncedDataHolder {
+        private static final EntityDataAccessor<Integer> NUMBER = SynchedEntityData.defineId(Holder.class, EntityDataSerializers.INT);
+        private static final EntityDataAccessor<ItemStack> ITEM = SynchedEntityData.defineId(Holder.class, EntityDataSerializers.ITEM_STACK);
+        private static final EntityDataAccessor<Boolean> FLAG = SynchedEntityData.defineId(Holder.class, EntityDataSerializers.BOOLEAN);
+
+        @Override
+        public void onSyncedDataUpdated(EntityDataAccessor<?> accessor) {
+        }
+
+        @Override
+        public void onSyncedDataUpdated(List<SynchedEntityData.DataValue<?>> values) {
+        }
+    }
+
+    private boolean dirtyBitset;
+
+    @BeforeEach
+    public void enableBitset() {
+        this.dirtyBitset = MetalConfig.entityDataDirtyBitset;
+        MetalConfig.entityDataDirtyBitset = true;
+    }
+
+    @AfterEach
+    public void restoreBitset() {
+        MetalConfig.entityDataDirtyBitset = this.dirtyBitset;
+    }
+
+    private static SynchedEntityData data() {
+        return new SynchedEntityData.Builder(new Holder())
+            .define(Holder.NUMBER, 0)
+            .define(Holder.ITEM, ItemStack.EMPTY)
+            .define(Holder.FLAG, false)
+            .build();
+    }
+
+    private static ItemStack item(List<SynchedEntityData.DataValue<?>> values, int index) {
+        final SynchedEntityData.DataValue<?> value = values.get(index);
+        assertEquals(Holder.ITEM.id(), value.id());
+        return (ItemStack) value.value();
+    }
+
+    @Test
+    public void testDirtyIdsArePackedInIdOrder() {
+        final SynchedEntityData data = data();
+        data.set(Holder.FLAG, true);
+        data.set(Holder.NUMBER, 5);
+        data.set(Holder.NUMBER, 6);
+
+        final List<SynchedEntityData.DataValue<?>> values = data.packDirty();
+        assertEquals(2, values.size());
+        assertEquals(Holder.NUMBER.id(), values.get(0).id());
+        assertEquals(6, values.get(0).value());
+        assertEquals(Holder.FLAG.id(), values.get(1).id());
+        assertNull(data.packDirty());
+
+        data.set(Holder.FLAG, false);
+        final List<SynchedEntityData.DataValue<?>> again = data.packDirty();
+        assertEquals(1, again.size());
+        assertEquals(false, again.get(0).value());
+    }
+
+    @Test
+    public void testSameContentsAsFullScan() {
+        final SynchedEntityData bitset = data();
+        final SynchedEntityData scan = data();
+        for (final SynchedEntityData data : List.of(bitset, scan)) {
+            data.set(Holder.NUMBER, 3);
+            data.set(Holder.FLAG, true);
+        }
+
+        final List<SynchedEntityData.DataValue<?>> packed = bitset.packDirty();
+        MetalConfig.entityDataDirtyBitset = false;
+        final List<SynchedEntityData.DataValue<?>> scanned = scan.packDirty();
+        assertEquals(scanned, packed);
+    }
+
+    @Test
+    public void testItemMutatedInPlaceIsPacked() {
+        final SynchedEntityData data = data();
+        final ItemStack stack = new ItemStack(Items.DIAMOND, 1);
+        data.set(Holder.ITEM, stack);
+        final ItemStack first = item(data.packDirty(), 0);
+        assertEquals(1, first.getCount());
+
+        // same instance, so set would not mark it, CraftBukkit marks it by hand
+        stack.setCount(5);
+        data.markDirty(Holder.ITEM);
+        final ItemStack second = item(data.packDirty(), 0);
+        assertEquals(5, second.getCount());
+        // packed values are copies that later changes do not reach
+        assertNotSame(stack, second);
+        assertEquals(1, first.getCount());
+    }
+
+    @Test
+    public void testUnmarkedItemMutationReachesPairingData() {
+        final SynchedEntityData data = data();
+        final ItemStack stack = new ItemStack(Items.DIAMOND, 1);
+        data.set(Holder.ITEM, stack);
+        data.packDirty();
+        assertEquals(1, item(data.packNonDefaultValues(), 0).getCount());
+
+        // like vanilla's getNonDefaultValues, pairing sees the stack as it is now
+        stack.setCount(7);
+        assertEquals(7, item(data.packNonDefaultValues(), 0).getCount());
+        assertTrue(ItemStack.matches(stack, item(data.getNonDefaultValues(), 0)));
+    }
+
+    @Test
+    public void testUnchangedValuesAreReused() {
+        final SynchedEntityData data = data();
+        data.set(Holder.NUMBER, 4);
+        final SynchedEntityData.DataValue<?> packed = data.packDirty().get(0);
+        assertSame(packed, data.packNonDefaultValues().get(0));
+        assertSame(packed, data.packNonDefaultValues().get(0));
+
+        data.set(Holder.NUMBER, 8);
+        final SynchedEntityData.DataValue<?> changed = data.packNonDefaultValues().get(0);
+        assertNotSame(packed, changed);
+        assertEquals(8, changed.value());
+        assertSame(changed, data.packDirty().get(0));
+    }
+}
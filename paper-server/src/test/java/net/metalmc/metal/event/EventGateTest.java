@@ -0,0 +1,76 @@
+package net.metalmc.metal.event;
+
+import net.metalmc.metal.MetalConfig;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockPhysicsEvent;
+import org.bukkit.event.block.EntityBlockFormEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class EventGateTest {
+
+    private boolean skipUnlistenedEvents;
+
+    @BeforeEach
+    public void enableGate() {
+        this.skipUnlistenedEvents = MetalConfig.skipUnlistenedEvents;
+        MetalConfig.skipUnlistenedEvents = true;
+    }
+
+    @AfterEach
+    public void restoreGate() {
+        MetalConfig.skipUnlistenedEvents = this.skipUnlistenedEvents;
+    }
+
+    private static RegisteredListener listener() {
+        return new RegisteredListener(new Listener() {}, (listener, event) -> {}, EventPriority.NORMAL, Mockito.mock(Plugin.class), false);
+    }
+
+    @Test
+    public void testListenersAreSeenImmediately() {
+        assertFalse(EventGate.BLOCK_PHYSICS.hasListeners());
+
+        final RegisteredListener listener = listener();
+        BlockPhysicsEvent.getHandlerList().register(listener);
+        try {
+            assertTrue(EventGate.BLOCK_PHYSICS.hasListeners());
+            // the other gates have their own handler lists
+            assertFalse(EventGate.BLOCK_REDSTONE.hasListeners());
+        } finally {
+            BlockPhysicsEvent.getHandlerList().unregister(listener);
+        }
+        assertFalse(EventGate.BLOCK_PHYSICS.hasListeners());
+    }
+
+    @Test
+    public void testSubclassSharingTheHandlerList() {
+        assertSame(BlockFormEvent.getHandlerList(), EntityBlockFormEvent.getHandlerList());
+
+        final RegisteredListener listener = listener();
+        EntityBlockFormEvent.getHandlerList().register(listener);
+        try {
+            assertTrue(EventGate.BLOCK_FORM.hasListeners());
+        } finally {
+            EntityBlockFormEvent.getHandlerList().unregister(listener);
+        }
+    }
+
+    @Test
+    public void testDisabledGateAlwaysCalls() {
+        MetalConfig.skipUnlistenedEvents = false;
+        assertTrue(EventGate.BLOCK_PHYSICS.hasListeners());
+        assertTrue(EventGate.BLOCK_SPREAD.hasListeners());
+    }
+}
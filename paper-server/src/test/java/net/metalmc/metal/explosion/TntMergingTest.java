@@ -0,0 +1,88 @@
+package net.metalmc.metal.explosion;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.minecraft.world.entity.item.PrimedTnt;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.phys.Vec3;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class TntMergingTest {
+
+    private static final int TICK = 100;
+
+    private static PrimedTnt tnt(double x, double y, double z, Vec3 motion, int fuse) {
+        final PrimedTnt tnt = Mockito.mock(PrimedTnt.class);
+        Mockito.when(tnt.getX()).thenReturn(x);
+        Mockito.when(tnt.getY()).thenReturn(y);
+        Mockito.when(tnt.getZ()).thenReturn(z);
+        Mockito.when(tnt.getDeltaMovement()).thenReturn(motion);
+        Mockito.when(tnt.getFuse()).thenReturn(fuse);
+        Mockito.when(tnt.getBlockState()).thenReturn(Blocks.TNT.defaultBlockState());
+        tnt.explosionPower = 4.0F;
+        tnt.mergeCount = 1;
+        tnt.mergeTick = Integer.MIN_VALUE;
+        return tnt;
+    }
+
+    private static PrimedTnt tnt() {
+        return tnt(0.5, 64.0, 0.5, new Vec3(0.0, -0.04, 0.0), 40);
+    }
+
+    @Test
+    public void testIdenticalTntMerges() {
+        assertTrue(TntMerging.canMerge(tnt(), tnt(), TICK));
+    }
+
+    @Test
+    public void testDifferentTntDoesNotMerge() {
+        final PrimedTnt tnt = tnt();
+        assertFalse(TntMerging.canMerge(tnt, tnt(0.5, 64.0, 0.50001, new Vec3(0.0, -0.04, 0.0), 40), TICK));
+        assertFalse(TntMerging.canMerge(tnt, tnt(0.5, 64.0, 0.5, new Vec3(0.01, -0.04, 0.0), 40), TICK));
+        assertFalse(TntMerging.canMerge(tnt, tnt(0.5, 64.0, 0.5, new Vec3(0.0, -0.04, 0.0), 39), TICK));
+
+        final PrimedTnt stronger = tnt();
+        stronger.explosionPower = 8.0F;
+        assertFalse(TntMerging.canMerge(tnt, stronger, TICK));
+
+        final PrimedTnt incendiary = tnt();
+        incendiary.isIncendiary = true;
+        assertFalse(TntMerging.canMerge(tnt, incendiary, TICK));
+
+        final PrimedTnt riding = tnt();
+        Mockito.when(riding.isPassenger()).thenReturn(true);
+        assertFalse(TntMerging.canMerge(tnt, riding, TICK));
+
+        // already ticked, or absorbed by another one, this tick
+        final PrimedTnt ticked = tnt();
+        ticked.mergeTick = TICK;
+        assertFalse(TntMerging.canMerge(tnt, ticked, TICK));
+        final PrimedTnt removed = tnt();
+        Mockito.when(removed.isRemoved()).thenReturn(true);
+        assertFalse(TntMerging.canMerge(tnt, removed, TICK));
+    }
+
+    @Test
+    public void testEveryMergedEntityExplodesOnItsOwn() {
+        // each call is a complete explosion: prime event, block pass, yield, explode event and entity pass
+        final PrimedTnt tnt = tnt();
+        final List<Integer> explosions = new ArrayList<>();
+        Mockito.doAnswer(invocation -> explosions.add(explosions.size())).when(tnt).explode();
+
+        tnt.mergeCount = 5;
+        TntMerging.explode(tnt);
+        assertEquals(List.of(0, 1, 2, 3, 4), explosions);
+
+        explosions.clear();
+        tnt.mergeCount = 1;
+        TntMerging.explode(tnt);
+        assertEquals(1, explosions.size());
+    }
+}
@@ -0,0 +1,89 @@
+package net.metalmc.metal.fluid;
+
+import net.metalmc.metal.block.SectionStamps;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.material.Fluids;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Normal
+public class FluidSlopeCacheTest {
+
+    private static final int MIN_SECTION = -4;
+    private static final BlockPos POS = new BlockPos(8, 64, 8);
+
+    /**
+     * The sections of chunk 0, 0, the only loaded one.
+     */
+    private final LevelChunkSection[] sections = new LevelChunkSection[24];
+    private final FluidSlopeCache cache;
+
+    public FluidSlopeCacheTest() {
+        for (int i = 0; i < this.sections.length; ++i) {
+            this.sections[i] = Mockito.mock(LevelChunkSection.class);
+        }
+        final LevelChunk chunk = Mockito.mock(LevelChunk.class);
+        Mockito.when(chunk.getSections()).thenReturn(this.sections);
+        final Level level = Mockito.mock(Level.class);
+        Mockito.when(level.getMinSectionY()).thenReturn(MIN_SECTION);
+        Mockito.when(level.getMaxSectionY()).thenReturn(MIN_SECTION + this.sections.length - 1);
+        Mockito.when(level.getChunkIfLoaded(0, 0)).thenReturn(chunk);
+        this.cache = new FluidSlopeCache(new SectionStamps(level));
+    }
+
+    /**
+     * What {@code LevelChunkSection#setBlockState} does to the stamp.
+     */
+    private void changeBlockIn(int sectionY) {
+        this.sections[sectionY - MIN_SECTION].blockStamp = 0L;
+    }
+
+    @Test
+    public void testStoredDistanceIsFound() {
+        final long stamp = this.cache.areaStamp(POS, 4);
+        this.cache.put(Fluids.WATER, POS, Direction.NORTH, stamp, 3);
+
+        assertEquals(3, this.cache.get(Fluids.WATER, POS, Direction.NORTH, this.cache.areaStamp(POS, 4)));
+        assertEquals(-1, this.cache.get(Fluids.WATER, POS, Direction.SOUTH, stamp));
+        assertEquals(-1, this.cache.get(Fluids.LAVA, POS, Direction.NORTH, stamp));
+        assertEquals(-1, this.cache.get(Fluids.WATER, POS.east(), Direction.NORTH, stamp));
+        assertEquals(1L, this.cache.getHits());
+        assertEquals(3L, this.cache.getMisses());
+    }
+
+    @Test
+    public void testChangeInTheAreaInvalidates() {
+        // the area spans y 63 and 64, sections 3 and 4
+        this.cache.put(Fluids.WATER, POS, Direction.NORTH, this.cache.areaStamp(POS, 4), 2);
+        this.changeBlockIn(3);
+        assertEquals(-1, this.cache.get(Fluids.WATER, POS, Direction.NORTH, this.cache.areaStamp(POS, 4)));
+
+        this.cache.put(Fluids.WATER, POS, Direction.NORTH, this.cache.areaStamp(POS, 4), 1);
+        this.changeBlockIn(4);
+        assertEquals(-1, this.cache.get(Fluids.WATER, POS, Direction.NORTH, this.cache.areaStamp(POS, 4)));
+    }
+
+    @Test
+    public void testChangeOutsideTheAreaKeepsTheDistance() {
+        this.cache.put(Fluids.WATER, POS, Direction.NORTH, this.cache.areaStamp(POS, 4), 2);
+        this.changeBlockIn(5);
+        this.changeBlockIn(2);
+        // the other sections get their new stamps when someone looks at them
+        this.cache.areaStamp(POS.above(16), 4);
+        assertEquals(2, this.cache.get(Fluids.WATER, POS, Direction.NORTH, this.cache.areaStamp(POS, 4)));
+    }
+
+    @Test
+    public void testUncacheableAreas() {
+        // reaches into the unloaded chunk -1, 0
+        assertEquals(SectionStamps.UNCACHEABLE, this.cache.areaStamp(new BlockPos(2, 64, 8), 4));
+        assertEquals(SectionStamps.UNCACHEABLE, this.cache.areaStamp(POS, 9));
+    }
+}
@@ -0,0 +1,159 @@
+package net.metalmc.metal.network;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.world.level.ChunkPos;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class ChunkSendControllerTest {
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(50L);
+    private static final int CHUNK_BYTES = 20000;
+
+    /**
+     * A client behind a link of fixed bandwidth and latency, processing one chunk at a time.
+     * The server only sees acknowledgements at the start of a tick, like the main thread does.
+     */
+    private static final class SimulatedClient {
+        double bytesPerSecond;
+        final long latency;
+        final long processingPerChunk;
+        final ArrayDeque<long[]> acks = new ArrayDeque<>(); // ack arrival time
+        final ArrayDeque<long[]> inTransit = new ArrayDeque<>(); // arrival time, bytes
+        long linkFreeAt;
+        long clientFreeAt;
+
+        SimulatedClient(double bytesPerSecond, long latencyMillis, long processingMicrosPerChunk) {
+            this.bytesPerSecond = bytesPerSecond;
+            this.latency = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+            this.processingPerChunk = TimeUnit.MICROSECONDS.toNanos(processingMicrosPerChunk);
+        }
+
+        void send(long now, int chunks, long bytes) {
+            this.linkFreeAt = Math.max(this.linkFreeAt, now) + (long) (bytes * 1.0E9 / this.bytesPerSecond);
+            final long arrival = this.linkFreeAt + this.latency;
+            this.clientFreeAt = Math.max(this.clientFreeAt, arrival) + chunks * this.processingPerChunk;
+            this.acks.add(new long[] {this.clientFreeAt + this.latency});
+            this.inTransit.add(new long[] {arrival, bytes});
+        }
+
+        /**
+         * @return bytes sent but not yet arrived at the client
+         */
+        long queuedBytes(long now) {
+            while (!this.inTransit.isEmpty() && this.inTransit.peek()[0] <= now) {
+                this.inTransit.poll();
+            }
+            return this.inTransit.stream().mapToLong(entry -> entry[1]).sum();
+        }
+    }
+
+    private static long simulate(SimulatedClient client, ChunkSendController controller, int fromSeconds, int toSeconds, long warmup, long[] maxQueuedBytes) {
+        long sentAfterWarmup = 0L;
+        for (long now = TimeUnit.SECONDS.toNanos(fromSeconds); now < TimeUnit.SECONDS.toNanos(toSeconds); now += TICK) {
+            while (!client.acks.isEmpty() && client.acks.peek()[0] <= now) {
+                client.acks.poll();
+                controller.onBatchAcknowledged(now);
+            }
+            final int chunks = controller.chunksToSend();
+            if (chunks > 0) {
+                controller.onBatchSent(now, chunks, (long) chunks * CHUNK_BYTES);
+                client.send(now, chunks, (long) chunks * CHUNK_BYTES);
+                if (now >= warmup) {
+                    sentAfterWarmup += chunks;
+                }
+            }
+            if (now >= warmup) {
+                maxQueuedBytes[0] = Math.max(maxQueuedBytes[0], client.queuedBytes(now));
+            }
+        }
+        return sentAfterWarmup;
+    }
+
+    private static ChunkSendController controller() {
+        return new ChunkSendController(256L * 1024L, 8192L * 1024L, 64);
+    }
+
+    @Test
+    public void testSlowClientDoesNotBuildBacklog() {
+        final double bandwidth = 200_000.0;
+        final SimulatedClient client = new SimulatedClient(bandwidth, 80L, 500L);
+        final long[] maxQueued = new long[1];
+        final long sent = simulate(client, controller(), 0, 60, TimeUnit.SECONDS.toNanos(10L), maxQueued);
+
+        final double chunksPerSecond = sent / 50.0;
+        final double linkChunksPerSecond = bandwidth / CHUNK_BYTES;
+        assertTrue(chunksPerSecond >= linkChunksPerSecond * 0.7, "slow client only got " + chunksPerSecond + " chunks/s");
+        assertTrue(chunksPerSecond <= linkChunksPerSecond * 1.05, "sent " + chunksPerSecond + " chunks/s over a link of " + linkChunksPerSecond);
+        // no more than a second of data waiting in front of the client
+        assertTrue(maxQueued[0] <= bandwidth, "up to " + maxQueued[0] + " bytes queued");
+    }
+
+    @Test
+    public void testFastClientIsNotHeldBack() {
+        final SimulatedClient client = new SimulatedClient(50_000_000.0, 5L, 100L);
+        final long[] maxQueued = new long[1];
+        final long sent = simulate(client, controller(), 0, 30, TimeUnit.SECONDS.toNanos(5L), maxQueued);
+
+        // vanilla starts at 9 chunks a tick and a single batch in flight
+        final double chunksPerTick = sent / (25.0 * 20.0);
+        assertTrue(chunksPerTick >= 32.0, "fast client only got " + chunksPerTick + " chunks/tick");
+    }
+
+    @Test
+    public void testAdaptsWhenClientSlowsDown() {
+        final ChunkSendController controller = controller();
+        final SimulatedClient client = new SimulatedClient(10_000_000.0, 10L, 100L);
+        final long[] maxQueued = new long[1];
+        simulate(client, controller, 0, 10, 0L, maxQueued);
+        final long fastBudget = controller.budget();
+
+        // the link gets a hundred times slower
+        client.bytesPerSecond = 100_000.0;
+        simulate(client, controller, 10, 60, 0L, maxQueued);
+        assertTrue(controller.budget() < fastBudget / 10, "budget " + controller.budget() + " after slowing down from " + fastBudget);
+    }
+
+    @Test
+    public void testPrioritisesMovementDirection() {
+        final ChunkSendController controller = controller();
+        // running along +x at 0.3 blocks a tick
+        for (int tick = 0; tick <= 40; ++tick) {
+            controller.updatePosition(8.0 + tick * 0.3, 8.0);
+        }
+        final LongSet pending = new LongOpenHashSet();
+        for (int x = -4; x <= 4; ++x) {
+            for (int z = -4; z <= 4; ++z) {
+                pending.add(ChunkPos.asLong(x, z));
+            }
+        }
+        final long[] order = controller.prioritise(pending, new ChunkPos(0, 0));
+        assertEquals(pending.size(), order.length);
+        assertEquals(ChunkPos.asLong(0, 0), order[0]);
+        assertTrue(indexOf(order, ChunkPos.asLong(2, 0)) < indexOf(order, ChunkPos.asLong(-2, 0)));
+        assertTrue(indexOf(order, ChunkPos.asLong(3, 0)) < indexOf(order, ChunkPos.asLong(0, 3)));
+
+        // standing still keeps the plain distance order
+        final ChunkSendController still = controller();
+        still.updatePosition(8.0, 8.0);
+        still.updatePosition(8.0, 8.0);
+        final long[] stillOrder = still.prioritise(pending, new ChunkPos(0, 0));
+        assertEquals(ChunkPos.asLong(0, 0), stillOrder[0]);
+        assertTrue(indexOf(stillOrder, ChunkPos.asLong(1, 1)) < indexOf(stillOrder, ChunkPos.asLong(3, 0)));
+    }
+
+    private static int indexOf(long[] array, long value) {
+        for (int i = 0; i < array.length; ++i) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,60 @@
+package net.metalmc.metal.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.DecoderException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Normal
+public class CompressionPoolTest {
+    private static final int THRESHOLD = 256;
+    private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+
+    @Test
+    public void testFramesRoundTrip() throws Exception {
+        final Random random = new Random(7L);
+        for (final int length : new int[] {1, THRESHOLD - 1, THRESHOLD, 20000, 300000}) {
+            final byte[] bytes = new byte[length];
+            // half random, half repeated to get something compressible
+            for (int i = 0; i < length; ++i) {
+                bytes[i] = i < length / 2 ? (byte) random.nextInt() : (byte) (i % 7);
+            }
+
+            final ByteBuf frame = CompressionPool.encodeFrame(this.alloc, this.alloc.directBuffer().writeBytes(bytes), THRESHOLD);
+            final List<Object> out = new ArrayList<>();
+            try {
+                CompressionPool.decode(this.alloc, frame, out, THRESHOLD, true);
+            } finally {
+                frame.release();
+            }
+
+            assertEquals(1, out.size());
+            final ByteBuf packet = (ByteBuf) out.getFirst();
+            final byte[] decoded = new byte[packet.readableBytes()];
+            packet.readBytes(decoded);
+            packet.release();
+            assertEquals(length, decoded.length);
+            for (int i = 0; i < length; ++i) {
+                assertEquals(bytes[i], decoded[i], "byte " + i + " of " + length);
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsCompressedBelowThreshold() {
+        final ByteBuf frame = CompressionPool.encodeFrame(this.alloc, this.alloc.directBuffer().writeZero(THRESHOLD * 2), THRESHOLD);
+        try {
+            assertThrows(DecoderException.class, () -> CompressionPool.decode(this.alloc, frame, new ArrayList<>(), THRESHOLD * 4, true));
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package net.metalmc.metal.network;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.concurrent.TimeUnit;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.network.Connection;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.common.ClientboundKeepAlivePacket;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class FlushConsolidatorTest {
+
+    private int maxDelayMillis;
+    private int sensitiveMaxDelayMillis;
+    private EmbeddedChannel channel;
+    private FlushConsolidator consolidator;
+
+    @BeforeEach
+    public void setUp() {
+        this.maxDelayMillis = MetalConfig.flushConsolidationMaxDelayMillis;
+        this.sensitiveMaxDelayMillis = MetalConfig.flushConsolidationSensitiveMaxDelayMillis;
+        MetalConfig.flushConsolidationMaxDelayMillis = 10;
+        MetalConfig.flushConsolidationSensitiveMaxDelayMillis = 0;
+
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        final Connection connection = Mockito.mock(Connection.class);
+        connection.channel = channel;
+        Mockito.doAnswer(invocation -> channel.flush()).when(connection).flushChannel();
+        this.channel = channel;
+        this.consolidator = new FlushConsolidator(connection);
+        channel.pipeline().addFirst(FlushConsolidator.HANDLER_NAME, this.consolidator);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MetalConfig.flushConsolidationMaxDelayMillis = this.maxDelayMillis;
+        MetalConfig.flushConsolidationSensitiveMaxDelayMillis = this.sensitiveMaxDelayMillis;
+        this.channel.finishAndReleaseAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Packet<?> packet() {
+        return Mockito.mock(Packet.class);
+    }
+
+    @Test
+    public void testLatencySensitivePacketsFlushRightAway() {
+        final Packet<?> keepAlive = new ClientboundKeepAlivePacket(1L);
+        // even while flushing is suspended during a tick
+        assertTrue(this.consolidator.shouldFlush(keepAlive, false));
+        assertTrue(this.consolidator.shouldFlush(SharedPacket.cached(keepAlive), false));
+    }
+
+    @Test
+    public void testTickFlushIsLeftToTheTick() {
+        assertFalse(this.consolidator.shouldFlush(packet(), false));
+        this.channel.advanceTimeBy(1L, TimeUnit.SECONDS);
+        this.channel.runScheduledPendingTasks();
+        this.channel.write(Unpooled.wrappedBuffer(new byte[4]));
+        assertNull(this.channel.readOutbound());
+    }
+
+    @Test
+    public void testFlushesBetweenTicksAreMerged() {
+        for (int i = 0; i < 3; ++i) {
+            assertFalse(this.consolidator.shouldFlush(packet(), true));
+            this.channel.write(Unpooled.wrappedBuffer(new byte[4]));
+        }
+        assertNull(this.channel.readOutbound());
+
+        this.channel.advanceTimeBy(10L, TimeUnit.MILLISECONDS);
+        this.channel.runScheduledPendingTasks();
+        for (int i = 0; i < 3; ++i) {
+            assertNotNull(this.channel.<Object>readOutbound());
+        }
+        assertEquals(1L, this.consolidator.getFlushes());
+        assertEquals(12L, this.consolidator.getFlushedBytes());
+
+        // the next one schedules a new flush
+        assertFalse(this.consolidator.shouldFlush(packet(), true));
+        this.channel.write(Unpooled.wrappedBuffer(new byte[2]));
+        this.channel.advanceTimeBy(10L, TimeUnit.MILLISECONDS);
+        this.channel.runScheduledPendingTasks();
+        assertEquals(2L, this.consolidator.getFlushes());
+    }
+
+    @Test
+    public void testWithoutDelayEveryPacketFlushes() {
+        MetalConfig.flushConsolidationMaxDelayMillis = 0;
+        assertTrue(this.consolidator.shouldFlush(packet(), true));
+        assertFalse(this.consolidator.shouldFlush(packet(), false));
+    }
+
+    @Test
+    public void testEmptyFlushesAreNotCounted() {
+        this.channel.flush();
+        assertEquals(0L, this.consolidator.getFlushes());
+        this.channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[7]));
+        this.channel.flush();
+        assertEquals(1L, this.consolidator.getFlushes());
+        assertEquals(7.0, this.consolidator.getBytesPerFlush());
+    }
+}
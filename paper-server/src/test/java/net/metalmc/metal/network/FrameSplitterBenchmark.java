@@ -0,0 +1,116 @@
+package net.metalmc.metal.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.Locale;
+import java.util.Random;
+import net.minecraft.network.VarInt;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Throughput of splitting a receive buffer into frames, {@link FrameSplitter} against vanilla's copying split.
+ * <p>
+ * The buffer holds a mix of small frames and the odd chunk sized one, split and passed on as a
+ * packet decoder would see them. Only runs from the benchmark task, e.g.
+ * {@code ./gradlew :paper-server:benchmark --tests '*FrameSplitterBenchmark'},
+ * with {@code -Dmetalmc.benchmark.frames} and {@code -Dmetalmc.benchmark.rounds} to change the load.
+ */
+@EnabledIfSystemProperty(named = "metalmc.benchmark", matches = "true")
+public class FrameSplitterBenchmark {
+    private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+
+    @Test
+    public void benchmarkSplitting() {
+        final int frames = Integer.getInteger("metalmc.benchmark.frames", 100000);
+        final int rounds = Integer.getInteger("metalmc.benchmark.rounds", 20);
+
+        final Random random = new Random(1L);
+        final ByteBuf stream = this.alloc.directBuffer();
+        try {
+            for (int i = 0; i < frames; ++i) {
+                final int length = i % 100 == 0 ? 20000 + random.nextInt(20000) : 8 + random.nextInt(120);
+                VarInt.write(stream, length);
+                stream.writeZero(length);
+            }
+
+            // warm up the JIT before measuring
+            for (int round = 0; round < 5; ++round) {
+                assertEquals(frames, this.splitInPlace(stream.duplicate()));
+                assertEquals(frames, this.splitCopying(stream.duplicate()));
+            }
+
+            long inPlace = 0L;
+            long copying = 0L;
+            for (int round = 0; round < rounds; ++round) {
+                long start = System.nanoTime();
+                this.splitInPlace(stream.duplicate());
+                inPlace += System.nanoTime() - start;
+                start = System.nanoTime();
+                this.splitCopying(stream.duplicate());
+                copying += System.nanoTime() - start;
+            }
+            this.report("in place", inPlace, (long) frames * rounds, (long) stream.readableBytes() * rounds);
+            this.report("copying", copying, (long) frames * rounds, (long) stream.readableBytes() * rounds);
+        } finally {
+            stream.release();
+        }
+    }
+
+    private int splitInPlace(ByteBuf in) {
+        int count = 0;
+        ByteBuf frame;
+        while ((frame = FrameSplitter.split(in, FrameSplitter.MAX_FRAME_LENGTH)) != null) {
+            // what the packet decoder does with the frame before releasing it
+            frame.getByte(frame.readerIndex());
+            frame.release();
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Vanilla's {@code Varint21FrameDecoder}, reading the prefix through a helper buffer and copying every frame.
+     */
+    private int splitCopying(ByteBuf in) {
+        final ByteBuf helper = this.alloc.directBuffer(FrameSplitter.MAX_PREFIX_BYTES);
+        try {
+            int count = 0;
+            while (true) {
+                in.markReaderIndex();
+                helper.clear();
+                boolean complete = false;
+                for (int i = 0; i < FrameSplitter.MAX_PREFIX_BYTES && !complete && in.isReadable(); ++i) {
+                    final byte b = in.readByte();
+                    helper.writeByte(b);
+                    complete = (b & 0x80) == 0;
+                }
+                if (!complete) {
+                    return count;
+                }
+                final int length = VarInt.read(helper);
+                if (in.readableBytes() < length) {
+                    in.resetReaderIndex();
+                    return count;
+                }
+                final ByteBuf frame = in.readBytes(length);
+                frame.getByte(frame.readerIndex());
+                frame.release();
+                ++count;
+            }
+        } finally {
+            helper.release();
+        }
+    }
+
+    private void report(String name, long nanos, long frames, long bytes) {
+        System.out.printf(Locale.ROOT, "%-9s %.1f ns/frame, %.0f MB/s%n",
+            name,
+            (double) nanos / frames,
+            bytes / (nanos / 1.0E9) / (1024.0 * 1024.0)
+        );
+    }
+}
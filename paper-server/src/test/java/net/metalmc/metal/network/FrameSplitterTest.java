@@ -0,0 +1,239 @@
+package net.metalmc.metal.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nullable;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.network.PacketDecoder;
+import net.minecraft.network.VarInt;
+import net.minecraft.network.Varint21FrameDecoder;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.status.StatusProtocols;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class FrameSplitterTest {
+    private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+
+    @Test
+    public void testSplitsFramesReceivedInPieces() {
+        final Random random = new Random(11L);
+        final List<byte[]> frames = new ArrayList<>();
+        final ByteBuf stream = this.alloc.directBuffer();
+        try {
+            for (int i = 0; i < 500; ++i) {
+                final byte[] frame = new byte[i % 50 == 0 ? random.nextInt(200000) : random.nextInt(300)];
+                random.nextBytes(frame);
+                frames.add(frame);
+                VarInt.write(stream, frame.length);
+                stream.writeBytes(frame);
+            }
+
+            final boolean[] rejected = new boolean[1];
+            final List<byte[]> received = this.feed(stream, random, 1500, FrameSplitter.MAX_FRAME_LENGTH, rejected);
+            assertFalse(rejected[0]);
+            assertEquals(frames.size(), received.size());
+            for (int i = 0; i < frames.size(); ++i) {
+                assertArrayEquals(frames.get(i), received.get(i), "frame " + i);
+            }
+        } finally {
+            stream.release();
+        }
+    }
+
+    @Test
+    public void testRejectsOversizedFrameFromPrefix() {
+        final ByteBuf in = this.alloc.directBuffer();
+        try {
+            // only the prefix has arrived, the body is never buffered
+            VarInt.write(in, 4097);
+            assertThrows(CorruptedFrameException.class, () -> FrameSplitter.split(in, 4096));
+            assertThrows(CorruptedFrameException.class, () -> FrameSplitter.checkLength(in, 4096));
+
+            in.clear();
+            VarInt.write(in, 4096);
+            assertNull(FrameSplitter.split(in, 4096));
+            FrameSplitter.checkLength(in, 4096);
+            assertEquals(0, in.readerIndex());
+        } finally {
+            in.release();
+        }
+    }
+
+    @Test
+    public void testRejectsWidePrefix() {
+        final ByteBuf in = this.alloc.directBuffer();
+        try {
+            in.writeByte(0x80).writeByte(0x80);
+            assertNull(FrameSplitter.split(in, FrameSplitter.MAX_FRAME_LENGTH));
+            in.writeByte(0x80);
+            assertThrows(CorruptedFrameException.class, () -> FrameSplitter.split(in, FrameSplitter.MAX_FRAME_LENGTH));
+        } finally {
+            in.release();
+        }
+    }
+
+    /**
+     * Feeds random and randomly corrupted streams of status packets through the real frame and
+     * packet decoders, once splitting frames in place and once copying them like vanilla. Both have
+     * to decode the same packets, fail the same way and release every buffer they were handed.
+     */
+    @Test
+    public void testFuzzPipelineMatchesCopyingDecoder() {
+        final boolean zeroCopy = MetalConfig.zeroCopyFrameDecoder;
+        final int maxFrameLength = MetalConfig.maxFrameLength;
+        try {
+            final Random random = new Random(23L);
+            for (int iteration = 0; iteration < 2000; ++iteration) {
+                final byte[] stream = randomStatusStream(random);
+                final int maxLength = random.nextBoolean() ? 8 : FrameSplitter.MAX_FRAME_LENGTH;
+                final long pieces = random.nextLong();
+
+                final Decoded copying = this.decode(stream, false, maxLength, new Random(pieces));
+                final Decoded inPlace = this.decode(stream, true, maxLength, new Random(pieces));
+                assertEquals(copying.failure(), inPlace.failure(), "iteration " + iteration);
+                assertEquals(copying.packets().size(), inPlace.packets().size(), "iteration " + iteration);
+                for (int i = 0; i < copying.packets().size(); ++i) {
+                    assertArrayEquals(copying.packets().get(i), inPlace.packets().get(i), "iteration " + iteration + " packet " + i);
+                }
+            }
+        } finally {
+            MetalConfig.zeroCopyFrameDecoder = zeroCopy;
+            MetalConfig.maxFrameLength = maxFrameLength;
+        }
+    }
+
+    /**
+     * @param packets the decoded packets, encoded again
+     * @param failure the exception and its causes the pipeline failed with, {@code null} if it did not
+     */
+    private record Decoded(List<byte[]> packets, @Nullable String failure) {
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Decoded decode(byte[] stream, boolean zeroCopy, int maxLength, Random random) {
+        MetalConfig.zeroCopyFrameDecoder = zeroCopy;
+        MetalConfig.maxFrameLength = maxLength;
+        final EmbeddedChannel channel = new EmbeddedChannel(new Varint21FrameDecoder(null), new PacketDecoder<>(StatusProtocols.SERVERBOUND));
+        final List<ByteBuf> written = new ArrayList<>();
+        final List<byte[]> packets = new ArrayList<>();
+        String failure = null;
+        try {
+            for (int offset = 0; offset < stream.length; ) {
+                final int piece = Math.min(stream.length - offset, 1 + random.nextInt(64));
+                final ByteBuf buf = this.alloc.directBuffer(piece).writeBytes(stream, offset, piece);
+                written.add(buf);
+                offset += piece;
+                try {
+                    channel.writeInbound(buf);
+                } catch (RuntimeException exception) {
+                    failure = describe(exception);
+                    break;
+                }
+            }
+
+            Packet<?> packet;
+            while ((packet = channel.readInbound()) != null) {
+                final ByteBuf encoded = Unpooled.buffer();
+                StatusProtocols.SERVERBOUND.codec().encode(encoded, (Packet) packet);
+                packets.add(ByteBufUtil.getBytes(encoded));
+                encoded.release();
+            }
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+        // every frame handed on was released, nothing holds on to the received buffers
+        for (final ByteBuf buf : written) {
+            assertEquals(0, buf.refCnt());
+        }
+        return new Decoded(packets, failure);
+    }
+
+    // class names only, messages may describe the buffers that differ between the two decoders
+    private static String describe(Throwable throwable) {
+        final StringBuilder builder = new StringBuilder(throwable.getClass().getName());
+        for (Throwable cause = throwable.getCause(); cause != null; cause = cause.getCause()) {
+            builder.append(" <- ").append(cause.getClass().getName());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Random bytes, or status and ping requests with a few flipped bytes.
+     */
+    private static byte[] randomStatusStream(Random random) {
+        if (random.nextBoolean()) {
+            final byte[] bytes = new byte[random.nextInt(2048)];
+            random.nextBytes(bytes);
+            return bytes;
+        }
+
+        final ByteBuf stream = Unpooled.buffer();
+        for (int i = random.nextInt(40); i >= 0; --i) {
+            if (random.nextBoolean()) {
+                // status request, id 0 without a body
+                VarInt.write(stream, 1);
+                VarInt.write(stream, 0);
+            } else {
+                // ping request, id 1 and the time
+                VarInt.write(stream, 9);
+                VarInt.write(stream, 1);
+                stream.writeLong(random.nextLong());
+            }
+        }
+        for (int i = random.nextInt(4); i >= 0; --i) {
+            stream.setByte(random.nextInt(stream.writerIndex()), random.nextInt(256));
+        }
+        final byte[] bytes = ByteBufUtil.getBytes(stream);
+        stream.release();
+        return bytes;
+    }
+
+    /**
+     * Hands {@code stream} to the splitter in random pieces the way {@code ByteToMessageDecoder} accumulates them.
+     */
+    private List<byte[]> feed(ByteBuf stream, Random random, int maxPiece, int maxLength, boolean[] rejected) {
+        final List<byte[]> received = new ArrayList<>();
+        final ByteBuf cumulation = this.alloc.directBuffer();
+        try {
+            while (stream.isReadable()) {
+                cumulation.writeBytes(stream, Math.min(stream.readableBytes(), 1 + random.nextInt(maxPiece)));
+                ByteBuf frame;
+                try {
+                    while ((frame = FrameSplitter.split(cumulation, maxLength)) != null) {
+                        assertTrue(frame.readableBytes() <= maxLength);
+                        final byte[] bytes = new byte[frame.readableBytes()];
+                        frame.readBytes(bytes);
+                        frame.release();
+                        received.add(bytes);
+                    }
+                } catch (CorruptedFrameException exception) {
+                    rejected[0] = true;
+                    break;
+                }
+                cumulation.discardSomeReadBytes();
+            }
+            // every frame was released, nothing else holds the buffer
+            assertEquals(1, cumulation.refCnt());
+        } finally {
+            cumulation.release();
+        }
+        return received;
+    }
+}
@@ -0,0 +1,67 @@
+package net.metalmc.metal.network;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.minecraft.network.protocol.game.ClientboundPlayerInfoUpdatePacket.Action;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Normal
+public class PlayerInfoAggregatorTest {
+
+    private static final EnumSet<Action> JOIN = EnumSet.of(Action.ADD_PLAYER, Action.INITIALIZE_CHAT, Action.UPDATE_GAME_MODE, Action.UPDATE_LISTED, Action.UPDATE_LATENCY, Action.UPDATE_DISPLAY_NAME);
+
+    @Test
+    public void testPlayersWithTheSameActionsShareOnePacket() {
+        final Map<String, EnumSet<Action>> updated = new LinkedHashMap<>();
+        updated.put("a", EnumSet.of(Action.UPDATE_LATENCY));
+        updated.put("b", EnumSet.of(Action.UPDATE_LATENCY));
+        updated.put("c", EnumSet.of(Action.UPDATE_LATENCY));
+
+        final Map<EnumSet<Action>, List<String>> groups = PlayerInfoAggregator.groupByActions(updated);
+        assertEquals(Map.of(EnumSet.of(Action.UPDATE_LATENCY), List.of("a", "b", "c")), groups);
+    }
+
+    @Test
+    public void testActionsAreNotSharedBetweenPlayers() {
+        final Map<String, EnumSet<Action>> updated = new LinkedHashMap<>();
+        updated.put("joined", EnumSet.copyOf(JOIN));
+        updated.put("pinged", EnumSet.of(Action.UPDATE_LATENCY));
+        updated.put("switched", EnumSet.of(Action.UPDATE_GAME_MODE, Action.UPDATE_LATENCY));
+        updated.put("pinged2", EnumSet.of(Action.UPDATE_LATENCY));
+
+        final Map<EnumSet<Action>, List<String>> groups = PlayerInfoAggregator.groupByActions(updated);
+        assertEquals(3, groups.size());
+        assertEquals(List.of("joined"), groups.get(JOIN));
+        assertEquals(List.of("pinged", "pinged2"), groups.get(EnumSet.of(Action.UPDATE_LATENCY)));
+        assertEquals(List.of("switched"), groups.get(EnumSet.of(Action.UPDATE_GAME_MODE, Action.UPDATE_LATENCY)));
+        // first appearance order
+        assertEquals(List.of(JOIN, EnumSet.of(Action.UPDATE_LATENCY), EnumSet.of(Action.UPDATE_GAME_MODE, Action.UPDATE_LATENCY)), new ArrayList<>(groups.keySet()));
+    }
+
+    @Test
+    public void testJoinStormIsLinear() {
+        // n players join while everybody else gets a latency update: two packets per recipient, each player listed once
+        final int players = 200;
+        final Map<Integer, EnumSet<Action>> updated = new LinkedHashMap<>();
+        for (int i = 0; i < players; ++i) {
+            updated.put(i, EnumSet.copyOf(i % 2 == 0 ? JOIN : EnumSet.of(Action.UPDATE_LATENCY)));
+        }
+
+        final Map<EnumSet<Action>, List<Integer>> groups = PlayerInfoAggregator.groupByActions(updated);
+        assertEquals(2, groups.size());
+        assertEquals(players, groups.values().stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    public void testEmptyActionsAreDropped() {
+        final Map<String, EnumSet<Action>> updated = new LinkedHashMap<>();
+        updated.put("a", EnumSet.noneOf(Action.class));
+        assertEquals(Map.of(), PlayerInfoAggregator.groupByActions(updated));
+    }
+}
@@ -0,0 +1,157 @@
+package net.metalmc.metal.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.minecraft.network.ConnectionProtocol;
+import net.minecraft.network.ProtocolInfo;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.PacketFlow;
+import net.minecraft.network.protocol.common.ClientboundKeepAlivePacket;
+import net.minecraft.network.protocol.game.ClientGamePacketListener;
+import net.minecraft.network.protocol.game.GamePacketTypes;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class SharedPacketTest {
+
+    // what the codec renders, standing in for the locale PacketEncoder sets for a channel
+    private Locale locale;
+    private boolean translatable;
+
+    @SuppressWarnings("unchecked")
+    private ProtocolInfo<ClientGamePacketListener> protocol() {
+        final StreamCodec<ByteBuf, Packet<? super ClientGamePacketListener>> codec = StreamCodec.of(
+            (buf, packet) -> {
+                final Component component = this.translatable ? Component.translatable("chat.type.text") : Component.text("hello");
+                SharedPacket.onLocalizedComponent(component);
+                buf.writeCharSequence(this.translatable ? this.locale.toString() : "hello", StandardCharsets.UTF_8);
+            },
+            buf -> {
+                throw new UnsupportedOperationException();
+            }
+        );
+        final ProtocolInfo<ClientGamePacketListener> protocol = Mockito.mock(ProtocolInfo.class);
+        Mockito.doReturn(ConnectionProtocol.PLAY).when(protocol).id();
+        Mockito.doReturn(PacketFlow.CLIENTBOUND).when(protocol).flow();
+        Mockito.doReturn(codec).when(protocol).codec();
+        return protocol;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SharedPacket<ClientGamePacketListener> packet() {
+        final Packet<ClientGamePacketListener> packet = Mockito.mock(Packet.class);
+        Mockito.doReturn(GamePacketTypes.CLIENTBOUND_SYSTEM_CHAT).when(packet).type();
+        return SharedPacket.cached(packet);
+    }
+
+    private static EmbeddedChannel channel() {
+        return new EmbeddedChannel(new ChannelOutboundHandlerAdapter());
+    }
+
+    /**
+     * @return what the shared packet wrote to {@code channel}
+     */
+    private ByteBuf write(SharedPacket<ClientGamePacketListener> packet, ProtocolInfo<ClientGamePacketListener> protocol, EmbeddedChannel channel, Locale locale) {
+        this.locale = locale;
+        final ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        assertTrue(packet.write(ctx, protocol, locale, channel.newPromise()));
+        channel.flush();
+        return channel.readOutbound();
+    }
+
+    private static String string(ByteBuf buf) {
+        return buf.toString(buf.readerIndex(), buf.readableBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testPlainBodyIsSharedByAllLocales() {
+        final ProtocolInfo<ClientGamePacketListener> protocol = this.protocol();
+        final SharedPacket<ClientGamePacketListener> packet = packet();
+        final long encodes = SharedPacket.ENCODES.sum();
+
+        final ByteBuf english = this.write(packet, protocol, channel(), Locale.US);
+        final ByteBuf german = this.write(packet, protocol, channel(), Locale.GERMANY);
+        assertEquals(1L, SharedPacket.ENCODES.sum() - encodes);
+        assertSame(english.unwrap(), german.unwrap());
+        assertEquals("hello", string(german));
+        english.release();
+        german.release();
+    }
+
+    @Test
+    public void testTranslatableBodyIsSplitByLocale() {
+        this.translatable = true;
+        final ProtocolInfo<ClientGamePacketListener> protocol = this.protocol();
+        final SharedPacket<ClientGamePacketListener> packet = packet();
+        final long encodes = SharedPacket.ENCODES.sum();
+
+        final ByteBuf english = this.write(packet, protocol, channel(), Locale.US);
+        final ByteBuf german = this.write(packet, protocol, channel(), Locale.GERMANY);
+        final ByteBuf englishAgain = this.write(packet, protocol, channel(), Locale.US);
+        assertEquals(2L, SharedPacket.ENCODES.sum() - encodes);
+        assertEquals("en_US", string(english));
+        assertEquals("de_DE", string(german));
+        assertSame(english.unwrap(), englishAgain.unwrap());
+        english.release();
+        german.release();
+        englishAgain.release();
+    }
+
+    @Test
+    public void testContainsTranslatable() {
+        assertFalse(SharedPacket.containsTranslatable(Component.text("hello")));
+        assertFalse(SharedPacket.containsTranslatable(Component.text("hello").hoverEvent(HoverEvent.showText(Component.text("world")))));
+        assertTrue(SharedPacket.containsTranslatable(Component.translatable("chat.type.text")));
+        assertTrue(SharedPacket.containsTranslatable(Component.text("hello").append(Component.text("world").append(Component.translatable("chat.type.text")))));
+        assertTrue(SharedPacket.containsTranslatable(Component.text("hello").hoverEvent(HoverEvent.showText(Component.translatable("chat.type.text")))));
+    }
+
+    @Test
+    public void testSharedPacketsKeepTheirFlushPriority() {
+        assertTrue(FlushConsolidator.isLatencySensitive(SharedPacket.cached(new ClientboundKeepAlivePacket(1L))));
+        assertFalse(FlushConsolidator.isLatencySensitive(packet()));
+    }
+
+    @Test
+    public void testBuffersAreReleased() {
+        final ProtocolInfo<ClientGamePacketListener> protocol = this.protocol();
+        final SharedPacket<ClientGamePacketListener> packet = packet();
+
+        final EmbeddedChannel channel = channel();
+        final ByteBuf first = this.write(packet, protocol, channel, Locale.US);
+        final ByteBuf second = this.write(packet, protocol, channel(), Locale.US);
+        final ByteBuf body = first.unwrap();
+        assertTrue(first.isReadOnly());
+        // one reference held by the packet, one per channel that has not written it out yet
+        assertEquals(3, body.refCnt());
+        second.release();
+        assertEquals(2, body.refCnt());
+
+        // the compression stage gives up the body view and writes a view of the cached frame
+        final ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        assertTrue(SharedPacket.writeCompressed(ctx, first, Integer.MAX_VALUE, channel.newPromise()));
+        channel.flush();
+        assertEquals(1, body.refCnt());
+        final ByteBuf frame = channel.readOutbound();
+        assertTrue(frame.isReadOnly());
+        assertEquals(0, frame.getByte(frame.readerIndex()));
+        assertEquals(2, frame.refCnt());
+        frame.release();
+        assertEquals(1, frame.refCnt());
+        assertEquals(1, body.refCnt());
+    }
+}
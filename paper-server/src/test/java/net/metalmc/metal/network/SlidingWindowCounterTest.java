@@ -0,0 +1,54 @@
+package net.metalmc.metal.network;
+
+import java.util.concurrent.TimeUnit;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class SlidingWindowCounterTest {
+    private static final long INTERVAL = TimeUnit.SECONDS.toNanos(4L);
+
+    @Test
+    public void testRateOverWindow() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(INTERVAL);
+        final long start = -INTERVAL / 2; // nanoTime may be negative
+        for (int i = 0; i < 400; ++i) {
+            counter.add(start + i * (INTERVAL / 400));
+        }
+        assertEquals(400L, counter.getSum());
+        assertEquals(100.0, counter.getRate(), 1.0E-9);
+    }
+
+    @Test
+    public void testOldEventsExpire() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(INTERVAL);
+        for (int i = 0; i < 100; ++i) {
+            counter.add(0L);
+        }
+        // half a window later nothing has expired yet
+        counter.add(INTERVAL / 2);
+        assertEquals(101L, counter.getSum());
+        // a full window later the first burst is gone
+        counter.add(INTERVAL + INTERVAL / 4);
+        assertEquals(2L, counter.getSum());
+        counter.add(INTERVAL * 10);
+        assertEquals(1L, counter.getSum());
+    }
+
+    @Test
+    public void testNeverAboveExactRate() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(INTERVAL);
+        final long step = INTERVAL / 1000 + 7;
+        for (int i = 0; i < 5000; ++i) {
+            final long now = i * step;
+            counter.add(now);
+            // events within (now - interval, now], what IntervalledCounter would count
+            final long exact = Math.min(i + 1, (INTERVAL - 1) / step + 1);
+            assertTrue(counter.getSum() <= exact, "at event " + i);
+            assertTrue(counter.getSum() >= exact - exact / SlidingWindowCounter.BUCKETS - 1, "at event " + i);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package net.metalmc.metal.network;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.network.Connection;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.status.ClientboundStatusResponsePacket;
+import net.minecraft.network.protocol.status.ServerStatus;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.ServerListPingEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class StatusCacheTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    private boolean statusCache;
+    private int ttlMillis;
+    private boolean withEventListeners;
+    private double maxEventsPerSecond;
+
+    // counts the built responses, each one a new packet
+    private final AtomicInteger builds = new AtomicInteger();
+    private volatile boolean cancelled;
+    private final Supplier<ClientboundStatusResponsePacket> responses = () -> {
+        final int build = this.builds.incrementAndGet();
+        if (this.cancelled) {
+            return null;
+        }
+        return new ClientboundStatusResponsePacket(new ServerStatus(Component.literal("status " + build), Optional.empty(), Optional.empty(), Optional.empty(), false));
+    };
+
+    @BeforeEach
+    public void setUp() {
+        this.statusCache = MetalConfig.statusCache;
+        this.ttlMillis = MetalConfig.statusCacheTtlMillis;
+        this.withEventListeners = MetalConfig.statusCacheWithEventListeners;
+        this.maxEventsPerSecond = MetalConfig.statusCacheMaxEventsPerSecond;
+        MetalConfig.statusCache = true;
+        MetalConfig.statusCacheTtlMillis = 1000;
+        MetalConfig.statusCacheWithEventListeners = false;
+        MetalConfig.statusCacheMaxEventsPerSecond = 1.0;
+        StatusCache.invalidate();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MetalConfig.statusCache = this.statusCache;
+        MetalConfig.statusCacheTtlMillis = this.ttlMillis;
+        MetalConfig.statusCacheWithEventListeners = this.withEventListeners;
+        MetalConfig.statusCacheMaxEventsPerSecond = this.maxEventsPerSecond;
+        StatusCache.invalidate();
+    }
+
+    /**
+     * @return the status a request at {@code now} was answered with
+     */
+    private ClientboundStatusResponsePacket request(long now) {
+        final Connection connection = Mockito.mock(Connection.class);
+        assertTrue(StatusCache.handle(connection, now, this.responses));
+        final SharedPacket<?> sent = (SharedPacket<?>) Mockito.mockingDetails(connection).getInvocations().stream()
+            .filter(invocation -> invocation.getMethod().getName().equals("send"))
+            .map(invocation -> (Packet<?>) invocation.getArgument(0))
+            .findFirst()
+            .orElseThrow();
+        return (ClientboundStatusResponsePacket) sent.packet();
+    }
+
+    private void awaitRefresh() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (StatusCache.refreshing()) {
+            assertTrue(System.nanoTime() < deadline, "status refresh did not finish");
+            Thread.sleep(1L);
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+        MetalConfig.statusCache = false;
+        assertFalse(StatusCache.handle(Mockito.mock(Connection.class), 0L, this.responses));
+        assertEquals(0, this.builds.get());
+    }
+
+    @Test
+    public void testResponseIsSharedWithinTtl() {
+        final ClientboundStatusResponsePacket first = this.request(0L);
+        assertSame(first, this.request(500L * MILLIS));
+        assertSame(first, this.request(999L * MILLIS));
+        assertEquals(1, this.builds.get());
+    }
+
+    @Test
+    public void testExpiredResponseIsRefreshedInBackground() throws InterruptedException {
+        final ClientboundStatusResponsePacket first = this.request(0L);
+        // still served while the next one is built
+        assertSame(first, this.request(1500L * MILLIS));
+        this.awaitRefresh();
+        assertEquals(2, this.builds.get());
+
+        final ClientboundStatusResponsePacket second = this.request(1600L * MILLIS);
+        assertEquals(Component.literal("status 2"), second.status().description());
+        assertEquals(2, this.builds.get());
+    }
+
+    @Test
+    public void testOldResponseIsRebuiltForTheRequest() {
+        this.request(0L);
+        final ClientboundStatusResponsePacket second = this.request(2000L * MILLIS);
+        assertEquals(Component.literal("status 2"), second.status().description());
+        assertEquals(2, this.builds.get());
+    }
+
+    @Test
+    public void testInvalidate() {
+        final ClientboundStatusResponsePacket first = this.request(0L);
+        StatusCache.invalidate();
+        final ClientboundStatusResponsePacket second = this.request(1L);
+        assertEquals(Component.literal("status 2"), second.status().description());
+        assertSame(second, this.request(2L));
+        assertEquals(Component.literal("status 1"), first.status().description());
+    }
+
+    @Test
+    public void testCancelledEventIsCached() {
+        this.cancelled = true;
+        for (int i = 0; i < 2; ++i) {
+            final Connection connection = Mockito.mock(Connection.class);
+            assertTrue(StatusCache.handle(connection, i * MILLIS, this.responses));
+            Mockito.verify(connection).disconnect((Component) null);
+            Mockito.verify(connection, Mockito.never()).send(Mockito.any());
+        }
+        assertEquals(1, this.builds.get());
+    }
+
+    @Test
+    public void testEventListenersFallBackToTheEvent() {
+        final RegisteredListener listener = new RegisteredListener(new Listener() {}, (l, event) -> {}, EventPriority.NORMAL, Mockito.mock(Plugin.class), false);
+        ServerListPingEvent.getHandlerList().register(listener);
+        try {
+            assertFalse(StatusCache.handle(Mockito.mock(Connection.class), 0L, this.responses));
+            assertEquals(0, this.builds.get());
+
+            // allowed, but the event is called at most every 2 seconds instead of every second
+            MetalConfig.statusCacheWithEventListeners = true;
+            MetalConfig.statusCacheMaxEventsPerSecond = 0.5;
+            final ClientboundStatusResponsePacket first = this.request(0L);
+            assertSame(first, this.request(1500L * MILLIS));
+            assertEquals(1, this.builds.get());
+        } finally {
+            ServerListPingEvent.getHandlerList().unregister(listener);
+        }
+
+        // without listeners the configured ttl applies again
+        final ClientboundStatusResponsePacket second = this.request(2000L * MILLIS);
+        assertEquals(Component.literal("status 2"), second.status().description());
+    }
+}
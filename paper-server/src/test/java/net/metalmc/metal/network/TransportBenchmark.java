@@ -0,0 +1,172 @@
+package net.metalmc.metal.network;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.FixedLengthFrameDecoder;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Loopback ping-pong benchmark of the NIO, epoll and io_uring transports.
+ * <p>
+ * Every simulated client sends small frames to an echo server one after another and records the
+ * round trip of each. Only runs from the benchmark task, e.g.
+ * {@code ./gradlew :paper-server:benchmark --tests '*TransportBenchmark'}, with
+ * {@code -Dmetalmc.benchmark.clients} and {@code -Dmetalmc.benchmark.messages} to change the load.
+ */
+@EnabledIfSystemProperty(named = "metalmc.benchmark", matches = "true")
+public class TransportBenchmark {
+    private static final int FRAME_SIZE = 64;
+
+    private record Transport(String name, Supplier<EventLoopGroup> group, Class<? extends ServerChannel> serverChannel, Class<? extends Channel> channel) {
+    }
+
+    @Test
+    public void benchmarkTransports() throws Exception {
+        final int clients = Integer.getInteger("metalmc.benchmark.clients", 256);
+        final int messages = Integer.getInteger("metalmc.benchmark.messages", 2000);
+
+        final List<Transport> transports = new ArrayList<>();
+        transports.add(new Transport("nio", NioEventLoopGroup::new, NioServerSocketChannel.class, NioSocketChannel.class));
+        if (Epoll.isAvailable()) {
+            transports.add(new Transport("epoll", EpollEventLoopGroup::new, EpollServerSocketChannel.class, EpollSocketChannel.class));
+        }
+        if (IoUringTransport.isAvailable()) {
+            transports.add(new Transport("io_uring", IOUringEventLoopGroup::new, IOUringServerSocketChannel.class, IOUringSocketChannel.class));
+        }
+
+        for (final Transport transport : transports) {
+            // warm up the JIT before measuring
+            this.run(transport, Math.min(clients, 32), Math.min(messages, 500), false);
+            this.run(transport, clients, messages, true);
+        }
+    }
+
+    private void run(Transport transport, int clients, int messages, boolean report) throws Exception {
+        final EventLoopGroup serverGroup = transport.group().get();
+        final EventLoopGroup clientGroup = transport.group().get();
+        try {
+            final Channel server = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(transport.serverChannel())
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        channel.pipeline().addLast(new FixedLengthFrameDecoder(FRAME_SIZE), new SimpleChannelInboundHandler<ByteBuf>() {
+                            @Override
+                            protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+                                ctx.writeAndFlush(msg.retain());
+                            }
+                        });
+                    }
+                })
+                .bind(new InetSocketAddress("127.0.0.1", 0))
+                .sync()
+                .channel();
+
+            final CountDownLatch done = new CountDownLatch(clients);
+            final long[][] roundTrips = new long[clients][messages];
+            final Bootstrap bootstrap = new Bootstrap()
+                .group(clientGroup)
+                .channel(transport.channel())
+                .option(ChannelOption.TCP_NODELAY, true);
+            final long start = System.nanoTime();
+            for (int client = 0; client < clients; ++client) {
+                final long[] clientRoundTrips = roundTrips[client];
+                bootstrap.handler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        channel.pipeline().addLast(new FixedLengthFrameDecoder(FRAME_SIZE), new PingClient(clientRoundTrips, done));
+                    }
+                }).connect(server.localAddress()).sync();
+            }
+            assertTrue(done.await(5, TimeUnit.MINUTES), transport.name() + " did not finish");
+            final long elapsed = System.nanoTime() - start;
+            server.close().sync();
+
+            if (report) {
+                final long[] all = Arrays.stream(roundTrips).flatMapToLong(Arrays::stream).sorted().toArray();
+                System.out.printf(Locale.ROOT, "%-8s %d clients x %d messages: %.0f msg/s, %.1f MB/s, round trip p50 %.1fus p99 %.1fus p99.9 %.1fus%n",
+                    transport.name(),
+                    clients,
+                    messages,
+                    all.length / (elapsed / 1.0E9),
+                    all.length * (double) FRAME_SIZE * 2.0 / (elapsed / 1.0E9) / (1024.0 * 1024.0),
+                    percentile(all, 0.5) / 1000.0,
+                    percentile(all, 0.99) / 1000.0,
+                    percentile(all, 0.999) / 1000.0
+                );
+            }
+        } finally {
+            clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+            serverGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted.length == 0 ? 0L : sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))];
+    }
+
+    private static final class PingClient extends SimpleChannelInboundHandler<ByteBuf> {
+        private final long[] roundTrips;
+        private final CountDownLatch done;
+        private int received;
+
+        private PingClient(long[] roundTrips, CountDownLatch done) {
+            this.roundTrips = roundTrips;
+            this.done = done;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            this.ping(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+            this.roundTrips[this.received++] = System.nanoTime() - msg.getLong(0);
+            if (this.received == this.roundTrips.length) {
+                ctx.close();
+                this.done.countDown();
+            } else {
+                this.ping(ctx);
+            }
+        }
+
+        private void ping(ChannelHandlerContext ctx) {
+            final ByteBuf frame = ctx.alloc().buffer(FRAME_SIZE);
+            frame.writeLong(System.nanoTime());
+            frame.writeZero(FRAME_SIZE - Long.BYTES);
+            ctx.writeAndFlush(frame);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package net.metalmc.metal.redstone;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.redstone.Orientation;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@Normal
+public class NeighborUpdateBatchTest {
+
+    private static final BlockPos ORIGIN = new BlockPos(0, 64, 0);
+
+    /**
+     * Records the executed updates and queues the follow-up updates of {@link #onRun}.
+     */
+    private static final class Recorder implements NeighborUpdateBatch.Executor {
+        private final List<String> executed = new ArrayList<>();
+        private Runnable onRun;
+
+        private void run(String update) {
+            this.executed.add(update);
+            if (this.onRun != null) {
+                Runnable onRun = this.onRun;
+                this.onRun = null;
+                onRun.run();
+            }
+        }
+
+        @Override
+        public void neighborChanged(BlockPos pos, Block block, Orientation orientation) {
+            this.run("simple " + pos.toShortString());
+        }
+
+        @Override
+        public void neighborChanged(BlockState state, BlockPos pos, Block block, Orientation orientation, boolean movedByPiston) {
+            this.run("full " + pos.toShortString() + (movedByPiston ? " piston" : ""));
+        }
+
+        @Override
+        public void shapeUpdate(Direction direction, BlockState neighborState, BlockPos pos, BlockPos neighborPos, int flags, int updateLimit) {
+            this.run("shape " + pos.toShortString() + " " + direction + " " + neighborPos.toShortString() + " " + flags + " " + updateLimit);
+        }
+
+        @Override
+        public void updateNeighborsAtExceptFromFacing(BlockPos pos, Block block, Direction skipDirection, Orientation orientation) {
+            this.run("multi " + pos.toShortString() + " " + skipDirection);
+        }
+    }
+
+    private static NeighborUpdateBatch batch(Recorder recorder, int maxChained) {
+        return new NeighborUpdateBatch(maxChained, recorder);
+    }
+
+    @Test
+    public void testExecutesEveryKind() {
+        final Recorder recorder = new Recorder();
+        final NeighborUpdateBatch batch = batch(recorder, -1);
+        final BlockState stone = Blocks.STONE.defaultBlockState();
+
+        recorder.onRun = () -> {
+            batch.addNeighborChanged(stone, ORIGIN.above(), Blocks.STONE, null, true);
+            batch.addShapeUpdate(Direction.UP, stone, ORIGIN.above(2), ORIGIN.above(3), 3, 511);
+            batch.addNeighborsAtExceptFromFacing(ORIGIN.above(4), Blocks.REDSTONE_WIRE, Direction.DOWN, null);
+        };
+        batch.addNeighborChanged(ORIGIN, Blocks.STONE, null);
+
+        assertEquals(List.of(
+            "simple 0, 64, 0",
+            "full 0, 65, 0 piston",
+            "shape 0, 66, 0 up 0, 67, 0 3 511",
+            "multi 0, 68, 0 down"
+        ), recorder.executed);
+        assertFalse(batch.isRunning());
+        assertEquals(1, batch.getCascades());
+        assertEquals(4, batch.getExecuted());
+        assertEquals(4, batch.getLargestCascade());
+    }
+
+    @Test
+    public void testDuplicatesOfALayerAreDropped() {
+        final Recorder recorder = new Recorder();
+        final NeighborUpdateBatch batch = batch(recorder, -1);
+
+        recorder.onRun = () -> {
+            batch.addNeighborChanged(ORIGIN.east(), Blocks.STONE, null);
+            batch.addNeighborChanged(ORIGIN.east(), Blocks.STONE, null);
+            // other source block
+            batch.addNeighborChanged(ORIGIN.east(), Blocks.DIRT, null);
+
+            batch.addNeighborsAtExceptFromFacing(ORIGIN.west(), Blocks.REDSTONE_WIRE, null, null);
+            batch.addNeighborsAtExceptFromFacing(ORIGIN.west(), Blocks.REDSTONE_WIRE, null, null);
+            // other skipped side
+            batch.addNeighborsAtExceptFromFacing(ORIGIN.west(), Blocks.REDSTONE_WIRE, Direction.UP, null);
+            // other source block
+            batch.addNeighborsAtExceptFromFacing(ORIGIN.west(), Blocks.REPEATER, null, null);
+
+            batch.addShapeUpdate(Direction.UP, Blocks.AIR.defaultBlockState(), ORIGIN.north(), ORIGIN.north().above(), 3, 511);
+            batch.addShapeUpdate(Direction.UP, Blocks.AIR.defaultBlockState(), ORIGIN.north(), ORIGIN.north().above(), 3, 511);
+            // other flags
+            batch.addShapeUpdate(Direction.UP, Blocks.AIR.defaultBlockState(), ORIGIN.north(), ORIGIN.north().above(), 2, 511);
+        };
+        batch.addNeighborChanged(ORIGIN, Blocks.STONE, null);
+
+        assertEquals(8, recorder.executed.size(), recorder.executed::toString);
+        assertEquals(3, batch.getDuplicates());
+    }
+
+    @Test
+    public void testDuplicatesOfDifferentLayersRun() {
+        final Recorder recorder = new Recorder();
+        final NeighborUpdateBatch batch = batch(recorder, -1);
+
+        recorder.onRun = () -> {
+            batch.addNeighborChanged(ORIGIN.east(), Blocks.STONE, null);
+            recorder.onRun = () -> batch.addNeighborChanged(ORIGIN.east(), Blocks.STONE, null);
+        };
+        batch.addNeighborChanged(ORIGIN, Blocks.STONE, null);
+
+        assertEquals(List.of("simple 0, 64, 0", "simple 1, 64, 0", "simple 1, 64, 0"), recorder.executed);
+        assertEquals(0, batch.getDuplicates());
+    }
+
+    @Test
+    public void testLayersRunSortedByPosition() {
+        final Recorder recorder = new Recorder();
+        final NeighborUpdateBatch batch = batch(recorder, -1);
+        final List<BlockPos> queued = List.of(ORIGIN.east(5), ORIGIN.west(3), ORIGIN.above(), ORIGIN.north(7), ORIGIN.south(2), ORIGIN.below());
+
+        recorder.onRun = () -> queued.forEach(pos -> batch.addNeighborChanged(pos, Blocks.STONE, null));
+        batch.addNeighborChanged(ORIGIN, Blocks.STONE, null);
+
+        final List<String> expected = new ArrayList<>();
+        expected.add("simple 0, 64, 0");
+        queued.stream().sorted((a, b) -> Long.compare(a.asLong(), b.asLong())).forEach(pos -> expected.add("simple " + pos.toShortString()));
+        assertEquals(expected, recorder.executed);
+    }
+
+    @Test
+    public void testUpdatesOfOnePositionKeepTheirOrder() {
+        final Recorder recorder = new Recorder();
+        final NeighborUpdateBatch batch = batch(recorder, -1);
+
+        recorder.onRun = () -> {
+            batch.addShapeUpdate(Direction.UP, Blocks.AIR.defaultBlockState(), ORIGIN.east(), ORIGIN.east().above(), 3, 511);
+            batch.addNeighborChanged(ORIGIN.east(), Blocks.STONE, null);
+            batch.addShapeUpdate(Direction.DOWN, Blocks.AIR.defaultBlockState(), ORIGIN.east(), ORIGIN.east().below(), 3, 511);
+        };
+        batch.addNeighborChanged(ORIGIN, Blocks.STONE, null);
+
+        assertEquals(List.of(
+            "simple 0, 64, 0",
+            "shape 1, 64, 0 up 1, 65, 0 3 511",
+            "simple 1, 64, 0",
+            "shape 1, 64, 0 down 1, 63, 0 3 511"
+        ), recorder.executed);
+    }
+
+    @Test
+    public void testLargeLayer() {
+        final Recorder recorder = new Recorder();
+        final NeighborUpdateBatch batch = batch(recorder, -1);
+
+        // grows the columns and the duplicate table several times
+        recorder.onRun = () -> {
+            for (int i = 0; i < 1000; ++i) {
+                batch.addNeighborChanged(ORIGIN.east(i), Blocks.STONE, null);
+                batch.addNeighborChanged(ORIGIN.east(i / 2), Blocks.STONE, null);
+            }
+        };
+        batch.addNeighborChanged(ORIGIN, Blocks.STONE, null);
+
+        assertEquals(1001, recorder.executed.size());
+        assertEquals(1000, batch.getDuplicates());
+    }
+
+    @Test
+    public void testChainLimit() {
+        final Recorder recorder = new Recorder();
+        final NeighborUpdateBatch batch = batch(recorder, 3);
+        assertEquals(3, batch.getMaxChained());
+
+        recorder.onRun = () -> {
+            for (int i = 1; i <= 5; ++i) {
+                batch.addNeighborChanged(ORIGIN.east(i), Blocks.STONE, null);
+            }
+        };
+        batch.addNeighborChanged(ORIGIN, Blocks.STONE, null);
+
+        assertEquals(List.of("simple 0, 64, 0", "simple 1, 64, 0", "simple 2, 64, 0"), recorder.executed);
+        assertEquals(1, batch.getTruncated());
+
+        // the next cascade starts with a fresh budget
+        recorder.executed.clear();
+        batch.addNeighborChanged(ORIGIN, Blocks.STONE, null);
+        assertEquals(List.of("simple 0, 64, 0"), recorder.executed);
+        assertEquals(2, batch.getCascades());
+        assertEquals(1, batch.getTruncated());
+    }
+}
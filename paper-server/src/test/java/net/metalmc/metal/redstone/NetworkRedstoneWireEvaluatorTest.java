@@ -0,0 +1,230 @@
+package net.metalmc.metal.redstone;
+
+import com.google.common.collect.Sets;
+import java.util.Random;
+import java.util.Set;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the same scenes with {@link NetworkRedstoneWireEvaluator} and the default evaluator on a
+ * {@link WireLevel} and compares the resulting wire power and the updated positions.
+ */
+@Normal
+public class NetworkRedstoneWireEvaluatorTest {
+
+    private static final BlockState STONE = Blocks.STONE.defaultBlockState();
+    private static final BlockState SOURCE = Blocks.REDSTONE_BLOCK.defaultBlockState();
+    private static final BlockState AIR = Blocks.AIR.defaultBlockState();
+
+    /**
+     * The same scene evaluated by both evaluators.
+     */
+    private static final class Scene {
+        private final WireLevel network;
+        private final WireLevel vanilla;
+
+        private Scene(WireLevel scene) {
+            this.network = scene.copy();
+            this.vanilla = scene.copy();
+        }
+
+        private void set(BlockPos pos, BlockState state) {
+            WireLevel.withEvaluator(true, () -> this.network.set(pos, state));
+            WireLevel.withEvaluator(false, () -> this.vanilla.set(pos, state));
+            assertEquals(this.vanilla.powers(), this.network.powers(), () -> "after setting " + state + " at " + pos.toShortString());
+        }
+    }
+
+    private static WireLevel floor(int width) {
+        final WireLevel level = new WireLevel();
+        for (int x = -1; x <= width; ++x) {
+            for (int z = -1; z <= width; ++z) {
+                level.put(new BlockPos(x, 63, z), STONE);
+            }
+        }
+        return level;
+    }
+
+    @Test
+    public void testLine() {
+        final WireLevel level = floor(20);
+        for (int x = 0; x < 20; ++x) {
+            level.putWire(new BlockPos(x, 64, 0));
+        }
+        final Scene scene = new Scene(level);
+
+        final BlockPos source = new BlockPos(-1, 64, 0);
+        scene.set(source, SOURCE);
+        assertEquals(15, scene.network.power(new BlockPos(0, 64, 0)));
+        assertEquals(0, scene.network.power(new BlockPos(19, 64, 0)));
+        assertEquals(1, scene.network.power(new BlockPos(14, 64, 0)));
+        scene.set(source, AIR);
+        assertEquals(0, scene.network.power(new BlockPos(0, 64, 0)));
+    }
+
+    @Test
+    public void testLoopWithTwoSources() {
+        // a ring around a 7x7 square, fed at opposite corners, each source turned off in turn
+        final WireLevel level = floor(9);
+        for (int i = 1; i < 8; ++i) {
+            level.putWire(new BlockPos(i, 64, 1));
+            level.putWire(new BlockPos(i, 64, 7));
+            level.putWire(new BlockPos(1, 64, i));
+            level.putWire(new BlockPos(7, 64, i));
+        }
+        final Scene scene = new Scene(level);
+
+        scene.set(new BlockPos(0, 64, 1), SOURCE);
+        scene.set(new BlockPos(8, 64, 7), SOURCE);
+        scene.set(new BlockPos(0, 64, 1), AIR);
+        scene.set(new BlockPos(0, 64, 1), SOURCE);
+        scene.set(new BlockPos(8, 64, 7), AIR);
+        scene.set(new BlockPos(0, 64, 1), AIR);
+        assertEquals(0, scene.network.power(new BlockPos(4, 64, 4 + 3)));
+    }
+
+    @Test
+    public void testSteps() {
+        // up a staircase of stone and down again, and a stone covering a step that cuts the line
+        final WireLevel level = floor(12);
+        for (int x = 0; x < 12; ++x) {
+            final int height = Math.min(x, 11 - x) / 2;
+            for (int y = 64; y < 64 + height; ++y) {
+                level.put(new BlockPos(x, y, 0), STONE);
+            }
+            level.putWire(new BlockPos(x, 64 + height, 0));
+        }
+        final Scene scene = new Scene(level);
+
+        scene.set(new BlockPos(-1, 64, 0), SOURCE);
+        assertTrue(scene.network.power(new BlockPos(11, 64, 0)) > 0);
+        // cover the wire before the first step up
+        scene.set(new BlockPos(1, 65, 0), STONE);
+        scene.set(new BlockPos(-1, 64, 0), AIR);
+        scene.set(new BlockPos(-1, 64, 0), SOURCE);
+        scene.set(new BlockPos(1, 65, 0), AIR);
+    }
+
+    @Test
+    public void testRandomScenes() {
+        final Random random = new Random(5L);
+        for (int iteration = 0; iteration < 40; ++iteration) {
+            final int width = 12;
+            final WireLevel level = floor(width);
+            for (int x = 0; x < width; ++x) {
+                for (int z = 0; z < width; ++z) {
+                    final int roll = random.nextInt(10);
+                    if (roll < 5) {
+                        level.putWire(new BlockPos(x, 64, z));
+                    } else if (roll < 7) {
+                        // a step up
+                        level.put(new BlockPos(x, 64, z), STONE);
+                        level.putWire(new BlockPos(x, 65, z));
+                    }
+                }
+            }
+            final Scene scene = new Scene(level);
+
+            for (int toggle = 0; toggle < 12; ++toggle) {
+                final BlockPos pos = new BlockPos(random.nextInt(width), 64, random.nextInt(width));
+                final BlockState state = scene.vanilla.getBlockState(pos);
+                if (state.is(Blocks.REDSTONE_BLOCK)) {
+                    scene.set(pos, AIR);
+                } else if (!state.is(Blocks.STONE)) {
+                    scene.set(pos, SOURCE);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReducedUpdates() {
+        // a line of wire with a block two above its middle, the spot a piston budded through the wire would be in
+        final WireLevel level = floor(8);
+        for (int x = 0; x < 8; ++x) {
+            level.putWire(new BlockPos(x, 64, 0));
+        }
+        final BlockPos twoAbove = new BlockPos(4, 66, 0);
+        final BlockPos diagonal = new BlockPos(4, 65, 1);
+        final BlockPos belowFloor = new BlockPos(4, 62, 0);
+        final BlockPos source = new BlockPos(-1, 64, 0);
+
+        final WireLevel vanilla = level.copy();
+        WireLevel.withEvaluator(false, () -> vanilla.set(source, SOURCE));
+        final Set<BlockPos> vanillaUpdated = vanilla.takeUpdated();
+        assertTrue(vanillaUpdated.contains(twoAbove));
+        assertTrue(vanillaUpdated.contains(diagonal));
+
+        // default order: neighbours of the wires and of the conductors next to them only
+        final WireLevel network = level.copy();
+        WireLevel.withEvaluator(true, () -> network.set(source, SOURCE));
+        final Set<BlockPos> networkUpdated = network.takeUpdated();
+        assertEquals(vanilla.powers(), network.powers());
+        assertTrue(vanillaUpdated.containsAll(networkUpdated));
+        assertFalse(networkUpdated.contains(twoAbove));
+        assertFalse(networkUpdated.contains(diagonal));
+        // the floor under the wire conducts
+        assertTrue(networkUpdated.contains(belowFloor));
+
+        // vanilla order: the same positions as the default evaluator
+        final boolean vanillaOrder = MetalConfig.networkWireEvaluatorVanillaOrder;
+        MetalConfig.networkWireEvaluatorVanillaOrder = true;
+        try {
+            final WireLevel ordered = level.copy();
+            WireLevel.withEvaluator(true, () -> ordered.set(source, SOURCE));
+            assertEquals(vanillaUpdated, ordered.takeUpdated());
+        } finally {
+            MetalConfig.networkWireEvaluatorVanillaOrder = vanillaOrder;
+        }
+    }
+
+    @Test
+    public void testNetworkIsWrittenOnce() {
+        // turning the line off, vanilla lets the wires power each other down step by step
+        final WireLevel level = floor(16);
+        for (int x = 0; x < 16; ++x) {
+            level.putWire(new BlockPos(x, 64, 0));
+        }
+        final BlockPos source = new BlockPos(-1, 64, 0);
+        final Scene scene = new Scene(level);
+        scene.set(source, SOURCE);
+        scene.network.takeWrites();
+        scene.vanilla.takeWrites();
+
+        scene.set(source, AIR);
+        // the wires 0 to 14 had power
+        assertEquals(15, scene.network.takeWrites());
+        assertTrue(scene.vanilla.takeWrites() > 15);
+    }
+
+    @Test
+    public void testVanillaUpdateOrder() {
+        final Random random = new Random(3L);
+        final long[] order = new long[NetworkRedstoneWireEvaluator.VANILLA_UPDATES];
+        final int[] buckets = new int[NetworkRedstoneWireEvaluator.VANILLA_UPDATES];
+        final BlockPos.MutableBlockPos scratch = new BlockPos.MutableBlockPos();
+        for (int iteration = 0; iteration < 10000; ++iteration) {
+            final BlockPos pos = new BlockPos(random.nextInt(60000000) - 30000000, random.nextInt(384) - 64, random.nextInt(60000000) - 30000000);
+            // what DefaultRedstoneWireEvaluator iterates
+            final Set<BlockPos> positions = Sets.newHashSet();
+            positions.add(pos);
+            for (final Direction direction : Direction.values()) {
+                positions.add(pos.relative(direction));
+            }
+
+            NetworkRedstoneWireEvaluator.vanillaUpdateOrder(pos.asLong(), order, buckets, scratch);
+            assertArrayEquals(positions.stream().mapToLong(BlockPos::asLong).toArray(), order, pos.toString());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package net.metalmc.metal.redstone;
+
+import java.util.Locale;
+import java.util.Map;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link NetworkRedstoneWireEvaluator} against the default evaluator on a {@link WireLevel},
+ * switching the source of a long line and of a large grid of wire on and off. Block reads and
+ * writes go through the fixture's mocked level, which costs both evaluators the same per access,
+ * so the numbers compare the work done rather than server tick times. Only runs from the benchmark
+ * task, e.g. {@code ./gradlew :paper-server:benchmark --tests '*RedstoneWireBenchmark'}, with
+ * {@code -Dmetalmc.benchmark.rounds} to change the load.
+ */
+@Normal
+@EnabledIfSystemProperty(named = "metalmc.benchmark", matches = "true")
+public class RedstoneWireBenchmark {
+
+    private static final BlockState SOURCE = Blocks.REDSTONE_BLOCK.defaultBlockState();
+    private static final BlockState AIR = Blocks.AIR.defaultBlockState();
+
+    @Test
+    public void benchmarkToggling() {
+        final int rounds = Integer.getInteger("metalmc.benchmark.rounds", 20);
+
+        final WireLevel line = floor(256, 1);
+        for (int x = 0; x < 256; ++x) {
+            line.putWire(new BlockPos(x, 64, 0));
+        }
+        this.run("line", line, new BlockPos(-1, 64, 0), rounds);
+
+        final WireLevel grid = floor(32, 32);
+        for (int x = 0; x < 32; ++x) {
+            for (int z = 0; z < 32; ++z) {
+                grid.putWire(new BlockPos(x, 64, z));
+            }
+        }
+        this.run("grid", grid, new BlockPos(-1, 64, 16), rounds);
+    }
+
+    private static WireLevel floor(int width, int depth) {
+        final WireLevel level = new WireLevel();
+        for (int x = -1; x <= width; ++x) {
+            for (int z = -1; z <= depth; ++z) {
+                level.put(new BlockPos(x, 63, z), Blocks.STONE.defaultBlockState());
+            }
+        }
+        return level;
+    }
+
+    private void run(String name, WireLevel scene, BlockPos source, int rounds) {
+        final WireLevel network = scene.copy();
+        final WireLevel vanilla = scene.copy();
+        final Map<BlockPos, Integer> off = scene.powers();
+
+        // warm up the JIT before measuring
+        for (int round = 0; round < Math.max(2, rounds / 10); ++round) {
+            toggle(network, source, true);
+            toggle(vanilla, source, false);
+        }
+        assertEquals(off, network.powers());
+        assertEquals(off, vanilla.powers());
+        network.takeWrites();
+        vanilla.takeWrites();
+
+        long networkTime = 0L;
+        long vanillaTime = 0L;
+        for (int round = 0; round < rounds; ++round) {
+            networkTime += toggle(network, source, true);
+            vanillaTime += toggle(vanilla, source, false);
+        }
+        System.out.printf(Locale.ROOT, "%-5s %5d wires: network %.1f us/toggle (%d writes), default %.1f us/toggle (%d writes)%n",
+            name,
+            off.size(),
+            networkTime / 1000.0 / (rounds * 2),
+            network.takeWrites() / (rounds * 2),
+            vanillaTime / 1000.0 / (rounds * 2),
+            vanilla.takeWrites() / (rounds * 2)
+        );
+    }
+
+    /**
+     * @return the nanoseconds it took to switch the source on and off again
+     */
+    private static long toggle(WireLevel level, BlockPos source, boolean network) {
+        final long[] elapsed = new long[1];
+        WireLevel.withEvaluator(network, () -> {
+            final long start = System.nanoTime();
+            level.set(source, SOURCE);
+            level.set(source, AIR);
+            elapsed[0] = System.nanoTime() - start;
+        });
+        return elapsed[0];
+    }
+}
@@ -0,0 +1,172 @@
+package net.metalmc.metal.redstone;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import net.metalmc.metal.MetalConfig;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.flag.FeatureFlags;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.RedStoneWireBlock;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.redstone.NeighborUpdater;
+import net.minecraft.world.level.redstone.Orientation;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+/**
+ * A {@link Level} backed by a map of block states, for running the real wire evaluators.
+ * <p>
+ * Block reads, writes and neighbour updates are stubbed, everything else (signals, conductors,
+ * the wire block itself) runs the real code. Neighbour updates are queued and run in order once
+ * the outermost one finished, like {@code CollectingNeighborUpdater} does with its chain limit out of
+ * the way, and the position of every update and the number of writes are recorded.
+ */
+final class WireLevel {
+    private static final BlockState AIR = Blocks.AIR.defaultBlockState();
+
+    final Level level;
+    private final Map<BlockPos, BlockState> blocks = new HashMap<>();
+    private final ArrayDeque<Update> updates = new ArrayDeque<>();
+    private final Set<BlockPos> updated = new LinkedHashSet<>();
+    private int writes;
+    private boolean running;
+
+    private record Update(BlockPos pos, Block block, Orientation orientation) {
+    }
+
+    WireLevel() {
+        this.level = Mockito.mock(Level.class, Mockito.withSettings().defaultAnswer(Mockito.CALLS_REAL_METHODS));
+        Mockito.doAnswer(invocation -> this.getBlockState(invocation.getArgument(0)))
+            .when(this.level).getBlockState(ArgumentMatchers.any());
+        Mockito.doAnswer(invocation -> {
+            this.blocks.put(invocation.<BlockPos>getArgument(0).immutable(), invocation.getArgument(1));
+            ++this.writes;
+            return true;
+        }).when(this.level).setBlock(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.anyInt());
+        Mockito.doAnswer(invocation -> {
+            this.updateNeighborsAt(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(this.level).updateNeighborsAt(ArgumentMatchers.any(), ArgumentMatchers.any());
+        Mockito.doAnswer(invocation -> {
+            this.neighborChanged(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(this.level).neighborChanged(ArgumentMatchers.any(BlockPos.class), ArgumentMatchers.any(Block.class), ArgumentMatchers.any());
+        Mockito.doReturn(FeatureFlags.VANILLA_SET).when(this.level).enabledFeatures();
+    }
+
+    /**
+     * Runs {@code action} with either the network or the default wire evaluator.
+     */
+    static void withEvaluator(boolean network, Runnable action) {
+        final boolean networkEvaluator = MetalConfig.networkWireEvaluator;
+        final int maxSize = MetalConfig.networkWireEvaluatorMaxSize;
+        final boolean skipEvents = MetalConfig.skipUnlistenedEvents;
+        MetalConfig.networkWireEvaluator = network;
+        MetalConfig.networkWireEvaluatorMaxSize = 4096;
+        // the level has no server to call events on
+        MetalConfig.skipUnlistenedEvents = true;
+        try {
+            action.run();
+        } finally {
+            MetalConfig.networkWireEvaluator = networkEvaluator;
+            MetalConfig.networkWireEvaluatorMaxSize = maxSize;
+            MetalConfig.skipUnlistenedEvents = skipEvents;
+        }
+    }
+
+    BlockState getBlockState(BlockPos pos) {
+        return this.blocks.getOrDefault(pos, AIR);
+    }
+
+    /**
+     * Sets a block without updates, for building a scene.
+     */
+    void put(BlockPos pos, BlockState state) {
+        if (state.isAir()) {
+            this.blocks.remove(pos);
+        } else {
+            this.blocks.put(pos.immutable(), state);
+        }
+    }
+
+    void putWire(BlockPos pos) {
+        this.put(pos, Blocks.REDSTONE_WIRE.defaultBlockState());
+    }
+
+    /**
+     * Sets a block and updates its neighbours, like {@code Level#setBlock} with {@link Block#UPDATE_ALL}.
+     */
+    void set(BlockPos pos, BlockState state) {
+        final Block block = this.getBlockState(pos).getBlock();
+        this.put(pos, state);
+        this.updateNeighborsAt(pos, state.isAir() ? block : state.getBlock());
+    }
+
+    int power(BlockPos pos) {
+        final BlockState state = this.getBlockState(pos);
+        return state.is(Blocks.REDSTONE_WIRE) ? state.getValue(RedStoneWireBlock.POWER) : -1;
+    }
+
+    Map<BlockPos, Integer> powers() {
+        final Map<BlockPos, Integer> powers = new HashMap<>();
+        this.blocks.forEach((pos, state) -> {
+            if (state.is(Blocks.REDSTONE_WIRE)) {
+                powers.put(pos, state.getValue(RedStoneWireBlock.POWER));
+            }
+        });
+        return powers;
+    }
+
+    /**
+     * @return the positions that received a neighbour update since the last call
+     */
+    Set<BlockPos> takeUpdated() {
+        final Set<BlockPos> updated = new LinkedHashSet<>(this.updated);
+        this.updated.clear();
+        return updated;
+    }
+
+    /**
+     * @return the blocks the evaluators wrote since the last call
+     */
+    int takeWrites() {
+        final int writes = this.writes;
+        this.writes = 0;
+        return writes;
+    }
+
+    WireLevel copy() {
+        final WireLevel copy = new WireLevel();
+        copy.blocks.putAll(this.blocks);
+        return copy;
+    }
+
+    private void updateNeighborsAt(BlockPos pos, Block block) {
+        for (final Direction direction : NeighborUpdater.UPDATE_ORDER) {
+            this.neighborChanged(pos.relative(direction), block, null);
+        }
+    }
+
+    private void neighborChanged(BlockPos pos, Block block, Orientation orientation) {
+        this.updates.add(new Update(pos.immutable(), block, orientation));
+        if (this.running) {
+            return;
+        }
+        this.running = true;
+        try {
+            Update update;
+            while ((update = this.updates.poll()) != null) {
+                this.updated.add(update.pos());
+                this.getBlockState(update.pos()).handleNeighborChanged(this.level, update.pos(), update.block(), update.orientation(), false);
+            }
+        } finally {
+            this.running = false;
+        }
+    }
+}
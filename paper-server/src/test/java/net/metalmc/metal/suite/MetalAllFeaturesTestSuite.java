@@ -0,0 +1,15 @@
+package net.metalmc.metal.suite;
+
+import org.junit.platform.suite.api.ConfigurationParameter;
+import org.junit.platform.suite.api.IncludeTags;
+import org.junit.platform.suite.api.SelectPackages;
+import org.junit.platform.suite.api.Suite;
+import org.junit.platform.suite.api.SuiteDisplayName;
+
+@Suite(failIfNoTests = false)
+@SuiteDisplayName("Test suite for MetalMC tests which need registry values present, with all feature flags set")
+@IncludeTags("AllFeatures")
+@SelectPackages("net.metalmc")
+@ConfigurationParameter(key = "TestSuite", value = "AllFeatures")
+public class MetalAllFeaturesTestSuite {
+}
@@ -0,0 +1,15 @@
+package net.metalmc.metal.suite;
+
+import org.junit.platform.suite.api.ConfigurationParameter;
+import org.junit.platform.suite.api.IncludeTags;
+import org.junit.platform.suite.api.SelectPackages;
+import org.junit.platform.suite.api.Suite;
+import org.junit.platform.suite.api.SuiteDisplayName;
+
+@Suite(failIfNoTests = false)
+@SuiteDisplayName("Test suite for MetalMC tests, which don't need any registry values present")
+@IncludeTags("Normal")
+@SelectPackages("net.metalmc")
+@ConfigurationParameter(key = "TestSuite", value = "Normal")
+public class MetalNormalTestSuite {
+}
@@ -0,0 +1,164 @@
+package net.metalmc.metal.tick;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.ticks.SavedTick;
+import net.minecraft.world.ticks.ScheduledTick;
+import net.minecraft.world.ticks.TickPriority;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class PackedChunkTicksTest {
+    private static final Block[] TYPES = {Blocks.REDSTONE_WIRE, Blocks.OBSERVER, Blocks.REPEATER};
+
+    @Test
+    public void testDrainOrderMatchesVanilla() {
+        final Random random = new Random(42L);
+        final PackedChunkTicks<Block> packed = new PackedChunkTicks<>();
+        final PriorityQueue<ScheduledTick<Block>> vanilla = new PriorityQueue<>(ScheduledTick.DRAIN_ORDER);
+        for (int i = 0; i < 2000; ++i) {
+            final ScheduledTick<Block> tick = new ScheduledTick<>(
+                TYPES[random.nextInt(TYPES.length)],
+                new BlockPos(random.nextInt(16), random.nextInt(8) - 4, random.nextInt(16)),
+                random.nextInt(20),
+                TickPriority.values()[random.nextInt(TickPriority.values().length)],
+                i
+            );
+            if (packed.schedule(tick)) {
+                vanilla.add(tick);
+            }
+            if (random.nextInt(4) == 0) {
+                assertEquals(vanilla.poll(), packed.poll());
+            }
+        }
+
+        assertEquals(vanilla.size(), packed.count());
+        while (!vanilla.isEmpty()) {
+            final ScheduledTick<Block> expected = vanilla.poll();
+            assertTrue(packed.hasScheduledTick(expected.pos(), expected.type()));
+            assertEquals(expected, packed.poll());
+            assertFalse(packed.hasScheduledTick(expected.pos(), expected.type()));
+        }
+        assertNull(packed.peek());
+    }
+
+    @Test
+    public void testRejectsDuplicates() {
+        final PackedChunkTicks<Block> packed = new PackedChunkTicks<>();
+        assertTrue(packed.schedule(new ScheduledTick<>(Blocks.OBSERVER, BlockPos.ZERO, 2L, TickPriority.NORMAL, 0L)));
+        assertFalse(packed.schedule(new ScheduledTick<>(Blocks.OBSERVER, BlockPos.ZERO, 5L, TickPriority.HIGH, 1L)));
+        assertTrue(packed.schedule(new ScheduledTick<>(Blocks.REPEATER, BlockPos.ZERO, 5L, TickPriority.HIGH, 2L)));
+        assertEquals(2, packed.count());
+    }
+
+    @Test
+    public void testPendingTicksRoundTrip() {
+        final List<SavedTick<Block>> saved = new ArrayList<>();
+        saved.add(new SavedTick<>(Blocks.OBSERVER, new BlockPos(1, 2, 3), 4, TickPriority.HIGH));
+        saved.add(new SavedTick<>(Blocks.REPEATER, new BlockPos(4, 5, 6), 1, TickPriority.NORMAL));
+
+        final PackedChunkTicks<Block> packed = new PackedChunkTicks<>();
+        packed.setPending(saved);
+        assertTrue(packed.hasScheduledTick(new BlockPos(1, 2, 3), Blocks.OBSERVER));
+        assertFalse(packed.schedule(new ScheduledTick<>(Blocks.OBSERVER, new BlockPos(1, 2, 3), 0L, TickPriority.NORMAL, 0L)));
+        assertEquals(saved, packed.pack(100L));
+
+        final List<ScheduledTick<Block>> added = new ArrayList<>();
+        packed.unpack(100L, added::add);
+        assertEquals(1, added.size());
+        assertEquals(saved, packed.pack(100L).stream().sorted((a, b) -> Integer.compare(b.delay(), a.delay())).toList());
+        assertEquals(new ScheduledTick<>(Blocks.REPEATER, new BlockPos(4, 5, 6), 101L, TickPriority.NORMAL, -1L), packed.poll());
+    }
+
+    private static ScheduledTick<Block> tick(Block type, int x, long triggerTick, long subTick) {
+        return new ScheduledTick<>(type, new BlockPos(x, 0, 0), triggerTick, TickPriority.NORMAL, subTick);
+    }
+
+    @Test
+    public void testHeadIsTheScheduledObject() {
+        final PackedChunkTicks<Block> packed = new PackedChunkTicks<>();
+        final ScheduledTick<Block> first = tick(Blocks.OBSERVER, 0, 5L, 0L);
+        packed.schedule(first);
+        assertSame(first, packed.peek());
+
+        // a later tick leaves the head alone
+        packed.schedule(tick(Blocks.OBSERVER, 1, 8L, 1L));
+        assertSame(first, packed.peek());
+
+        // an earlier one replaces it with its own object
+        final ScheduledTick<Block> earlier = tick(Blocks.OBSERVER, 2, 3L, 2L);
+        packed.schedule(earlier);
+        assertSame(earlier, packed.peek());
+        assertSame(earlier, packed.poll());
+        assertEquals(first, packed.peek());
+    }
+
+    @Test
+    public void testHeadIsBuiltOnce() {
+        final PackedChunkTicks<Block> packed = new PackedChunkTicks<>();
+        packed.schedule(tick(Blocks.OBSERVER, 0, 1L, 0L));
+        packed.schedule(tick(Blocks.OBSERVER, 1, 4L, 1L));
+        packed.schedule(tick(Blocks.OBSERVER, 2, 6L, 2L));
+        packed.poll();
+
+        final ScheduledTick<Block> head = packed.peek();
+        assertSame(head, packed.peek());
+        // removing another tick keeps the head, as LevelTicks#clearArea compares them by identity
+        packed.removeIf(tick -> tick.pos().getX() == 2);
+        assertSame(head, packed.peek());
+        assertSame(head, packed.getAll().findFirst().orElseThrow());
+        packed.removeIf(tick -> tick == head);
+        assertNull(packed.peek());
+    }
+
+    @Test
+    public void testReusedSlotIsNotTheOldHead() {
+        final PackedChunkTicks<Block> packed = new PackedChunkTicks<>();
+        packed.schedule(tick(Blocks.OBSERVER, 0, 1L, 0L));
+        packed.schedule(tick(Blocks.OBSERVER, 1, 9L, 1L));
+        final ScheduledTick<Block> polled = packed.poll();
+        final ScheduledTick<Block> second = packed.peek();
+        assertEquals(tick(Blocks.OBSERVER, 1, 9L, 1L), second);
+
+        // takes the slot the polled tick had, without becoming the head
+        packed.schedule(tick(Blocks.REPEATER, 0, 12L, 2L));
+        assertSame(second, packed.peek());
+        packed.poll();
+        assertNotSame(polled, packed.peek());
+        assertEquals(tick(Blocks.REPEATER, 0, 12L, 2L), packed.peek());
+    }
+
+    @Test
+    public void testUnpackReportsTheNewHead() {
+        final List<SavedTick<Block>> saved = new ArrayList<>();
+        saved.add(new SavedTick<>(Blocks.OBSERVER, new BlockPos(1, 2, 3), 4, TickPriority.HIGH));
+        saved.add(new SavedTick<>(Blocks.REPEATER, new BlockPos(4, 5, 6), 1, TickPriority.NORMAL));
+
+        final PackedChunkTicks<Block> packed = new PackedChunkTicks<>();
+        packed.setPending(saved);
+        final List<ScheduledTick<Block>> added = new ArrayList<>();
+        packed.unpack(100L, added::add);
+        assertEquals(List.of(packed.peek()), added);
+
+        // loaded ticks that drain after the scheduled ones do not move the front
+        final PackedChunkTicks<Block> later = new PackedChunkTicks<>();
+        later.setPending(saved);
+        later.schedule(tick(Blocks.OBSERVER, 7, 100L, 0L));
+        added.clear();
+        later.unpack(100L, added::add);
+        assertEquals(List.of(), added);
+    }
+}
@@ -0,0 +1,114 @@
+package net.metalmc.metal.tracker;
+
+import ca.spottedleaf.moonrise.common.list.ReferenceList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import net.minecraft.server.level.ChunkTrackingView;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.ChunkPos;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@Normal
+public class PlayerTrackerAreaMapTest {
+
+    private static ServerPlayer player(int chunkX, int chunkZ, int viewDistance) {
+        final ServerPlayer player = Mockito.mock(ServerPlayer.class);
+        move(player, chunkX, chunkZ, viewDistance, 0.5);
+        return player;
+    }
+
+    private static void move(ServerPlayer player, int chunkX, int chunkZ, int viewDistance, double offset) {
+        Mockito.when(player.getChunkTrackingView()).thenReturn(ChunkTrackingView.of(new ChunkPos(chunkX, chunkZ), viewDistance));
+        Mockito.when(player.getX()).thenReturn((chunkX << 4) + offset);
+        Mockito.when(player.getY()).thenReturn(64.0);
+        Mockito.when(player.getZ()).thenReturn((chunkZ << 4) + offset);
+    }
+
+    private static <T> Set<T> set(ReferenceList<T> list) {
+        final Set<T> values = new HashSet<>();
+        if (list != null) {
+            list.forEach(values::add);
+        }
+        return values;
+    }
+
+    private static Set<ServerPlayer> moved(PlayerTrackerAreaMap map) {
+        final Set<ServerPlayer> players = new HashSet<>();
+        map.getMovedAreas().forEach(area -> players.add(area.getParameter()));
+        return players;
+    }
+
+    @Test
+    public void testAdd() {
+        final PlayerTrackerAreaMap map = new PlayerTrackerAreaMap();
+        final ServerPlayer first = player(0, 0, 2);
+        final ServerPlayer second = player(4, 0, 2);
+        map.update(List.of(first, second));
+
+        assertEquals(2, map.getTrackedPlayerCount());
+        assertEquals(Set.of(first, second), moved(map));
+        // the area reaches one chunk further than the view
+        assertEquals(Set.of(first), set(map.getPlayersNear(-3, 3)));
+        assertNull(map.getPlayersNear(-4, 0));
+        assertEquals(Set.of(first, second), set(map.getPlayersNear(2, 0)));
+        assertEquals(Set.of(second), set(map.getPlayersNear(7, -3)));
+    }
+
+    @Test
+    public void testRemove() {
+        final PlayerTrackerAreaMap map = new PlayerTrackerAreaMap();
+        final ServerPlayer first = player(0, 0, 2);
+        final ServerPlayer second = player(4, 0, 2);
+        map.update(List.of(first, second));
+        map.update(List.of(second));
+
+        assertEquals(1, map.getTrackedPlayerCount());
+        assertEquals(Set.of(), moved(map));
+        assertNull(map.getPlayersNear(0, 0));
+        assertEquals(Set.of(second), set(map.getPlayersNear(2, 0)));
+
+        map.clear();
+        assertEquals(0, map.getTrackedPlayerCount());
+        assertNull(map.getPlayersNear(4, 0));
+    }
+
+    @Test
+    public void testMove() {
+        final PlayerTrackerAreaMap map = new PlayerTrackerAreaMap();
+        final ServerPlayer player = player(0, 0, 2);
+        final ServerPlayer idle = player(0, 0, 2);
+        map.update(List.of(player, idle));
+
+        // position change inside the chunk: reported, area unchanged
+        move(player, 0, 0, 2, 0.75);
+        map.update(List.of(player, idle));
+        assertEquals(Set.of(player), moved(map));
+        final PlayerTrackerAreaMap.PlayerArea area = map.getMovedAreas().getChecked(0);
+        assertEquals(0, area.getPreviousChunkX());
+        assertEquals(3, area.getPreviousDistance());
+
+        // chunk change: the old area is reported with the new one
+        move(player, 10, 0, 2, 0.75);
+        map.update(List.of(player, idle));
+        assertEquals(Set.of(player), moved(map));
+        assertEquals(0, area.getPreviousChunkX());
+        assertEquals(10, area.getLastChunkX());
+        assertEquals(Set.of(idle), set(map.getPlayersNear(0, 0)));
+        assertEquals(Set.of(player), set(map.getPlayersNear(10, 0)));
+
+        // view distance change
+        move(player, 10, 0, 4, 0.75);
+        map.update(List.of(player, idle));
+        assertEquals(Set.of(player), moved(map));
+        assertEquals(Set.of(player), set(map.getPlayersNear(15, 0)));
+
+        map.update(List.of(player, idle));
+        assertEquals(Set.of(), moved(map));
+    }
+}
@@ -0,0 +1,135 @@
+package net.metalmc.metal.tracker;
+
+import ca.spottedleaf.moonrise.common.list.ReferenceList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.bukkit.support.environment.Normal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Normal
+public class TrackerCellMapTest {
+
+    private static Set<String> set(ReferenceList<String> list) {
+        final Set<String> values = new HashSet<>();
+        if (list != null) {
+            list.forEach(values::add);
+        }
+        return values;
+    }
+
+    private static Set<String> area(TrackerCellMap<String> map, int x, int z, int radius, int excludeX, int excludeZ, int excludeRadius) {
+        final List<String> values = new ArrayList<>();
+        map.forEachInArea(x, z, radius, excludeX, excludeZ, excludeRadius, values::add);
+        final Set<String> unique = new HashSet<>(values);
+        assertEquals(values.size(), unique.size(), "visited twice: " + values);
+        return unique;
+    }
+
+    @Test
+    public void testAdd() {
+        final TrackerCellMap<String> map = new TrackerCellMap<>();
+        map.startUpdate();
+        assertTrue(map.update("a", 0, 4, 0));
+        assertTrue(map.update("b", 0, 5, 0));
+        assertTrue(map.update("c", 3, 4, -2));
+        map.finishUpdate();
+
+        assertEquals(3, map.size());
+        assertEquals(Set.of("a", "b"), set(map.get(0, 0)));
+        assertEquals(Set.of("c"), set(map.get(3, -2)));
+        assertEquals(Set.of("a", "b", "c"), set(map.getChanged()));
+    }
+
+    @Test
+    public void testUnchangedIsNotReported() {
+        final TrackerCellMap<String> map = new TrackerCellMap<>();
+        map.startUpdate();
+        map.update("a", 0, 4, 0);
+        map.finishUpdate();
+
+        map.startUpdate();
+        assertFalse(map.update("a", 0, 4, 0));
+        map.finishUpdate();
+        assertEquals(Set.of(), set(map.getChanged()));
+
+        map.markChanged("a");
+        assertEquals(Set.of("a"), set(map.getChanged()));
+    }
+
+    @Test
+    public void testMove() {
+        final TrackerCellMap<String> map = new TrackerCellMap<>();
+        map.startUpdate();
+        map.update("a", 0, 4, 0);
+        map.update("b", 0, 4, 0);
+        map.finishUpdate();
+
+        // vertical section change: reported, chunk unchanged
+        map.startUpdate();
+        assertTrue(map.update("a", 0, 5, 0));
+        assertFalse(map.update("b", 0, 4, 0));
+        map.finishUpdate();
+        assertEquals(Set.of("a"), set(map.getChanged()));
+        assertEquals(Set.of("a", "b"), set(map.get(0, 0)));
+
+        // chunk change
+        map.startUpdate();
+        assertTrue(map.update("a", 1, 5, 0));
+        map.update("b", 0, 4, 0);
+        map.finishUpdate();
+        assertEquals(Set.of("a"), set(map.getChanged()));
+        assertEquals(Set.of("b"), set(map.get(0, 0)));
+        assertEquals(Set.of("a"), set(map.get(1, 0)));
+    }
+
+    @Test
+    public void testRemove() {
+        final TrackerCellMap<String> map = new TrackerCellMap<>();
+        map.startUpdate();
+        map.update("a", 0, 4, 0);
+        map.update("b", 2, 4, 2);
+        map.finishUpdate();
+
+        // b is not reported anymore
+        map.startUpdate();
+        map.update("a", 0, 4, 0);
+        map.finishUpdate();
+
+        assertEquals(1, map.size());
+        assertNull(map.get(2, 2));
+        assertEquals(Set.of("a"), area(map, 0, 0, 10, 0, 0, -1));
+
+        // reported again later counts as new
+        map.startUpdate();
+        map.update("a", 0, 4, 0);
+        assertTrue(map.update("b", 2, 4, 2));
+        map.finishUpdate();
+        assertEquals(Set.of("b"), set(map.getChanged()));
+    }
+
+    @Test
+    public void testArea() {
+        final TrackerCellMap<String> map = new TrackerCellMap<>();
+        map.startUpdate();
+        map.update("center", 0, 0, 0);
+        map.update("edge", 2, 0, -2);
+        map.update("outside", 3, 0, 0);
+        map.update("far", 40, 0, 40);
+        map.finishUpdate();
+
+        assertEquals(Set.of("center", "edge"), area(map, 0, 0, 2, 0, 0, -1));
+        assertEquals(Set.of("far"), area(map, 40, 40, 0, 0, 0, -1));
+        // excluded square
+        assertEquals(Set.of("edge"), area(map, 0, 0, 2, 0, 0, 1));
+        assertEquals(Set.of("center", "edge", "outside"), area(map, 1, 0, 2, 0, 0, -1));
+        // radius large enough to walk the occupied chunks instead of the square, same result
+        assertEquals(Set.of("center", "edge", "outside"), area(map, 0, 0, 3, 40, 40, 0));
+    }
+}